@@ -0,0 +1,95 @@
+/*
+ * @(#) ActivationBenchmark.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the {@link Activation} kernels.  The weighted inputs are random values from a
+ * normal distribution with a standard deviation of 4 (so that a good proportion of them fall in
+ * the saturated regions of the sigmoid and tanh functions).
+ *
+ * @author Peter Wall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivationBenchmark {
+
+    @Param({ "SIGMOID", "FAST_SIGMOID", "TANH", "FAST_TANH", "RELU", "SOFTMAX" })
+    public Activation activation;
+
+    @Param({ "10", "1000" })
+    public int size;
+
+    private double[] z;
+    private double[] a;
+    private double[] gradient;
+    private double[] delta;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(1);
+        z = new double[size];
+        for (int i = 0; i < size; i++)
+            z[i] = r.nextGaussian() * 4.0;
+        a = new double[size];
+        activation.forward(z, a, 0, size);
+        gradient = KernelBenchmark.randomVector(r, size);
+        delta = new double[size];
+    }
+
+    @Benchmark
+    public double[] forward() {
+        activation.forward(z, a, 0, size);
+        return a;
+    }
+
+    @Benchmark
+    public double[] backward() {
+        // start from the same gradient each time, to avoid repeated scaling into subnormals
+        System.arraycopy(gradient, 0, delta, 0, size);
+        activation.backward(z, a, delta, 0, size);
+        return delta;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * @(#) BenchmarkRunner.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class for the benchmarks jar.  This accepts the same command line options as the
+ * standard JMH main class, but always includes the GC profiler (the equivalent of
+ * {@code -prof gc}), so that the allocation rate is reported alongside the time for each
+ * benchmark.
+ *
+ * @author Peter Wall
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args)
+            throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp()) {
+            cmdOptions.showHelp();
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        boolean gcRequested = cmdOptions.getProfilers().stream().
+                anyMatch(p -> p.getKlass().equals(GCProfiler.class.getName()) ||
+                        p.getKlass().equals("gc"));
+        if (!gcRequested)
+            builder.addProfiler(GCProfiler.class);
+        Runner runner = new Runner(builder.build());
+        if (cmdOptions.shouldList())
+            runner.list();
+        else
+            runner.run();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * @(#) InferenceBenchmark.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for inference on a batch of items: one item at a time using an
+ * {@link InferenceContext}, and the whole batch using a {@link BatchInferenceContext} (with
+ * matrix-matrix products), for both a {@link FrozenNetwork} and the {@link QuantizedNetwork}
+ * created from it.  The network is initialised with random weights (so that the quantized
+ * weights are not all zero), and each operation processes the same packed batch of random
+ * inputs.
+ *
+ * @author Peter Wall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InferenceBenchmark {
+
+    @Param({ "784-30-10", "784-100-10" })
+    public String layers;
+
+    @Param({ "1", "64", "256" })
+    public int batchSize;
+
+    private FrozenNetwork network;
+    private QuantizedNetwork quantized;
+    private int inputSize;
+    private double[] inputs;
+    private double[] row;
+    private int[] classes;
+    private InferenceContext context;
+    private BatchInferenceContext batchContext;
+    private InferenceContext quantizedContext;
+    private BatchInferenceContext quantizedBatchContext;
+
+    @Setup
+    public void setup() {
+        int[] layerSizes = SyntheticData.parseLayers(layers);
+        Random r = new Random(1);
+        Network trainable = new Network(layerSizes);
+        trainable.init(r);
+        network = trainable.freeze();
+        quantized = network.quantize();
+        inputSize = layerSizes[0];
+        inputs = KernelBenchmark.randomVector(r, batchSize * inputSize);
+        row = new double[inputSize];
+        classes = new int[batchSize];
+        context = network.newInferenceContext();
+        batchContext = network.newBatchInferenceContext(batchSize);
+        quantizedContext = quantized.newInferenceContext();
+        quantizedBatchContext = quantized.newBatchInferenceContext(batchSize);
+    }
+
+    @Benchmark
+    public int[] predictRows() {
+        for (int m = 0; m < batchSize; m++) {
+            System.arraycopy(inputs, m * inputSize, row, 0, inputSize);
+            classes[m] = network.predictClass(row, context);
+        }
+        return classes;
+    }
+
+    @Benchmark
+    public int[] predictBatch() {
+        network.predictBatch(inputs, 0, batchSize, batchContext);
+        return batchContext.getClasses();
+    }
+
+    @Benchmark
+    public int[] quantizedPredictRows() {
+        for (int m = 0; m < batchSize; m++) {
+            System.arraycopy(inputs, m * inputSize, row, 0, inputSize);
+            classes[m] = quantized.predictClass(row, quantizedContext);
+        }
+        return classes;
+    }
+
+    @Benchmark
+    public int[] quantizedPredictBatch() {
+        quantized.predictBatch(inputs, 0, batchSize, quantizedBatchContext);
+        return quantizedBatchContext.getClasses();
+    }
+
+}
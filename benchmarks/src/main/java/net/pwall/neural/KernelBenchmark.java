@@ -0,0 +1,143 @@
+/*
+ * @(#) KernelBenchmark.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the array functions in {@link Network}.  The arrays are square, of the size
+ * given by the {@code size} parameter, and are filled with random values from a fixed seed.
+ *
+ * @author Peter Wall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    @Param({ "30", "100", "784" })
+    public int size;
+
+    private double[][] matrix;
+    private double[][] matrix2;
+    private double[] flat;
+    private double[] vector;
+    private double[] vector2;
+    private double[] result;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(1);
+        matrix = randomMatrix(r, size, size);
+        matrix2 = randomMatrix(r, size, size);
+        flat = new double[size * size];
+        for (int i = 0; i < size; i++)
+            System.arraycopy(matrix[i], 0, flat, i * size, size);
+        vector = randomVector(r, size);
+        vector2 = randomVector(r, size);
+        result = new double[size];
+    }
+
+    @Benchmark
+    public double[][] dotMatrix() {
+        return Network.dot(matrix, matrix2);
+    }
+
+    @Benchmark
+    public double[] dotVector() {
+        return Network.dot(matrix, vector);
+    }
+
+    @Benchmark
+    public double[] dotFlat() {
+        Network.dot(flat, size, vector, result);
+        return result;
+    }
+
+    @Benchmark
+    public double[] transposeDotFlat() {
+        Network.transposeDot(flat, size, vector, result);
+        return result;
+    }
+
+    @Benchmark
+    public double[][] matrixMultiply() {
+        return Network.matrixMultiply(vector, vector2);
+    }
+
+    @Benchmark
+    public double[] addOuterProduct() {
+        Network.addOuterProduct(vector, vector2, flat);
+        return flat;
+    }
+
+    @Benchmark
+    public double[][] transpose() {
+        return Network.transpose(matrix);
+    }
+
+    @Benchmark
+    public double[] sigmoid() {
+        return Network.sigmoid(vector);
+    }
+
+    @Benchmark
+    public double[] sigmoidInPlace() {
+        Network.sigmoid(vector, result);
+        return result;
+    }
+
+    static double[][] randomMatrix(Random r, int rows, int cols) {
+        double[][] result = new double[rows][];
+        for (int i = 0; i < rows; i++)
+            result[i] = randomVector(r, cols);
+        return result;
+    }
+
+    static double[] randomVector(Random r, int size) {
+        double[] result = new double[size];
+        for (int i = 0; i < size; i++)
+            result[i] = r.nextGaussian();
+        return result;
+    }
+
+}
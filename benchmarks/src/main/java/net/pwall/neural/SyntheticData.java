@@ -0,0 +1,118 @@
+/*
+ * @(#) SyntheticData.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+/**
+ * Synthetic training data for benchmarks.  The inputs are random values in the range 0.0 to
+ * 1.0, and the expected outputs have a single value set to 1.0 at a random index, as in the
+ * MNIST data.  The data is generated from a fixed seed, so that repeated runs use the same
+ * values.
+ *
+ * @author Peter Wall
+ */
+public class SyntheticData implements TrainingDataSource {
+
+    private TrainingData[] items;
+
+    /**
+     * Construct a synthetic training data set.
+     *
+     * @param   size        the number of entries
+     * @param   inputSize   the number of inputs in each entry
+     * @param   outputSize  the number of outputs in each entry
+     * @param   seed        the seed for the random number generator
+     */
+    public SyntheticData(int size, int inputSize, int outputSize, long seed) {
+        Random r = new Random(seed);
+        items = new TrainingData[size];
+        for (int i = 0; i < size; i++) {
+            double[] inputs = new double[inputSize];
+            for (int j = 0; j < inputSize; j++)
+                inputs[j] = r.nextDouble();
+            int label = r.nextInt(outputSize);
+            double[] outputs = new double[outputSize];
+            outputs[label] = 1.0;
+            items[i] = new Item(inputs, outputs, label);
+        }
+    }
+
+    @Override
+    public TrainingData getItem(int index) {
+        return items[index];
+    }
+
+    @Override
+    public int getSize() {
+        return items.length;
+    }
+
+    /**
+     * Parse a list of layer sizes separated by hyphens, as used in the benchmark parameters (JMH
+     * uses commas to separate multiple parameter values on the command line).
+     *
+     * @param   layers  the layer sizes, e.g. {@code "784-30-10"}
+     * @return          the layer sizes as an array
+     */
+    public static int[] parseLayers(String layers) {
+        String[] parts = layers.split("-");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            result[i] = Integer.parseInt(parts[i].trim());
+        return result;
+    }
+
+    private static class Item implements TrainingData {
+
+        private double[] inputs;
+        private double[] outputs;
+        private int label;
+
+        public Item(double[] inputs, double[] outputs, int label) {
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.label = label;
+        }
+
+        @Override
+        public double[] getInputs() {
+            return inputs;
+        }
+
+        @Override
+        public double[] getOutputs() {
+            return outputs;
+        }
+
+        @Override
+        public int getHighestOutputIndex() {
+            return label;
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * @(#) TrainingBenchmark.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the steps of training: a single back-propagation, the update for a single
+ * mini-batch (item by item and batched), and the evaluation of a test data set.  The network
+ * layer sizes are given by the {@code layers} parameter, and the data is synthetic (see
+ * {@link SyntheticData}).
+ *
+ * <p>This class is in the {@code net.pwall.neural} package so that it can call the
+ * package-private training functions of {@link Network} directly.</p>
+ *
+ * @author Peter Wall
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainingBenchmark {
+
+    private static final int dataSize = 1000;
+    private static final double eta = 3.0;
+
+    @Param({ "784-30-10", "784-100-10" })
+    public String layers;
+
+    @Param({ "10" })
+    public int miniBatchSize;
+
+    private Network network;
+    private SyntheticData data;
+    private TrainingWorkspace workspace;
+    private MiniBatch miniBatch;
+    private BatchWorkspace batchWorkspace;
+    private int next;
+
+    @Setup
+    public void setup() {
+        int[] layerSizes = SyntheticData.parseLayers(layers);
+        network = new Network(layerSizes);
+        data = new SyntheticData(dataSize, layerSizes[0], layerSizes[layerSizes.length - 1], 1);
+        workspace = new TrainingWorkspace(layerSizes);
+        miniBatch = new MiniBatch(miniBatchSize, layerSizes[0], layerSizes[layerSizes.length - 1]);
+        batchWorkspace = new BatchWorkspace(miniBatchSize, layerSizes);
+        next = 0;
+    }
+
+    @Benchmark
+    public TrainingWorkspace backProp() {
+        TrainingData td = data.getItem(nextIndex(1));
+        network.backProp(td.getInputs(), td.getOutputs(), workspace);
+        return workspace;
+    }
+
+    @Benchmark
+    public Network updateMiniBatch() {
+        network.updateMiniBatch(new TrainingDataSubset(data, nextIndex(miniBatchSize),
+                miniBatchSize), eta);
+        return network;
+    }
+
+    @Benchmark
+    public Network updateMiniBatchBatched() {
+        miniBatch.fill(data, nextIndex(miniBatchSize), miniBatchSize);
+        network.updateMiniBatch(miniBatch, batchWorkspace, eta);
+        return network;
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return network.evaluate(data);
+    }
+
+    private int nextIndex(int count) {
+        int result = next;
+        next += count;
+        if (next + count > dataSize)
+            next = 0;
+        return result;
+    }
+
+}
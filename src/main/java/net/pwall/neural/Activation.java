@@ -0,0 +1,303 @@
+/*
+ * @(#) Activation.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Activation functions for the layers of a network.  Each function is provided as a pair of
+ * array kernels: {@link #forward(double[], double[], int, int)} calculates the activations of a
+ * layer from the weighted inputs, and {@link #backward(double[], double[], double[], int, int)}
+ * converts the gradient of the cost with respect to the activations to the gradient with
+ * respect to the weighted inputs.  The kernels operate on one vector (one row of a mini-batch)
+ * at a time, so that functions such as {@link #SOFTMAX} that depend on the whole vector can be
+ * used in the same way as those applied element by element.
+ *
+ * <p>The derivatives are calculated from the activations wherever possible (for example, the
+ * derivative of the sigmoid function is <i>a</i>(1&nbsp;&minus;&nbsp;<i>a</i>)), so the
+ * backward pass does not repeat the calls to {@link Math#exp(double)} made in the forward
+ * pass.</p>
+ *
+ * <p>{@link #FAST_SIGMOID} and {@link #FAST_TANH} replace {@link Math#exp(double)} with linear
+ * interpolation in a table of 2049 values of the sigmoid function covering the range -16 to
+ * +16.  The interpolation error is bounded by <i>h</i><sup>2</sup>/8 times the maximum of
+ * |&sigma;''| (1/(6&radic;3)), where <i>h</i> = 1/64, and outside the range the result is the
+ * value at the end of the table; the absolute error of {@link #FAST_SIGMOID} is therefore less
+ * than 3&times;10<sup>-6</sup>, and that of {@link #FAST_TANH} (calculated as
+ * 2&sigma;(2<i>z</i>)&nbsp;&minus;&nbsp;1) less than 6&times;10<sup>-6</sup>.  That is well
+ * below the precision that matters in training, but the results are not identical to those of
+ * the exact functions.</p>
+ *
+ * @author  Peter Wall
+ */
+public enum Activation {
+
+    /** The logistic sigmoid function, 1 / (1 + e<sup>-z</sup>) (the default). */
+    SIGMOID(0) {
+        @Override
+        public double apply(double z) {
+            return Network.sigmoid(z);
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                a[i] = Network.sigmoid(z[i]);
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            sigmoidBackward(a, delta, offset, length);
+        }
+    },
+
+    /**
+     * The hyperbolic tangent function.  {@link Math#tanh(double)} is much slower than
+     * {@link Math#exp(double)} on some JVMs; {@link #FAST_TANH} avoids it.
+     */
+    TANH(1) {
+        @Override
+        public double apply(double z) {
+            return Math.tanh(z);
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                a[i] = Math.tanh(z[i]);
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            tanhBackward(a, delta, offset, length);
+        }
+    },
+
+    /** The rectified linear unit, max(0, z). */
+    RELU(2) {
+        @Override
+        public double apply(double z) {
+            return z > 0.0 ? z : 0.0;
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                a[i] = z[i] > 0.0 ? z[i] : 0.0;
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                if (!(z[i] > 0.0))
+                    delta[i] = 0.0;
+        }
+    },
+
+    /**
+     * The softmax function, e<sup>z<sub>j</sub></sup> / &Sigma;<sub>k</sub>
+     * e<sup>z<sub>k</sub></sup>, normally used only for the output layer.  The activations of
+     * the layer are all positive and add up to 1, so they may be treated as a probability
+     * distribution.
+     */
+    SOFTMAX(3) {
+        @Override
+        public double apply(double z) {
+            throw new UnsupportedOperationException("Softmax can not be applied to a single value");
+        }
+        @Override
+        public boolean isElementwise() {
+            return false;
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            // subtract the maximum so that exp() can not overflow
+            int n = offset + length;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = offset; i < n; i++)
+                max = Math.max(max, z[i]);
+            double sum = 0.0;
+            for (int i = offset; i < n; i++) {
+                double e = Math.exp(z[i] - max);
+                a[i] = e;
+                sum += e;
+            }
+            double reciprocal = 1.0 / sum;
+            for (int i = offset; i < n; i++)
+                a[i] *= reciprocal;
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            // the product of the gradient with the Jacobian, diag(a) - a.a^T
+            int n = offset + length;
+            double dot = 0.0;
+            for (int i = offset; i < n; i++)
+                dot += delta[i] * a[i];
+            for (int i = offset; i < n; i++)
+                delta[i] = a[i] * (delta[i] - dot);
+        }
+    },
+
+    /** An approximation to {@link #SIGMOID} using table interpolation (see above). */
+    FAST_SIGMOID(4) {
+        @Override
+        public double apply(double z) {
+            return SigmoidTable.sigmoid(z);
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                a[i] = SigmoidTable.sigmoid(z[i]);
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            sigmoidBackward(a, delta, offset, length);
+        }
+    },
+
+    /** An approximation to {@link #TANH} using table interpolation (see above). */
+    FAST_TANH(5) {
+        @Override
+        public double apply(double z) {
+            return 2.0 * SigmoidTable.sigmoid(2.0 * z) - 1.0;
+        }
+        @Override
+        public void forward(double[] z, double[] a, int offset, int length) {
+            for (int i = offset, n = offset + length; i < n; i++)
+                a[i] = 2.0 * SigmoidTable.sigmoid(2.0 * z[i]) - 1.0;
+        }
+        @Override
+        public void backward(double[] z, double[] a, double[] delta, int offset, int length) {
+            tanhBackward(a, delta, offset, length);
+        }
+    };
+
+    private final int code;
+
+    Activation(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Apply the function to a single value.  This is available only for functions applied
+     * element by element.
+     *
+     * @param   z       the weighted input
+     * @return  the activation
+     * @throws  UnsupportedOperationException if the function is not applied element by element
+     */
+    public abstract double apply(double z);
+
+    /**
+     * Calculate the activations for a vector of weighted inputs.  The two arrays may be the
+     * same.
+     *
+     * @param   z       the array of weighted inputs
+     * @param   a       the array to hold the activations
+     * @param   offset  the offset of the vector in both arrays
+     * @param   length  the length of the vector
+     */
+    public abstract void forward(double[] z, double[] a, int offset, int length);
+
+    /**
+     * Convert the gradient of the cost with respect to the activations of a vector to the
+     * gradient with respect to the weighted inputs, in place.  For the functions applied element
+     * by element this multiplies each element by the derivative of the function; for
+     * {@link #SOFTMAX} it multiplies the vector by the Jacobian matrix.
+     *
+     * @param   z       the array of weighted inputs
+     * @param   a       the array of activations (as calculated by
+     *                  {@link #forward(double[], double[], int, int)})
+     * @param   delta   the array holding the gradient
+     * @param   offset  the offset of the vector in all three arrays
+     * @param   length  the length of the vector
+     */
+    public abstract void backward(double[] z, double[] a, double[] delta, int offset,
+            int length);
+
+    /**
+     * Test whether the function is applied element by element (the activation of each neuron
+     * depends only on its own weighted input).
+     *
+     * @return  {@code true} if the function is applied element by element
+     */
+    public boolean isElementwise() {
+        return true;
+    }
+
+    /**
+     * Get the code used to identify the function in a model file (see {@link ModelFile}).
+     *
+     * @return  the code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Get the {@code Activation} for a code.
+     *
+     * @param   code    the code
+     * @return          the {@code Activation}, or {@code null} if the code is not valid
+     */
+    public static Activation forCode(int code) {
+        for (Activation activation : values())
+            if (activation.code == code)
+                return activation;
+        return null;
+    }
+
+    private static void sigmoidBackward(double[] a, double[] delta, int offset, int length) {
+        for (int i = offset, n = offset + length; i < n; i++)
+            delta[i] *= a[i] * (1.0 - a[i]);
+    }
+
+    private static void tanhBackward(double[] a, double[] delta, int offset, int length) {
+        for (int i = offset, n = offset + length; i < n; i++)
+            delta[i] *= 1.0 - a[i] * a[i];
+    }
+
+    /**
+     * The table used by the fast approximations.
+     */
+    static class SigmoidTable {
+
+        static final double range = 16.0;
+        static final double scale = 64.0;
+        static final int last = (int)(2 * range * scale);
+        static final double[] table = new double[last + 1];
+
+        static {
+            for (int i = 0; i <= last; i++)
+                table[i] = Network.sigmoid(i / scale - range);
+        }
+
+        static double sigmoid(double z) {
+            double x = (z + range) * scale;
+            if (x <= 0.0)
+                return table[0];
+            if (x >= last)
+                return table[last];
+            int i = (int)x; // NaN gives 0 here, and the NaN propagates through the fraction
+            double lower = table[i];
+            return lower + (table[i + 1] - lower) * (x - i);
+        }
+
+    }
+
+}
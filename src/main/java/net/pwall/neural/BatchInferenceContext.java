@@ -0,0 +1,213 @@
+/*
+ * @(#) BatchInferenceContext.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+
+/**
+ * Working storage for batched inference (see
+ * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}).  A
+ * {@code BatchInferenceContext} holds, for a fixed maximum number of rows (the capacity), a
+ * matrix for the outputs of each layer (other than the input layer) of a network, a matrix to
+ * hold a set of packed inputs, a matrix and an array of scales to hold the inputs to a layer in
+ * quantized form (two rows to each {@code long}, for use by a {@link QuantizedNetwork}), and an
+ * array to hold the index of the highest output of each row.  After each batch, the context
+ * holds both the outputs and the classes (see {@link #getOutputs()} and
+ * {@link #getClasses()}).  Like an {@link InferenceContext}, it allows a {@link Predictor} to
+ * process a batch without modifying any state of its own, and once it has been created,
+ * processing any number of batches does not allocate any further storage.
+ *
+ * <p>A context may be used with any {@link Predictor} having the same layer sizes, but it must
+ * not be used by more than one thread at a time.</p>
+ *
+ * @author  Peter Wall
+ */
+public class BatchInferenceContext {
+
+    private int[] layerSizes;
+    final int capacity;
+    final int inputSize;
+    final int outputSize;
+    final double[][] outputs;
+    final double[] inputs;
+    final long[] quantized;
+    final double[] quantizedScales;
+    final int[] classes;
+    final InferenceContext rowContext;
+    private int count;
+
+    /**
+     * Construct a {@code BatchInferenceContext} with the specified capacity, for a network with
+     * the supplied layer sizes.
+     *
+     * @param   capacity        the maximum number of rows in a batch
+     * @param   layerSizes      the layer sizes (including the input layer)
+     * @throws  IllegalArgumentException if the capacity is less than 1, the number of layers
+     *                  is less than 2, or the matrices would be too large
+     */
+    public BatchInferenceContext(int capacity, int ... layerSizes) {
+        int numLayers = layerSizes.length;
+        if (numLayers < 2)
+            throw new IllegalArgumentException("Must have 2 or more layers");
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be >= 1");
+        for (int size : layerSizes) {
+            if ((long)capacity * size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        this.layerSizes = layerSizes.clone();
+        this.capacity = capacity;
+        inputSize = layerSizes[0];
+        outputSize = layerSizes[numLayers - 1];
+        outputs = new double[numLayers - 1][];
+        for (int i = 1; i < numLayers; i++)
+            outputs[i - 1] = new double[capacity * layerSizes[i]];
+        inputs = new double[capacity * layerSizes[0]];
+        int maxInputs = 0;
+        for (int i = 0; i < numLayers - 1; i++)
+            maxInputs = Math.max(maxInputs, layerSizes[i]);
+        quantized = new long[((capacity + 1) >> 1) * maxInputs];
+        quantizedScales = new double[capacity];
+        classes = new int[capacity];
+        rowContext = new InferenceContext(layerSizes);
+        count = 0;
+    }
+
+    /**
+     * Get the capacity (the maximum number of rows in a batch).
+     *
+     * @return  the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the array used to hold packed inputs, with one row of inputs for each item.  The
+     * caller may fill this array directly and pass it to
+     * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}, to avoid
+     * copying the inputs.
+     *
+     * @return  the inputs array
+     */
+    public double[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Get the outputs of the last batch processed, as a matrix with one row of outputs for each
+     * item.  The array is overwritten by the next use of the context.
+     *
+     * @return  the outputs array (only the first {@link #getCount()} rows are valid)
+     */
+    public double[] getOutputs() {
+        return outputs[outputs.length - 1];
+    }
+
+    /**
+     * Get the index of the highest output for each item of the last batch processed.  The array
+     * is overwritten by the next use of the context.
+     *
+     * @return  the classes array (only the first {@link #getCount()} entries are valid)
+     */
+    public int[] getClasses() {
+        return classes;
+    }
+
+    /**
+     * Get the number of items in the last batch processed.
+     *
+     * @return  the number of items
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Check that this context is suitable for a network with the supplied layer sizes, and for
+     * a batch of the specified number of rows.
+     *
+     * @param   sizes   the layer sizes of the network
+     * @param   count   the number of rows
+     * @return  this context
+     * @throws  IllegalArgumentException if the layer sizes do not match, or the number of rows
+     *                  is negative or exceeds the capacity
+     */
+    BatchInferenceContext check(int[] sizes, int count) {
+        if (!Arrays.equals(layerSizes, sizes))
+            throw new IllegalArgumentException("Inference context does not match network");
+        return checkCount(count);
+    }
+
+    /**
+     * Check that a batch of the specified number of rows can be processed using this context.
+     *
+     * @param   count   the number of rows
+     * @return  this context
+     * @throws  IllegalArgumentException if the number of rows is negative or exceeds the
+     *                  capacity
+     */
+    BatchInferenceContext checkCount(int count) {
+        if (count < 0 || count > capacity)
+            throw new IllegalArgumentException("Batch size out of range: " + count);
+        return this;
+    }
+
+    /**
+     * Check that an array holds a batch of packed inputs.
+     *
+     * @param   inputs  the inputs array
+     * @param   offset  the offset of the first row
+     * @param   count   the number of rows
+     * @throws  IllegalArgumentException if the array is too small
+     */
+    void checkInputs(double[] inputs, int offset, int count) {
+        if (offset < 0 || offset + (long)count * inputSize > inputs.length)
+            throw new IllegalArgumentException("Inputs array wrong size");
+    }
+
+    /**
+     * Complete the processing of a batch: record the number of items, and find the index of
+     * the highest output for each item.
+     *
+     * @param   count   the number of items
+     * @return  the outputs array
+     */
+    double[] complete(int count) {
+        this.count = count;
+        double[] result = getOutputs();
+        for (int m = 0, k = 0; m < count; m++, k += outputSize) {
+            int highest = 0;
+            for (int j = 1; j < outputSize; j++) {
+                if (result[k + j] > result[k + highest])
+                    highest = j;
+            }
+            classes[m] = highest;
+        }
+        return result;
+    }
+
+}
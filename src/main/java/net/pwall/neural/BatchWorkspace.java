@@ -0,0 +1,68 @@
+/*
+ * @(#) BatchWorkspace.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Preallocated working storage for batched back-propagation.  In addition to the gradient
+ * accumulators inherited from {@link GradientWorkspace}, a {@code BatchWorkspace} holds the
+ * weighted inputs, activations and errors for a complete mini-batch, each as a matrix with one
+ * row per item, so that the forward and backward passes can be performed as matrix-matrix
+ * products.
+ *
+ * <p>Like {@link GradientWorkspace}, a {@code BatchWorkspace} is not thread-safe.</p>
+ *
+ * @author  Peter Wall
+ */
+class BatchWorkspace extends GradientWorkspace {
+
+    final int capacity;
+    final double[][] batchActivations;
+    final double[][] batchZs;
+    final double[][] batchDeltas;
+
+    /**
+     * Construct a {@code BatchWorkspace} for mini-batches of up to the specified size, for a
+     * network with the supplied layer sizes.
+     *
+     * @param   capacity        the maximum mini-batch size
+     * @param   layerSizes      the layer sizes (including the input layer)
+     */
+    BatchWorkspace(int capacity, int ... layerSizes) {
+        super(layerSizes);
+        this.capacity = capacity;
+        int numHiddens = layerSizes.length - 1;
+        batchActivations = new double[numHiddens + 1][];
+        batchZs = new double[numHiddens][];
+        batchDeltas = new double[numHiddens][];
+        for (int i = 0; i < numHiddens; i++) {
+            int size = capacity * layerSizes[i + 1];
+            batchActivations[i + 1] = new double[size];
+            batchZs[i] = new double[size];
+            batchDeltas[i] = new double[size];
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * @(#) Checkpoint.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A checkpoint of a training operation: the weights and biases of the network after a number
+ * of epochs, along with the state of early stopping (see
+ * {@link Network.Trainer#earlyStopping(int)}) and, if early stopping is selected, a snapshot of
+ * the best network found so far.  A checkpoint is written periodically during training (see
+ * {@link Network.Trainer#checkpoint(Path, int)}), and training may be resumed from it (see
+ * {@link Network.Trainer#resume(Checkpoint)}).  The format of the file is:
+ *
+ * <table summary="Checkpoint file format">
+ *   <tr><th>Offset</th><th>Content</th></tr>
+ *   <tr><td>0</td><td>the magic number: the 4 ASCII characters {@code NNCP}</td></tr>
+ *   <tr><td>4</td><td>the format version (currently 1)</td></tr>
+ *   <tr><td>8</td><td>the number of epochs completed</td></tr>
+ *   <tr><td>12</td><td>the epoch with the best score (0 if none)</td></tr>
+ *   <tr><td>16</td><td>the best score ({@code double}; NaN if none)</td></tr>
+ *   <tr><td>24</td><td>the size of the network ({@code long})</td></tr>
+ *   <tr><td>32</td><td>the size of the best network ({@code long}; 0 if none)</td></tr>
+ *   <tr><td>40</td><td>the network, in the format described in {@link ModelFile}</td></tr>
+ *   <tr><td></td><td>zero padding to a multiple of 8 bytes</td></tr>
+ *   <tr><td></td><td>the best network, in the same format (if present)</td></tr>
+ * </table>
+ *
+ * <p>All values are little-endian.  The file is written under a temporary name in the same
+ * directory, forced to the storage device and then renamed, so that an existing checkpoint is
+ * replaced atomically (where the file system supports it) and a failure while writing never
+ * leaves a partial checkpoint in place.</p>
+ *
+ * <p>The state of the {@link Optimizer} and of the {@link java.util.Random} used to shuffle
+ * the training data is not saved, so training can not be resumed with an optimizer that holds
+ * state (momentum, Adam etc.; see {@link Optimizer#hasState()}).</p>
+ *
+ * @author  Peter Wall
+ */
+public class Checkpoint {
+
+    /** The magic number (the characters "NNCP" read as a little-endian {@code int}). */
+    static final int magic = 0x50434E4E;
+
+    /** The current format version. */
+    static final int version = 1;
+
+    private static final int headerSize = 40;
+
+    private final Network network;
+    private final int epoch;
+    private final int bestEpoch;
+    private final double bestScore;
+    private final FrozenNetwork best;
+
+    /**
+     * Construct a {@code Checkpoint}.
+     *
+     * @param   network     the {@link Network}
+     * @param   epoch       the number of epochs completed
+     * @param   bestEpoch   the epoch with the best score (0 if none)
+     * @param   bestScore   the best score ({@code NaN} if none)
+     * @param   best        a snapshot of the network at the best epoch, or {@code null}
+     */
+    Checkpoint(Network network, int epoch, int bestEpoch, double bestScore, FrozenNetwork best) {
+        this.network = network;
+        this.epoch = epoch;
+        this.bestEpoch = bestEpoch;
+        this.bestScore = bestScore;
+        this.best = best;
+    }
+
+    /**
+     * Get the network.  For a checkpoint that has been loaded from a file, this is a new
+     * {@link Network} with the weights and biases from the file.
+     *
+     * @return  the {@link Network}
+     */
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Get the number of epochs completed.
+     *
+     * @return  the number of epochs
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Get the epoch (starting from 1) with the best score in early stopping.
+     *
+     * @return  the epoch, or 0 if early stopping is not in use
+     */
+    public int getBestEpoch() {
+        return bestEpoch;
+    }
+
+    /**
+     * Get the best score in early stopping.
+     *
+     * @return  the score, or {@code NaN} if early stopping is not in use
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Get the snapshot of the network at the epoch with the best score.
+     *
+     * @return  the {@link FrozenNetwork}, or {@code null} if none was saved
+     */
+    public FrozenNetwork getBest() {
+        return best;
+    }
+
+    /**
+     * Save the checkpoint to a file, replacing any existing file atomically.
+     *
+     * @param   path        the {@link Path} of the file
+     * @throws  IOException if the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(),
+                ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long networkSize = ModelFile.fileSize(network.getLayerSizes());
+                long bestSize = best != null ? ModelFile.fileSize(best.getLayerSizes()) : 0;
+                ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(magic).putInt(version).putInt(epoch).putInt(bestEpoch).
+                        putDouble(bestScore).putLong(networkSize).putLong(bestSize).flip();
+                while (header.hasRemaining())
+                    channel.write(header);
+                OutputStream out = Channels.newOutputStream(channel);
+                ModelFile.save(network, out);
+                if (best != null) {
+                    out.write(new byte[padding(networkSize)]);
+                    ModelFile.save(best, out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Load a checkpoint from a file.  The checksums of the networks are verified.
+     *
+     * @param   path        the {@link Path} of the file
+     * @return  the {@code Checkpoint}
+     * @throws  IOException if the file can not be read, or is not a valid checkpoint file
+     */
+    public static Checkpoint load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < headerSize)
+                throw new IOException("Checkpoint file too short: " + path);
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("Unexpected EOF");
+            }
+            if (header.getInt(0) != magic)
+                throw new IOException("Incorrect magic number: " + path);
+            int fileVersion = header.getInt(4);
+            if (fileVersion != version)
+                throw new IOException("Unsupported checkpoint version " + fileVersion + ": " +
+                        path);
+            int epoch = header.getInt(8);
+            int bestEpoch = header.getInt(12);
+            double bestScore = header.getDouble(16);
+            long networkSize = header.getLong(24);
+            long bestSize = header.getLong(32);
+            long bestOffset = headerSize + networkSize + padding(networkSize);
+            if (epoch < 0 || bestEpoch < 0 || networkSize <= 0 || bestSize < 0 ||
+                    fileSize != (bestSize == 0 ? headerSize + networkSize : bestOffset + bestSize))
+                throw new IOException("Invalid checkpoint header: " + path);
+            Network network = ModelFile.load(ModelFile.map(channel, headerSize, networkSize,
+                    path, true));
+            FrozenNetwork best = bestSize == 0 ? null :
+                    ModelFile.load(ModelFile.map(channel, bestOffset, bestSize, path, true)).
+                    freeze();
+            return new Checkpoint(network, epoch, bestEpoch, bestScore, best);
+        }
+    }
+
+    private static int padding(long size) {
+        return (int)(-size & 7);
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * @(#) Cost.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Cost functions for training.  Each function provides the cost for an item of training data,
+ * and the error in the output layer (the gradient of the cost with respect to the weighted
+ * inputs of the output layer) from which back-propagation starts.
+ *
+ * <p>With the quadratic cost, the output error includes the derivative of the output activation
+ * function, which becomes very small when an output neuron saturates, so a neuron that is badly
+ * wrong learns slowly.  The cross-entropy cost with sigmoid output neurons, and the
+ * log-likelihood cost with a softmax output layer, both give an output error of simply
+ * <i>a</i>&nbsp;&minus;&nbsp;<i>y</i>, with no such term, and so usually reach a given
+ * accuracy in fewer epochs (see
+ * <a href="http://neuralnetworksanddeeplearning.com/chap3.html">Neural Networks and Deep
+ * Learning, Chapter 3</a>).  Those combinations are recognised and calculated directly; with
+ * any other activation function the gradient with respect to the activations is calculated and
+ * passed to {@link Activation#backward(double[], double[], double[], int, int)}.</p>
+ *
+ * <p>Expected outputs may be supplied as an array, or as a label (the index of the single
+ * output expected to be 1.0, with all others 0.0).</p>
+ *
+ * @author  Peter Wall
+ */
+public enum Cost {
+
+    /** The quadratic cost, &frac12;&Sigma;(<i>a</i> &minus; <i>y</i>)<sup>2</sup> (the default). */
+    QUADRATIC {
+        @Override
+        public double cost(double[] a, int aOffset, double[] y, int yOffset, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                double d = a[aOffset + i] - y[yOffset + i];
+                sum += d * d;
+            }
+            return 0.5 * sum;
+        }
+        @Override
+        public double cost(double[] a, int aOffset, int label, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                double d = i == label ? a[aOffset + i] - 1.0 : a[aOffset + i];
+                sum += d * d;
+            }
+            return 0.5 * sum;
+        }
+        @Override
+        boolean cancels(Activation activation) {
+            return false;
+        }
+        @Override
+        void activationGradient(double[] a, double[] y, int yOffset, double[] delta, int offset,
+                int length) {
+            difference(a, y, yOffset, delta, offset, length);
+        }
+        @Override
+        void activationGradient(double[] a, int label, double[] delta, int offset, int length) {
+            difference(a, label, delta, offset, length);
+        }
+    },
+
+    /**
+     * The cross-entropy cost, &minus;&Sigma;[<i>y</i> ln <i>a</i> + (1 &minus; <i>y</i>)
+     * ln(1 &minus; <i>a</i>)], for output activations in the range 0 to 1.  The derivative of
+     * the sigmoid function cancels out, so this is normally used with {@link Activation#SIGMOID}
+     * (or {@link Activation#FAST_SIGMOID}) output neurons.  With any other activation function
+     * the gradient with respect to an activation <i>a</i> includes a division by
+     * <i>a</i>(1&nbsp;&minus;&nbsp;<i>a</i>); this is limited to a small positive value so that a
+     * saturated output (or one outside the range 0 to 1) gives a large but finite gradient
+     * towards the expected output, rather than infinity or NaN.
+     */
+    CROSS_ENTROPY {
+        @Override
+        public double cost(double[] a, int aOffset, double[] y, int yOffset, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++)
+                sum += crossEntropy(a[aOffset + i], y[yOffset + i]);
+            return sum;
+        }
+        @Override
+        public double cost(double[] a, int aOffset, int label, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++)
+                sum += crossEntropy(a[aOffset + i], i == label ? 1.0 : 0.0);
+            return sum;
+        }
+        @Override
+        boolean cancels(Activation activation) {
+            return activation == Activation.SIGMOID || activation == Activation.FAST_SIGMOID;
+        }
+        @Override
+        void activationGradient(double[] a, double[] y, int yOffset, double[] delta, int offset,
+                int length) {
+            for (int i = offset, j = yOffset, n = offset + length; i < n; i++, j++)
+                delta[i] = (a[i] - y[j]) / crossEntropyDivisor(a[i]);
+        }
+        @Override
+        void activationGradient(double[] a, int label, double[] delta, int offset, int length) {
+            for (int i = offset, j = 0, n = offset + length; i < n; i++, j++)
+                delta[i] = (j == label ? a[i] - 1.0 : a[i]) / crossEntropyDivisor(a[i]);
+        }
+    },
+
+    /**
+     * The log-likelihood cost, &minus;ln <i>a<sub>y</sub></i> (the negative log of the output
+     * activation for the expected class; for an expected outputs array,
+     * &minus;&Sigma;<i>y</i> ln <i>a</i>).  The softmax Jacobian cancels out, so this is
+     * normally used with an {@link Activation#SOFTMAX} output layer.  With any other activation
+     * function the gradient with respect to an activation includes a division by the
+     * activation, which is limited to a small positive value as for {@link #CROSS_ENTROPY}.
+     */
+    LOG_LIKELIHOOD {
+        @Override
+        public double cost(double[] a, int aOffset, double[] y, int yOffset, int length) {
+            double sum = 0.0;
+            for (int i = 0; i < length; i++) {
+                double yi = y[yOffset + i];
+                if (yi != 0.0)
+                    sum -= yi * Math.log(a[aOffset + i]);
+            }
+            return sum;
+        }
+        @Override
+        public double cost(double[] a, int aOffset, int label, int length) {
+            return -Math.log(a[aOffset + label]);
+        }
+        @Override
+        boolean cancels(Activation activation) {
+            return activation == Activation.SOFTMAX;
+        }
+        @Override
+        void activationGradient(double[] a, double[] y, int yOffset, double[] delta, int offset,
+                int length) {
+            for (int i = offset, j = yOffset, n = offset + length; i < n; i++, j++)
+                delta[i] = -y[j] / Math.max(a[i], minDivisor);
+        }
+        @Override
+        void activationGradient(double[] a, int label, double[] delta, int offset, int length) {
+            for (int i = offset, j = 0, n = offset + length; i < n; i++, j++)
+                delta[i] = j == label ? -1.0 / Math.max(a[i], minDivisor) : 0.0;
+        }
+    };
+
+    /**
+     * Calculate the cost for an item of training data.
+     *
+     * @param   a       the array of output activations
+     * @param   aOffset the offset of the output activations in the array
+     * @param   y       the array of expected outputs
+     * @param   yOffset the offset of the expected outputs in the array
+     * @param   length  the number of outputs
+     * @return  the cost
+     */
+    public abstract double cost(double[] a, int aOffset, double[] y, int yOffset, int length);
+
+    /**
+     * Calculate the cost for an item of training data where the expected output is specified
+     * as a label.
+     *
+     * @param   a       the array of output activations
+     * @param   aOffset the offset of the output activations in the array
+     * @param   label   the expected output label
+     * @param   length  the number of outputs
+     * @return  the cost
+     */
+    public abstract double cost(double[] a, int aOffset, int label, int length);
+
+    /**
+     * Calculate the output error (the gradient of the cost with respect to the weighted inputs
+     * of the output layer) for an item of training data.
+     *
+     * @param   activation  the activation function of the output layer
+     * @param   z           the array of weighted inputs of the output layer
+     * @param   a           the array of output activations
+     * @param   y           the array of expected outputs
+     * @param   yOffset     the offset of the expected outputs in the array
+     * @param   delta       the array to hold the output error
+     * @param   offset      the offset of the item in the {@code z}, {@code a} and {@code delta}
+     *                      arrays
+     * @param   length      the number of outputs
+     */
+    public void outputError(Activation activation, double[] z, double[] a, double[] y,
+            int yOffset, double[] delta, int offset, int length) {
+        if (cancels(activation))
+            difference(a, y, yOffset, delta, offset, length);
+        else {
+            activationGradient(a, y, yOffset, delta, offset, length);
+            activation.backward(z, a, delta, offset, length);
+        }
+    }
+
+    /**
+     * Calculate the output error (the gradient of the cost with respect to the weighted inputs
+     * of the output layer) for an item of training data where the expected output is specified
+     * as a label.
+     *
+     * @param   activation  the activation function of the output layer
+     * @param   z           the array of weighted inputs of the output layer
+     * @param   a           the array of output activations
+     * @param   label       the expected output label
+     * @param   delta       the array to hold the output error
+     * @param   offset      the offset of the item in the {@code z}, {@code a} and {@code delta}
+     *                      arrays
+     * @param   length      the number of outputs
+     */
+    public void outputError(Activation activation, double[] z, double[] a, int label,
+            double[] delta, int offset, int length) {
+        if (cancels(activation))
+            difference(a, label, delta, offset, length);
+        else {
+            activationGradient(a, label, delta, offset, length);
+            activation.backward(z, a, delta, offset, length);
+        }
+    }
+
+    /**
+     * Test whether the derivative of the activation function cancels out of the output error,
+     * leaving simply <i>a</i>&nbsp;&minus;&nbsp;<i>y</i>.
+     *
+     * @param   activation  the activation function of the output layer
+     * @return  {@code true} if the derivative cancels out
+     */
+    abstract boolean cancels(Activation activation);
+
+    /**
+     * Calculate the gradient of the cost with respect to the output activations.
+     *
+     * @param   a           the array of output activations
+     * @param   y           the array of expected outputs
+     * @param   yOffset     the offset of the expected outputs in the array
+     * @param   delta       the array to hold the gradient
+     * @param   offset      the offset of the item in the {@code a} and {@code delta} arrays
+     * @param   length      the number of outputs
+     */
+    abstract void activationGradient(double[] a, double[] y, int yOffset, double[] delta,
+            int offset, int length);
+
+    /**
+     * Calculate the gradient of the cost with respect to the output activations where the
+     * expected output is specified as a label.
+     *
+     * @param   a           the array of output activations
+     * @param   label       the expected output label
+     * @param   delta       the array to hold the gradient
+     * @param   offset      the offset of the item in the {@code a} and {@code delta} arrays
+     * @param   length      the number of outputs
+     */
+    abstract void activationGradient(double[] a, int label, double[] delta, int offset,
+            int length);
+
+    /** The smallest divisor used in calculating the gradient with respect to an activation. */
+    private static final double minDivisor = 1.0e-12;
+
+    private static void difference(double[] a, double[] y, int yOffset, double[] delta,
+            int offset, int length) {
+        for (int i = offset, j = yOffset, n = offset + length; i < n; i++, j++)
+            delta[i] = a[i] - y[j];
+    }
+
+    private static void difference(double[] a, int label, double[] delta, int offset,
+            int length) {
+        System.arraycopy(a, offset, delta, offset, length);
+        delta[offset + label] -= 1.0;
+    }
+
+    private static double crossEntropyDivisor(double a) {
+        double divisor = a * (1.0 - a);
+        return divisor > minDivisor ? divisor : minDivisor;
+    }
+
+    private static double crossEntropy(double a, double y) {
+        // 0 log 0 is taken as 0
+        double result = 0.0;
+        if (y != 0.0)
+            result -= y * Math.log(a);
+        if (y != 1.0)
+            result -= (1.0 - y) * Math.log(1.0 - a);
+        return result;
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * @(#) EvaluationResult.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The result of evaluating a {@link Predictor} against a set of test data: the number of items
+ * for which the predictor gave the correct result (the index of the highest output matched the
+ * expected index), broken down by expected class, along with the time taken.
+ *
+ * @author  Peter Wall
+ */
+public class EvaluationResult {
+
+    private final int total;
+    private final int correct;
+    private final int[] classTotals;
+    private final int[] classCorrect;
+    private final long elapsedNanos;
+
+    private EvaluationResult(Accumulator accumulator, long elapsedNanos) {
+        total = accumulator.total;
+        correct = accumulator.correct;
+        classTotals = accumulator.classTotals;
+        classCorrect = accumulator.classCorrect;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the total number of items evaluated.
+     *
+     * @return  the number of items
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of items for which the correct result was given.
+     *
+     * @return  the number of correct results
+     */
+    public int getCorrect() {
+        return correct;
+    }
+
+    /**
+     * Get the proportion of items for which the correct result was given.
+     *
+     * @return  the accuracy (0.0 to 1.0)
+     */
+    public double getAccuracy() {
+        return total == 0 ? 0.0 : (double)correct / total;
+    }
+
+    /**
+     * Get the number of classes (the number of outputs of the predictor).
+     *
+     * @return  the number of classes
+     */
+    public int getNumClasses() {
+        return classTotals.length;
+    }
+
+    /**
+     * Get the number of items with the specified expected class.
+     *
+     * @param   index   the class index
+     * @return  the number of items
+     */
+    public int getClassTotal(int index) {
+        return classTotals[index];
+    }
+
+    /**
+     * Get the number of items with the specified expected class for which the correct result
+     * was given.
+     *
+     * @param   index   the class index
+     * @return  the number of correct results
+     */
+    public int getClassCorrect(int index) {
+        return classCorrect[index];
+    }
+
+    /**
+     * Get the elapsed time of the evaluation.
+     *
+     * @return  the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Create a display representation of the result.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        return "Correctly identified " + correct + " of " + total + " (" +
+                (elapsedNanos / 1000000) + "ms)";
+    }
+
+    /**
+     * Evaluate a {@link Predictor} against a set of test data.  The items are accessed by index,
+     * with the inputs copied into the {@link InferenceContext} (see
+     * {@link TrainingDataSource#copyInputs(int, double[], int)}) and the expected output taken
+     * from {@link TrainingDataSource#getLabel(int)}, so that a source holding its data in packed
+     * form need not create any objects for the items.  In parallel mode the range of indices is
+     * divided, and each part is evaluated with its own {@link InferenceContext}.
+     *
+     * @param   predictor   the {@link Predictor}
+     * @param   testData    the test data
+     * @param   parallel    {@code true} to evaluate in parallel
+     * @param   pool        the {@link ForkJoinPool} to use for parallel evaluation
+     *                      ({@code null} to use the common pool)
+     * @return  the {@code EvaluationResult}
+     * @throws  IllegalArgumentException if the inputs of the test data are not the size expected
+     *                      by the predictor, or a label is out of range
+     */
+    static EvaluationResult evaluate(Predictor predictor, TrainingDataSource testData,
+            boolean parallel, ForkJoinPool pool) {
+        Object event = FlightRecorderEvents.beginEvaluate();
+        long start = System.nanoTime();
+        int numClasses = predictor.getOutputSize();
+        // check the row size before any inputs are copied into a context
+        if (testData.getSize() > 0)
+            MiniBatch.checkRowSize(testData.getItem(0).getInputs().length,
+                    predictor.getInputSize());
+        Accumulator accumulator;
+        if (parallel && pool != null)
+            accumulator = pool.submit(() -> collect(predictor, testData, true, numClasses)).join();
+        else
+            accumulator = collect(predictor, testData, parallel, numClasses);
+        long elapsed = System.nanoTime() - start;
+        FlightRecorderEvents.endEvaluate(event, predictor, accumulator.total, accumulator.correct);
+        return new EvaluationResult(accumulator, elapsed);
+    }
+
+    private static Accumulator collect(Predictor predictor, TrainingDataSource testData,
+            boolean parallel, int numClasses) {
+        IntStream indices = IntStream.range(0, testData.getSize());
+        return (parallel ? indices.parallel() : indices).collect(
+                () -> new Accumulator(predictor, testData, numClasses), Accumulator::add,
+                Accumulator::merge);
+    }
+
+    private static class Accumulator {
+
+        private Predictor predictor;
+        private TrainingDataSource testData;
+        private InferenceContext context;
+        private int total;
+        private int correct;
+        private int[] classTotals;
+        private int[] classCorrect;
+
+        Accumulator(Predictor predictor, TrainingDataSource testData, int numClasses) {
+            this.predictor = predictor;
+            this.testData = testData;
+            context = predictor.newInferenceContext();
+            total = 0;
+            correct = 0;
+            classTotals = new int[numClasses];
+            classCorrect = new int[numClasses];
+        }
+
+        void add(int index) {
+            int expected = testData.getLabel(index);
+            if (expected < 0 || expected >= classTotals.length)
+                throw new IllegalArgumentException("Label out of range: " + expected);
+            double[] inputs = context.inputs;
+            MiniBatch.checkRowSize(testData.copyInputs(index, inputs, 0), inputs.length);
+            total++;
+            classTotals[expected]++;
+            if (predictor.predictClass(inputs, context) == expected) {
+                correct++;
+                classCorrect[expected]++;
+            }
+        }
+
+        void merge(Accumulator other) {
+            total += other.total;
+            correct += other.correct;
+            for (int i = 0, n = classTotals.length; i < n; i++) {
+                classTotals[i] += other.classTotals[i];
+                classCorrect[i] += other.classCorrect[i];
+            }
+        }
+
+    }
+
+}
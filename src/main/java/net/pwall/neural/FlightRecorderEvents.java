@@ -0,0 +1,82 @@
+/*
+ * @(#) FlightRecorderEvents.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Events for the JDK Flight Recorder.  Each {@code begin} function returns an object
+ * representing the event (or {@code null} if the event is not enabled), which is passed to the
+ * corresponding {@code end} function along with the details to be recorded.  Each event
+ * records the layer sizes of the network, the batch size and the number of samples processed.
+ *
+ * <p>This is the Java 8 form of the class; it records nothing, and the calls are removed by the
+ * JIT compiler.  The multi-release jar contains a Java 11 form (in {@code src/main/java11})
+ * which records the events using the {@code jdk.jfr} API.</p>
+ *
+ * @author  Peter Wall
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    static Object beginEpoch() {
+        return null;
+    }
+
+    static void endEpoch(Object event, int[] layerSizes, int epoch, int batchSize,
+            long samples) {
+    }
+
+    static Object beginMiniBatch() {
+        return null;
+    }
+
+    static void endMiniBatch(Object event, int[] layerSizes, int epoch, int samples) {
+    }
+
+    static Object beginBackProp() {
+        return null;
+    }
+
+    static void endBackProp(Object event, int[] layerSizes, int samples) {
+    }
+
+    static Object beginEvaluate() {
+        return null;
+    }
+
+    static void endEvaluate(Object event, Predictor predictor, int samples, int correct) {
+    }
+
+    static Object beginInference() {
+        return null;
+    }
+
+    static void endInference(Object event, Predictor predictor, int[] layerSizes,
+            int batchSize) {
+    }
+
+}
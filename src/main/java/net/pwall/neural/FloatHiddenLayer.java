@@ -0,0 +1,215 @@
+/*
+ * @(#) FloatHiddenLayer.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A single-precision hidden layer, for use in a {@link FloatNetwork}.  The weights and biases
+ * are held as {@code float}, which halves the memory (and the memory bandwidth) required by the
+ * layer; the weighted sums are calculated in {@code double} precision.
+ *
+ * <p>The weights are held in a single row-major array, and the activation function is selected
+ * by an {@link Activation}, as for {@link HiddenLayer}.</p>
+ *
+ * @author Peter Wall
+ */
+public class FloatHiddenLayer {
+
+    private int size;
+    private int inputSize;
+    private float[] weights;
+    private float[] biases;
+    private Activation activation;
+
+    /**
+     * Construct a {@code FloatHiddenLayer} with the required size.
+     *
+     * @param   inputSize   the number of inputs (the size of the previous layer)
+     * @param   size        the number of neurons
+     * @throws  IllegalArgumentException if either size is &lt;= 0
+     */
+    public FloatHiddenLayer(int inputSize, int size) {
+        if (inputSize <= 0 || size <= 0)
+            throw new IllegalArgumentException("Layer size must be > 0");
+        this.size = size;
+        this.inputSize = inputSize;
+        weights = new float[size * inputSize];
+        biases = new float[size];
+        activation = Activation.SIGMOID;
+    }
+
+    /**
+     * Construct a {@code FloatHiddenLayer} by converting a {@link HiddenLayer}.  The activation
+     * function of the original layer is used.
+     *
+     * @param   original    the {@link HiddenLayer}
+     */
+    public FloatHiddenLayer(HiddenLayer original) {
+        this(original.getInputSize(), original.getSize());
+        double[] originalWeights = original.getWeightsArray();
+        for (int i = 0, n = weights.length; i < n; i++)
+            weights[i] = (float)originalWeights[i];
+        double[] originalBiases = original.getBiases();
+        for (int i = 0; i < size; i++)
+            biases[i] = (float)originalBiases[i];
+        activation = original.getActivation();
+    }
+
+    /**
+     * Initialise the layer using the supplied {@link Random} (see
+     * {@link HiddenLayer#init(Random)}).
+     *
+     * @param   r       the {@link Random}
+     */
+    public void init(Random r) {
+        for (int i = 0, k = 0; i < size; i++) {
+            for (int j = 0; j < inputSize; j++)
+                weights[k++] = (float)r.nextGaussian();
+            biases[i] = (float)r.nextGaussian();
+        }
+    }
+
+    /**
+     * Calculate the outputs of the layer for the supplied inputs, storing them in the supplied
+     * array.  This method does not modify the state of the layer.
+     *
+     * @param   inputs  the inputs (of the size of the input layer)
+     * @param   outputs the array to hold the outputs (of the size of this layer)
+     */
+    public void forward(double[] inputs, double[] outputs) {
+        LinearAlgebra.gemmNT(1, size, inputSize, inputs, 0, weights, 0, outputs, 0);
+        for (int i = 0; i < size; i++)
+            outputs[i] += biases[i];
+        activation.forward(outputs, outputs, 0, size);
+    }
+
+    /**
+     * Calculate the outputs of the layer for a batch of inputs, with one row of inputs for each
+     * item, storing them as a matrix with one row of outputs for each item.  This method does
+     * not modify the state of the layer.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   outputs the array to hold the outputs
+     */
+    public void forwardBatch(double[] inputs, int offset, int count, double[] outputs) {
+        LinearAlgebra.gemmNT(count, size, inputSize, inputs, offset, weights, 0, outputs, 0);
+        for (int m = 0, k = 0; m < count; m++)
+            for (int i = 0; i < size; i++)
+                outputs[k++] += biases[i];
+        if (activation.isElementwise())
+            activation.forward(outputs, outputs, 0, count * size);
+        else {
+            for (int m = 0; m < count; m++)
+                activation.forward(outputs, outputs, m * size, size);
+        }
+    }
+
+    /**
+     * Get the activation function of the layer.
+     *
+     * @return  the {@link Activation}
+     */
+    public Activation getActivation() {
+        return activation;
+    }
+
+    /**
+     * Set the activation function of the layer (the default is {@link Activation#SIGMOID}).
+     *
+     * @param   activation  the {@link Activation}
+     */
+    public void setActivation(Activation activation) {
+        this.activation = Objects.requireNonNull(activation);
+    }
+
+    /**
+     * Get the size of the layer.
+     *
+     * @return  the size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of inputs to each neuron in this layer.
+     *
+     * @return  the input size
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the weights as a single row-major array.  For performance reasons this method returns
+     * a reference to the original array rather than a copy; the array must be treated as
+     * immutable.
+     *
+     * @return  the weights
+     */
+    public float[] getWeightsArray() {
+        return weights;
+    }
+
+    /**
+     * Set the weights from a supplied row-major array.
+     *
+     * @param   newWeights      the new weights
+     * @throws  IllegalArgumentException if the array is of the wrong size
+     */
+    public void setWeightsArray(float[] newWeights) {
+        if (newWeights.length != weights.length)
+            throw new IllegalArgumentException("Wrong size");
+        System.arraycopy(newWeights, 0, weights, 0, weights.length);
+    }
+
+    /**
+     * Get the biases as an array.  For performance reasons this method returns a reference to
+     * the original array rather than a copy; the array must be treated as immutable.
+     *
+     * @return  the biases
+     */
+    public float[] getBiases() {
+        return biases;
+    }
+
+    /**
+     * Set the biases from a supplied array.
+     *
+     * @param   newBiases       the new biases
+     * @throws  IllegalArgumentException if the array is of the wrong size
+     */
+    public void setBiases(float[] newBiases) {
+        if (newBiases.length != size)
+            throw new IllegalArgumentException("Wrong size");
+        System.arraycopy(newBiases, 0, biases, 0, size);
+    }
+
+}
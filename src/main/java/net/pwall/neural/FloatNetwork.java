@@ -0,0 +1,733 @@
+/*
+ * @(#) FloatNetwork.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Single-precision neural network.  This is the equivalent of {@link Network} with the weights
+ * and biases held as {@code float} (see {@link FloatHiddenLayer}), and with training data held
+ * as {@code float} (see {@link FloatTrainingDataSource}), halving the memory and memory
+ * bandwidth required for the largest arrays.
+ *
+ * <p>To maintain numerical stability, the network uses mixed precision: all weighted sums, the
+ * activations and errors for a mini-batch, and the gradient accumulators are calculated in
+ * {@code double}, and only the stored values (weights, biases and training data) are rounded to
+ * {@code float}.  Training always uses the batched (matrix-matrix) form of back-propagation.</p>
+ *
+ * <p>The training interface follows that of {@link Network}, with the same cost functions,
+ * optimizers, learning rate schedules, parallel (including deterministic) training and
+ * {@link TrainingListener}s, so that the two may be compared using the same configuration:</p>
+ * <pre>
+ *     floatNetwork.train(trainingData).epochs(30).miniBatchSize(10).eta(0.1).random(r).
+ *             cost(Cost.CROSS_ENTROPY).optimizer(new Optimizer.Momentum(0.9)).
+ *             parallelism(4).testData(testData).go();
+ * </pre>
+ *
+ * <p>The options of {@link Network.Trainer} that are not available are the
+ * {@code batched}, {@code packed} and {@code prefetch} options (training is always batched,
+ * from single-precision data), training data streams, early stopping and checkpoints.</p>
+ *
+ * @author      Peter Wall
+ */
+public class FloatNetwork implements Predictor {
+
+    private static final Log log = LogFactory.getLog(FloatNetwork.class);
+
+    private int[] layerSizes;
+    private FloatHiddenLayer[] layers;
+    private Cost cost;
+    private Optimizer optimizer;
+
+    /**
+     * Construct a network with the supplied layer sizes.
+     *
+     * @param   layerSizes      the layer sizes
+     * @throws  IllegalArgumentException if the number of layers less than 2
+     */
+    public FloatNetwork(int ... layerSizes) {
+        int numLayers = layerSizes.length;
+        if (numLayers < 2)
+            throw new IllegalArgumentException("Must have 2 or more layers");
+        this.layerSizes = layerSizes.clone();
+        layers = new FloatHiddenLayer[numLayers - 1];
+        for (int i = 1; i < numLayers; i++)
+            layers[i - 1] = new FloatHiddenLayer(layerSizes[i - 1], layerSizes[i]);
+        cost = Cost.QUADRATIC;
+        setOptimizer(new Optimizer.SGD());
+    }
+
+    /**
+     * Construct a single-precision copy of a {@link Network}, with the weights and biases
+     * rounded to {@code float}, and the same activation function for each layer.
+     *
+     * @param   network     the {@link Network}
+     */
+    public FloatNetwork(Network network) {
+        layerSizes = network.getLayerSizes();
+        int numLayers = layerSizes.length;
+        layers = new FloatHiddenLayer[numLayers - 1];
+        for (int i = 1; i < numLayers; i++)
+            layers[i - 1] = new FloatHiddenLayer((HiddenLayer)network.getLayer(i));
+        cost = Cost.QUADRATIC;
+        setOptimizer(new Optimizer.SGD());
+    }
+
+    /**
+     * Get a layer (other than the input layer) by number.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  the layer
+     */
+    public FloatHiddenLayer getLayer(int index) {
+        if (index < 1 || index >= layerSizes.length)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        return layers[index - 1];
+    }
+
+    /**
+     * Set the activation function of a layer (the default is {@link Activation#SIGMOID}).
+     *
+     * @param   index       the layer number (1 for the first layer after the input layer)
+     * @param   activation  the {@link Activation}
+     * @throws  IndexOutOfBoundsException if the layer number is not valid
+     */
+    public void setActivation(int index, Activation activation) {
+        getLayer(index).setActivation(activation);
+    }
+
+    /**
+     * Get the cost function used in training.
+     *
+     * @return  the {@link Cost}
+     */
+    public Cost getCost() {
+        return cost;
+    }
+
+    /**
+     * Set the cost function used in training (the default is {@link Cost#QUADRATIC}).
+     *
+     * @param   cost    the {@link Cost}
+     */
+    public void setCost(Cost cost) {
+        this.cost = Objects.requireNonNull(cost);
+    }
+
+    /**
+     * Get the optimizer used in training.
+     *
+     * @return  the {@link Optimizer}
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Set the optimizer used in training (the default is {@link Optimizer.SGD}; see
+     * {@link Network#setOptimizer(Optimizer)}).
+     *
+     * @param   optimizer   the {@link Optimizer}
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        optimizer.prepare(layerSizes);
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Initialise the network using the supplied {@link Random}.
+     *
+     * @param   r   the {@link Random}
+     */
+    public void init(Random r) {
+        for (FloatHiddenLayer layer : layers)
+            layer.init(r);
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    @Override
+    public double[] predict(double[] inputs, InferenceContext context) {
+        if (inputs.length != layerSizes[0])
+            throw new IllegalArgumentException("Inputs array wrong size");
+        Object event = FlightRecorderEvents.beginInference();
+        double[][] outputs = context.check(layerSizes).outputs;
+        double[] activation = inputs;
+        for (int i = 0, n = layers.length; i < n; i++) {
+            layers[i].forward(activation, outputs[i]);
+            activation = outputs[i];
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, 1);
+        return activation;
+    }
+
+    /**
+     * Process a batch of inputs packed into an array (see
+     * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}), calculating
+     * the outputs of each layer for the whole batch as a single matrix-matrix product.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is too small, the number of items
+     *                  exceeds the capacity of the context, or the context does not match the
+     *                  layer sizes
+     */
+    @Override
+    public double[] predictBatch(double[] inputs, int offset, int count,
+            BatchInferenceContext context) {
+        double[][] outputs = context.check(layerSizes, count).outputs;
+        context.checkInputs(inputs, offset, count);
+        Object event = FlightRecorderEvents.beginInference();
+        double[] activation = inputs;
+        int activationOffset = offset;
+        for (int i = 0, n = layers.length; i < n; i++) {
+            layers[i].forwardBatch(activation, activationOffset, count, outputs[i]);
+            activation = outputs[i];
+            activationOffset = 0;
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, count);
+        return context.complete(count);
+    }
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    @Override
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    /**
+     * Return the number of test inputs for which the neural network outputs the correct result
+     * (see {@link Network#evaluate(TrainingDataSource)}).
+     *
+     * @param   testData    the set of test data
+     * @return              the total number of correct results
+     */
+    public int evaluate(FloatTrainingDataSource testData) {
+        InferenceContext context = newInferenceContext();
+        double[] inputs = new double[layerSizes[0]];
+        int sum = 0;
+        for (int i = 0, n = testData.getSize(); i < n; i++) {
+            FloatTrainingData td = testData.getItem(i);
+            float[] floatInputs = td.getInputs();
+            for (int j = 0; j < inputs.length; j++)
+                inputs[j] = floatInputs[j];
+            if (predictClass(inputs, context) == td.getHighestOutputIndex())
+                sum++;
+        }
+        return sum;
+    }
+
+    /**
+     * Calculate the gradient for the cost function for a range of items in a packed
+     * mini-batch, and add it to the gradient accumulators in the supplied
+     * {@link BatchWorkspace} (see
+     * {@link Network#backPropBatch(MiniBatch, int, int, BatchWorkspace)}).
+     *
+     * @param   miniBatch       the packed mini-batch
+     * @param   start           the index of the first item to process
+     * @param   count           the number of items to process
+     * @param   ws              the {@link BatchWorkspace}
+     */
+    void backPropBatch(MiniBatch miniBatch, int start, int count, BatchWorkspace ws) {
+        int numHiddens = layers.length;
+        double[][] activations = ws.batchActivations;
+        double[][] zs = ws.batchZs;
+        double[][] deltas = ws.batchDeltas;
+        long startTime = ws.startTimer();
+
+        // feedforward
+        // (the inputs are used in place, so the input activations start at an offset)
+        double[] activation = miniBatch.inputs;
+        int inputOffset = start * layerSizes[0];
+        activations[0] = activation;
+        for (int i = 0; i < numHiddens; i++) {
+            FloatHiddenLayer h = layers[i];
+            int size = h.getSize();
+            double[] z = zs[i];
+            LinearAlgebra.gemmNT(count, size, h.getInputSize(), activation,
+                    i == 0 ? inputOffset : 0, h.getWeightsArray(), 0, z, 0);
+            float[] biases = h.getBiases();
+            for (int m = 0, k = 0; m < count; m++)
+                for (int j = 0; j < size; j++)
+                    z[k++] += biases[j];
+            activation = activations[i + 1];
+            Activation f = h.getActivation();
+            if (f.isElementwise())
+                f.forward(z, activation, 0, count * size);
+            else {
+                for (int m = 0; m < count; m++)
+                    f.forward(z, activation, m * size, size);
+            }
+        }
+
+        // backward pass
+        startTime = ws.forwardCompleted(startTime);
+        int outputSize = layerSizes[numHiddens];
+        double[] delta = deltas[numHiddens - 1];
+        double[] z = zs[numHiddens - 1];
+        Activation f = layers[numHiddens - 1].getActivation();
+        double[] y = miniBatch.outputs;
+        for (int m = 0; m < count; m++)
+            cost.outputError(f, z, activation, y, (start + m) * outputSize, delta,
+                    m * outputSize, outputSize);
+        accumulate(numHiddens - 1, count, delta, activations[numHiddens - 1],
+                numHiddens == 1 ? inputOffset : 0, ws);
+
+        for (int l = numHiddens - 2; l >= 0; l--) {
+            FloatHiddenLayer h = layers[l + 1];
+            double[] previous = delta;
+            delta = deltas[l];
+            LinearAlgebra.gemmNN(count, h.getInputSize(), h.getSize(), previous, 0,
+                    h.getWeightsArray(), 0, delta, 0);
+            backwardBatch(l, count, delta, ws);
+            accumulate(l, count, delta, activations[l], l == 0 ? inputOffset : 0, ws);
+        }
+        ws.backwardCompleted(startTime);
+    }
+
+    private void backwardBatch(int layer, int count, double[] delta, BatchWorkspace ws) {
+        int size = layerSizes[layer + 1];
+        Activation f = layers[layer].getActivation();
+        double[] z = ws.batchZs[layer];
+        double[] a = ws.batchActivations[layer + 1];
+        if (f.isElementwise())
+            f.backward(z, a, delta, 0, count * size);
+        else {
+            for (int m = 0; m < count; m++)
+                f.backward(z, a, delta, m * size, size);
+        }
+    }
+
+    private void accumulate(int layer, int count, double[] delta, double[] activation,
+            int activationOffset, GradientWorkspace ws) {
+        int size = layerSizes[layer + 1];
+        double[] nablaB = ws.nablaB[layer];
+        for (int m = 0, k = 0; m < count; m++)
+            for (int j = 0; j < size; j++)
+                nablaB[j] += delta[k++];
+        LinearAlgebra.gemmTNAdd(size, layerSizes[layer], count, delta, 0, activation,
+                activationOffset, ws.nablaW[layer], 0);
+    }
+
+    /**
+     * Update the weights and biases using the accumulated gradients from a mini-batch, using
+     * the optimizer.  The update is calculated in {@code double} and the result rounded to
+     * {@code float} (see {@link Optimizer#update(int, float[], double[], int, double)}).
+     *
+     * @param   ws              the {@link GradientWorkspace} holding the gradients
+     * @param   batchSize       the number of items in the mini-batch
+     * @param   eta             the learning rate
+     */
+    private void applyGradients(GradientWorkspace ws, int batchSize, double eta) {
+        Optimizer opt = optimizer;
+        opt.beginStep();
+        for (int i = 0, numHiddens = layers.length; i < numHiddens; i++) {
+            FloatHiddenLayer h = layers[i];
+            // getBiases() and getWeightsArray() return references, not copies
+            opt.update(i * 2, h.getBiases(), ws.nablaB[i], batchSize, eta);
+            opt.update(i * 2 + 1, h.getWeightsArray(), ws.nablaW[i], batchSize, eta);
+        }
+    }
+
+    /**
+     * Create a {@link TrainingDataSource} view of a {@link FloatTrainingDataSource}, converting
+     * each item to {@code double} as it is accessed.
+     *
+     * @param   source  the {@link FloatTrainingDataSource}
+     * @return  the {@link TrainingDataSource}
+     */
+    static TrainingDataSource toTrainingDataSource(FloatTrainingDataSource source) {
+        return new TrainingDataSource() {
+            @Override
+            public TrainingData getItem(int index) {
+                FloatTrainingData td = source.getItem(index);
+                return new TrainingData() {
+                    @Override
+                    public double[] getInputs() {
+                        return toDouble(td.getInputs());
+                    }
+                    @Override
+                    public double[] getOutputs() {
+                        return toDouble(td.getOutputs());
+                    }
+                };
+            }
+            @Override
+            public int getSize() {
+                return source.getSize();
+            }
+        };
+    }
+
+    private static double[] toDouble(float[] array) {
+        double[] result = new double[array.length];
+        for (int i = 0; i < array.length; i++)
+            result[i] = array[i];
+        return result;
+    }
+
+    /**
+     * Create a display representation of the network for debug output.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FloatNetwork[");
+        for (int i = 0; i < layerSizes.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(layerSizes[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Configure training (use {@link Trainer#go()} to start training operation).
+     *
+     * @return  a {@link Trainer} object
+     */
+    public Trainer train() {
+        return new Trainer();
+    }
+
+    /**
+     * Configure training with a specified {@link FloatTrainingDataSource} (use
+     * {@link Trainer#go()} to start training operation).
+     *
+     * @param   trainingData    the training data
+     * @return  a {@link Trainer} object
+     */
+    public Trainer train(FloatTrainingDataSource trainingData) {
+        return train().trainingData(trainingData);
+    }
+
+    /**
+     * Configure training with a specified {@link TrainingDataSource}, which will be converted to
+     * single precision (use {@link Trainer#go()} to start training operation).
+     *
+     * @param   trainingData    the training data
+     * @return  a {@link Trainer} object
+     */
+    public Trainer train(TrainingDataSource trainingData) {
+        return train().trainingData(trainingData);
+    }
+
+    /**
+     * Inner class to provide "fluent" interface for network training operations (see
+     * {@link Network.Trainer}).
+     */
+    public class Trainer {
+
+        private FloatTrainingDataSource trainingData;
+        private TrainingDataSource testData;
+        private int epochs;
+        private int miniBatchSize;
+        private double eta;
+        private Random random;
+        private int parallelism;
+        private ForkJoinPool pool;
+        private boolean deterministic;
+        private Cost cost;
+        private Optimizer optimizer;
+        private LearningRateSchedule schedule;
+        private List<TrainingListener> listeners;
+        private boolean logging;
+
+        public Trainer() {
+            trainingData = null;
+            testData = null;
+            epochs = 30;
+            miniBatchSize = 10;
+            eta = 3.0;
+            random = null;
+            parallelism = 1;
+            pool = null;
+            deterministic = false;
+            cost = null;
+            optimizer = null;
+            schedule = LearningRateSchedule.constant();
+            listeners = new ArrayList<>();
+            logging = true;
+        }
+
+        public Trainer trainingData(FloatTrainingDataSource trainingData) {
+            this.trainingData = trainingData;
+            return this;
+        }
+
+        public Trainer trainingData(TrainingDataSource trainingData) {
+            return trainingData(new FloatTrainingDataSet(trainingData));
+        }
+
+        public Trainer testData(FloatTrainingDataSource testData) {
+            return testData(testData == null ? null : toTrainingDataSource(testData));
+        }
+
+        public Trainer testData(TrainingDataSource testData) {
+            this.testData = testData;
+            return this;
+        }
+
+        public Trainer epochs(int epochs) {
+            this.epochs = epochs;
+            return this;
+        }
+
+        public Trainer miniBatchSize(int miniBatchSize) {
+            this.miniBatchSize = miniBatchSize;
+            return this;
+        }
+
+        public Trainer eta(double eta) {
+            this.eta = eta;
+            return this;
+        }
+
+        public Trainer random(Random random) {
+            this.random = random;
+            return this;
+        }
+
+        /**
+         * Select parallel training (see {@link Network.Trainer#parallelism(int)}).
+         *
+         * @param   parallelism the number of worker threads
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the parallelism is less than 1
+         */
+        public Trainer parallelism(int parallelism) {
+            if (parallelism < 1)
+                throw new IllegalArgumentException("parallelism must be >= 1");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Select parallel training using the supplied {@link ForkJoinPool} (see
+         * {@link Network.Trainer#pool(ForkJoinPool)}).
+         *
+         * @param   pool        the {@link ForkJoinPool}
+         * @return  the {@code Trainer}
+         */
+        public Trainer pool(ForkJoinPool pool) {
+            this.pool = Objects.requireNonNull(pool);
+            return this;
+        }
+
+        /**
+         * Select deterministic reduction (see {@link Network.Trainer#deterministic(boolean)}).
+         *
+         * @param   deterministic   {@code true} to select deterministic reduction
+         * @return  the {@code Trainer}
+         */
+        public Trainer deterministic(boolean deterministic) {
+            this.deterministic = deterministic;
+            return this;
+        }
+
+        /**
+         * Select the cost function (see {@link Network.Trainer#cost(Cost)}).
+         *
+         * @param   cost        the {@link Cost}
+         * @return  the {@code Trainer}
+         */
+        public Trainer cost(Cost cost) {
+            this.cost = Objects.requireNonNull(cost);
+            return this;
+        }
+
+        /**
+         * Select the optimizer (see {@link Network.Trainer#optimizer(Optimizer)}).
+         *
+         * @param   optimizer   the {@link Optimizer}
+         * @return  the {@code Trainer}
+         */
+        public Trainer optimizer(Optimizer optimizer) {
+            this.optimizer = Objects.requireNonNull(optimizer);
+            return this;
+        }
+
+        /**
+         * Select a learning rate schedule (see
+         * {@link Network.Trainer#schedule(LearningRateSchedule)}).
+         *
+         * @param   schedule    the {@link LearningRateSchedule}
+         * @return  the {@code Trainer}
+         */
+        public Trainer schedule(LearningRateSchedule schedule) {
+            this.schedule = Objects.requireNonNull(schedule);
+            return this;
+        }
+
+        /**
+         * Add a {@link TrainingListener} (see
+         * {@link Network.Trainer#listener(TrainingListener)}).
+         *
+         * @param   listener    the {@link TrainingListener}
+         * @return  the {@code Trainer}
+         */
+        public Trainer listener(TrainingListener listener) {
+            listeners.add(Objects.requireNonNull(listener));
+            return this;
+        }
+
+        /**
+         * Select the default {@link LoggingTrainingListener} (see
+         * {@link Network.Trainer#logging(boolean)}), which logs to the log of the
+         * {@code FloatNetwork} class.
+         *
+         * @param   logging     {@code true} to select the default listener
+         * @return  the {@code Trainer}
+         */
+        public Trainer logging(boolean logging) {
+            this.logging = logging;
+            return this;
+        }
+
+        /**
+         * Run the training operation.
+         *
+         * @throws  IllegalArgumentException if the number of epochs is less than 1, or the
+         *          training data is not of the sizes expected by the network
+         */
+        public void go() {
+            FloatTrainingDataSource tds = Objects.requireNonNull(trainingData);
+            int size = tds.getSize();
+            if (cost != null)
+                setCost(cost);
+            if (optimizer != null)
+                setOptimizer(optimizer);
+            if (log.isInfoEnabled()) {
+                log.info("Stochastic Gradient Descent on " + FloatNetwork.this.toString() +
+                        "; training data " + size + "; " + epochs +
+                        " epochs; mini-batch size " + miniBatchSize + "; eta " + eta +
+                        "; cost " + FloatNetwork.this.cost + "; optimizer " +
+                        FloatNetwork.this.optimizer +
+                        (parallelism > 1 ? "; parallelism " + parallelism : ""));
+            }
+            Random r = random != null ? random : new Random();
+            if (epochs < 1)
+                throw new IllegalArgumentException("number of epochs must be >= 1");
+            int[] index = new int[size];
+            for (int i = 0; i < size; i++)
+                index[i] = i;
+            MiniBatch miniBatch = new MiniBatch(miniBatchSize, layerSizes[0],
+                    layerSizes[layerSizes.length - 1]);
+            BatchWorkspace ws = null;
+            ParallelGradient parallel = null;
+            ForkJoinPool ownPool = null;
+            ForkJoinPool evaluationPool = null;
+            if (parallelism > 1 || pool != null || deterministic) {
+                ForkJoinPool fjp = pool;
+                if (fjp == null && parallelism > 1)
+                    fjp = ownPool = new ForkJoinPool(parallelism);
+                evaluationPool = fjp;
+                int partitions = deterministic ? ParallelGradient.deterministicPartitions :
+                        fjp != null ? fjp.getParallelism() : 1;
+                parallel = new ParallelGradient(FloatNetwork.this::backPropBatch, fjp,
+                        partitions, miniBatchSize, layerSizes);
+            }
+            else
+                ws = new BatchWorkspace(miniBatchSize, layerSizes);
+            List<TrainingListener> activeListeners = new ArrayList<>();
+            if (logging && log.isInfoEnabled())
+                activeListeners.add(new LoggingTrainingListener(log));
+            activeListeners.addAll(listeners);
+            TrainingMonitor monitor = activeListeners.isEmpty() ? null :
+                    new TrainingMonitor(FloatNetwork.this, epochs, activeListeners);
+            if (parallel != null)
+                parallel.setTimed(monitor != null);
+            else
+                ws.timed = monitor != null;
+            try {
+                if (monitor != null)
+                    monitor.trainingStarted();
+                for (int epoch = 0; epoch < epochs; epoch++) {
+                    double rate = schedule.getRate(eta, epoch);
+                    if (monitor != null)
+                        monitor.beginEpoch(epoch, rate);
+                    TrainingDataRandom.shuffle(index, r);
+                    for (int k = 0; k < size; k += miniBatchSize) {
+                        if (monitor != null)
+                            monitor.beginMiniBatch();
+                        int n = Math.min(miniBatchSize, size - k);
+                        miniBatch.fill(tds, index, k, n);
+                        GradientWorkspace gradients;
+                        if (parallel != null)
+                            gradients = parallel.compute(miniBatch);
+                        else {
+                            ws.clear();
+                            backPropBatch(miniBatch, 0, n, ws);
+                            gradients = ws;
+                        }
+                        if (monitor == null)
+                            applyGradients(gradients, n, rate);
+                        else {
+                            monitor.beginUpdate();
+                            applyGradients(gradients, n, rate);
+                            monitor.endMiniBatch(n, gradients.takeForwardNanos(),
+                                    gradients.takeBackwardNanos());
+                        }
+                    }
+                    if (monitor != null)
+                        monitor.endEpoch(testData, evaluationPool);
+                }
+            }
+            finally {
+                if (ownPool != null)
+                    ownPool.shutdown();
+                if (monitor != null)
+                    monitor.trainingCompleted();
+            }
+        }
+
+    }
+
+}
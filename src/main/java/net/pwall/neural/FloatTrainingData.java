@@ -0,0 +1,69 @@
+/*
+ * @(#) FloatTrainingData.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Training data for a {@link FloatNetwork}: the single-precision equivalent of
+ * {@link TrainingData}.
+ *
+ * @author Peter Wall
+ */
+public interface FloatTrainingData {
+
+    /**
+     * Get a set of inputs for training.
+     *
+     * @return  the set of inputs as a {@code float} array
+     */
+    float[] getInputs();
+
+    /**
+     * Get the expected outputs for training.
+     *
+     * @return  the set of expected outputs as a {@code float} array
+     */
+    float[] getOutputs();
+
+    /**
+     * Get the expected output as an integer index (the index of the highest value in the output
+     * array).
+     *
+     * @return  the expected output integer
+     */
+    default int getHighestOutputIndex() {
+        float[] outputs = getOutputs();
+        int result = 0;
+        float highest = outputs[0];
+        for (int i = 1, n = outputs.length; i < n; i++) {
+            if (outputs[i] > highest) {
+                highest = outputs[i];
+                result = i;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * @(#) FloatTrainingDataSet.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link FloatTrainingDataSource} holding all of its data in memory, in two single-precision
+ * arrays (one for the inputs and one for the expected outputs, each with one row per item).
+ * This takes half the memory of the equivalent {@code double} data.
+ *
+ * @author  Peter Wall
+ */
+public class FloatTrainingDataSet implements FloatTrainingDataSource {
+
+    private int size;
+    private int inputSize;
+    private int outputSize;
+    private float[] inputs;
+    private float[] outputs;
+
+    /**
+     * Construct a {@code FloatTrainingDataSet} by copying the data from a
+     * {@link TrainingDataSource}, converting it to single precision.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @throws  IllegalArgumentException if the source is empty, or the items are not all of
+     *                  the same dimensions
+     */
+    public FloatTrainingDataSet(TrainingDataSource source) {
+        size = Objects.requireNonNull(source).getSize();
+        if (size <= 0)
+            throw new IllegalArgumentException("Training data must not be empty");
+        TrainingData first = source.getItem(0);
+        inputSize = first.getInputs().length;
+        outputSize = first.getOutputs().length;
+        inputs = new float[size * inputSize];
+        outputs = new float[size * outputSize];
+        for (int i = 0; i < size; i++) {
+            TrainingData td = source.getItem(i);
+            copyRow(td.getInputs(), inputs, i, inputSize);
+            copyRow(td.getOutputs(), outputs, i, outputSize);
+        }
+    }
+
+    private static void copyRow(double[] row, float[] target, int i, int rowSize) {
+        if (row.length != rowSize)
+            throw new IllegalArgumentException("Training data wrong size (" + row.length +
+                    " != " + rowSize + ')');
+        for (int j = 0, k = i * rowSize; j < rowSize; j++)
+            target[k++] = (float)row[j];
+    }
+
+    /**
+     * Get a {@link FloatTrainingData} item.  The arrays returned by the item are copies.
+     *
+     * @param   index   the index of the item
+     * @return  the {@link FloatTrainingData} item
+     */
+    @Override
+    public FloatTrainingData getItem(int index) {
+        if (index < 0 || index >= size)
+            throw new IllegalArgumentException("index is not in range: " + index);
+        return new FloatTrainingData() {
+            @Override
+            public float[] getInputs() {
+                return Arrays.copyOfRange(inputs, index * inputSize, (index + 1) * inputSize);
+            }
+            @Override
+            public float[] getOutputs() {
+                return Arrays.copyOfRange(outputs, index * outputSize,
+                        (index + 1) * outputSize);
+            }
+        };
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of inputs in each item.
+     *
+     * @return  the input size
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the number of expected outputs in each item.
+     *
+     * @return  the output size
+     */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Copy the inputs of an item into a {@code double} array, without creating any
+     * intermediate array.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     */
+    void copyInputs(int index, double[] target, int offset) {
+        for (int j = 0, k = index * inputSize; j < inputSize; j++)
+            target[offset++] = inputs[k++];
+    }
+
+    /**
+     * Copy the expected outputs of an item into a {@code double} array, without creating any
+     * intermediate array.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     */
+    void copyOutputs(int index, double[] target, int offset) {
+        for (int j = 0, k = index * outputSize; j < outputSize; j++)
+            target[offset++] = outputs[k++];
+    }
+
+}
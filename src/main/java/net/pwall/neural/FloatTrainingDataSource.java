@@ -0,0 +1,52 @@
+/*
+ * @(#) FloatTrainingDataSource.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Source of training data for a {@link FloatNetwork}: the single-precision equivalent of
+ * {@link TrainingDataSource}.  An existing {@link TrainingDataSource} may be converted using
+ * {@link FloatTrainingDataSet}.
+ *
+ * @author Peter Wall
+ */
+public interface FloatTrainingDataSource {
+
+    /**
+     * Get a {@link FloatTrainingData} item.
+     *
+     * @param   index   the index of the item
+     * @return  the {@link FloatTrainingData} item
+     */
+    FloatTrainingData getItem(int index);
+
+    /**
+     * Get the size of the training data (number of entries).
+     *
+     * @return  the number of entries
+     */
+    int getSize();
+
+}
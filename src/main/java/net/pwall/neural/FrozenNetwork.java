@@ -0,0 +1,217 @@
+/*
+ * @(#) FrozenNetwork.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * An immutable snapshot of a {@link Network}, for use in inference.  The weights and biases are
+ * copied when the snapshot is created, and nothing in a {@code FrozenNetwork} is modified after
+ * construction, so a single instance may be shared by any number of threads (for example, one
+ * model serving requests from a thread pool).
+ *
+ * <p>Each thread must use its own {@link InferenceContext}; the methods that do not take a
+ * context argument use a context held in a {@link ThreadLocal}.</p>
+ *
+ * @author  Peter Wall
+ */
+public class FrozenNetwork implements Predictor {
+
+    private final int[] layerSizes;
+    private final HiddenLayer[] hiddenLayers;
+    private final ThreadLocal<InferenceContext> threadContext;
+
+    /**
+     * Construct a {@code FrozenNetwork} from the layers of a {@link Network}.
+     *
+     * @param   inputLayer      the input layer
+     * @param   layers          the hidden layers
+     */
+    FrozenNetwork(InputLayer inputLayer, HiddenLayer[] layers) {
+        int numHiddens = layers.length;
+        int[] sizes = new int[numHiddens + 1];
+        sizes[0] = inputLayer.getSize();
+        HiddenLayer[] copies = new HiddenLayer[numHiddens];
+        Layer previous = new InputLayer(sizes[0]);
+        for (int i = 0; i < numHiddens; i++) {
+            copies[i] = new HiddenLayer(previous, layers[i]);
+            sizes[i + 1] = copies[i].getSize();
+            previous = copies[i];
+        }
+        layerSizes = sizes;
+        hiddenLayers = copies;
+        threadContext = ThreadLocal.withInitial(this::newInferenceContext);
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    @Override
+    public double[] predict(double[] inputs, InferenceContext context) {
+        if (inputs.length != layerSizes[0])
+            throw new IllegalArgumentException("Inputs array wrong size");
+        Object event = FlightRecorderEvents.beginInference();
+        double[][] outputs = context.check(layerSizes).outputs;
+        double[] activation = inputs;
+        for (int i = 0, n = hiddenLayers.length; i < n; i++) {
+            hiddenLayers[i].forward(activation, outputs[i]);
+            activation = outputs[i];
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, 1);
+        return activation;
+    }
+
+    /**
+     * Process a batch of inputs packed into an array (see
+     * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}), calculating
+     * the outputs of each layer for the whole batch as a single matrix-matrix product.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is too small, the number of items
+     *                  exceeds the capacity of the context, or the context does not match the
+     *                  layer sizes
+     */
+    @Override
+    public double[] predictBatch(double[] inputs, int offset, int count,
+            BatchInferenceContext context) {
+        double[][] outputs = context.check(layerSizes, count).outputs;
+        context.checkInputs(inputs, offset, count);
+        Object event = FlightRecorderEvents.beginInference();
+        double[] activation = inputs;
+        int activationOffset = offset;
+        for (int i = 0, n = hiddenLayers.length; i < n; i++) {
+            hiddenLayers[i].forwardBatch(activation, activationOffset, count, outputs[i]);
+            activation = outputs[i];
+            activationOffset = 0;
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, count);
+        return context.complete(count);
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, storing the outputs in the
+     * supplied array and using a per-thread {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @param   outputs the array to hold the outputs
+     * @throws  IllegalArgumentException if either array is of the wrong size
+     */
+    public void predict(double[] inputs, double[] outputs) {
+        predict(inputs, outputs, threadContext.get());
+    }
+
+    /**
+     * Process an array of inputs to get the index of the highest output, using a per-thread
+     * {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @return  the index of the highest output
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size
+     */
+    public int predictClass(double[] inputs) {
+        return predictClass(inputs, threadContext.get());
+    }
+
+    /**
+     * Create a {@link QuantizedNetwork} from this network, with the weights quantized to 8-bit
+     * integers, to reduce the memory needed for inference.
+     *
+     * @return  the {@link QuantizedNetwork}
+     */
+    public QuantizedNetwork quantize() {
+        return new QuantizedNetwork(layerSizes, this::getActivation,
+                i -> hiddenLayers[i - 1].getBiases(),
+                i -> hiddenLayers[i - 1].getWeightsArray());
+    }
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    @Override
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    /**
+     * Get a copy of the weights of a layer, in the row-major form described in
+     * {@link HiddenLayer#getWeightsArray()}.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  a copy of the weights
+     */
+    public double[] getWeights(int index) {
+        return hiddenLayers[index - 1].getWeightsArray().clone();
+    }
+
+    /**
+     * Get the activation function of a layer.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  the {@link Activation}
+     */
+    public Activation getActivation(int index) {
+        return hiddenLayers[index - 1].getActivation();
+    }
+
+    /**
+     * Get a copy of the biases of a layer.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  a copy of the biases
+     */
+    public double[] getBiases(int index) {
+        return hiddenLayers[index - 1].getBiases().clone();
+    }
+
+    /**
+     * Create a display representation of the network for debug output.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FrozenNetwork[");
+        for (int i = 0; i < layerSizes.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(layerSizes[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+}
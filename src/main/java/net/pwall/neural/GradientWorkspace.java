@@ -0,0 +1,137 @@
+/*
+ * @(#) GradientWorkspace.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+
+/**
+ * Gradient accumulators for back-propagation.  A {@code GradientWorkspace} holds the gradients
+ * of the cost function with respect to the biases and weights of each layer, summed over the
+ * items of a mini-batch, along with the totals used when the forward and backward passes are
+ * timed.  This is the common base of {@link TrainingWorkspace}, which adds the storage needed to
+ * process a single item, and {@link BatchWorkspace}, which adds the storage for a complete
+ * mini-batch; the optimizer update and the reduction of partitioned gradients need only the
+ * accumulators.
+ *
+ * <p>When timing is selected (for the {@link TrainingMetrics} supplied to a
+ * {@link TrainingListener}), back-propagation adds the time taken by the forward and backward
+ * passes to totals held in the workspace.</p>
+ *
+ * <p>A workspace is not thread-safe; each thread performing back-propagation must use its own
+ * workspace.</p>
+ *
+ * @author  Peter Wall
+ */
+class GradientWorkspace {
+
+    final double[][] nablaB;
+    final double[][] nablaW;
+    boolean timed;
+    long forwardNanos;
+    long backwardNanos;
+
+    /**
+     * Construct a {@code GradientWorkspace} for a network with the supplied layer sizes.
+     *
+     * @param   layerSizes      the layer sizes (including the input layer)
+     */
+    GradientWorkspace(int ... layerSizes) {
+        int numHiddens = layerSizes.length - 1;
+        nablaB = new double[numHiddens][];
+        nablaW = new double[numHiddens][];
+        for (int i = 0; i < numHiddens; i++) {
+            int size = layerSizes[i + 1];
+            nablaB[i] = new double[size];
+            nablaW[i] = new double[size * layerSizes[i]];
+        }
+    }
+
+    /**
+     * Reset the gradient accumulators to zero, ready for the next mini-batch.
+     */
+    void clear() {
+        for (int i = 0, n = nablaB.length; i < n; i++) {
+            Arrays.fill(nablaB[i], 0.0);
+            Arrays.fill(nablaW[i], 0.0);
+        }
+    }
+
+    /**
+     * Start timing a forward pass (if timing is selected).
+     *
+     * @return  the start time, or 0 if timing is not selected
+     */
+    long startTimer() {
+        return timed ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Complete the timing of a forward pass, and start timing the backward pass.
+     *
+     * @param   start   the start time of the forward pass
+     * @return  the start time of the backward pass
+     */
+    long forwardCompleted(long start) {
+        if (!timed)
+            return 0L;
+        long now = System.nanoTime();
+        forwardNanos += now - start;
+        return now;
+    }
+
+    /**
+     * Complete the timing of a backward pass.
+     *
+     * @param   start   the start time of the backward pass
+     */
+    void backwardCompleted(long start) {
+        if (timed)
+            backwardNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Get the total time spent in the forward pass, and reset the total to zero.
+     *
+     * @return  the time in nanoseconds
+     */
+    long takeForwardNanos() {
+        long result = forwardNanos;
+        forwardNanos = 0;
+        return result;
+    }
+
+    /**
+     * Get the total time spent in the backward pass, and reset the total to zero.
+     *
+     * @return  the time in nanoseconds
+     */
+    long takeBackwardNanos() {
+        long result = backwardNanos;
+        backwardNanos = 0;
+        return result;
+    }
+
+}
@@ -25,6 +25,7 @@
 
 package net.pwall.neural;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Random;
 
@@ -37,12 +38,28 @@ import java.util.Random;
  */
 public class HiddenLayer implements Layer {
 
+    /** Whether a class overrides {@link #activation(double)} (determined once per class). */
+    private static final ClassValue<Boolean> activationOverridden = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("activation", double.class).getDeclaringClass() !=
+                        HiddenLayer.class;
+            }
+            catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
     private Layer input;
     private int size;
     private int inputSize;
-    private double[][] weights;
+    private double[] weights;
     private double[] biases;
     private double[] outputs;
+    private Activation activation;
+    private final boolean customActivation;
 
     /**
      * Construct the input layer with the required size.
@@ -54,9 +71,29 @@ public class HiddenLayer implements Layer {
         this.input = Objects.requireNonNull(input);
         this.size = checkSize(size);
         inputSize = input.getSize();
-        weights = getZeroWeightsArray();
+        weights = new double[size * inputSize];
         biases = getZeroBiasesArray();
         outputs = new double[size];
+        activation = Activation.SIGMOID;
+        customActivation = getClass() != HiddenLayer.class && activationOverridden.get(getClass());
+    }
+
+    /**
+     * Construct a copy of an existing layer, with the same weights and biases, taking its
+     * inputs from the supplied layer.
+     *
+     * @param   input       the input layer (may be another hidden layer)
+     * @param   original    the layer to be copied
+     * @throws  IllegalArgumentException if the input layer is not the same size as that of the
+     *                      original layer
+     */
+    HiddenLayer(Layer input, HiddenLayer original) {
+        this(input, original.size);
+        if (inputSize != original.inputSize)
+            throw new IllegalArgumentException("Wrong size");
+        System.arraycopy(original.weights, 0, weights, 0, weights.length);
+        System.arraycopy(original.biases, 0, biases, 0, size);
+        activation = original.activation;
     }
 
     /**
@@ -67,10 +104,9 @@ public class HiddenLayer implements Layer {
      * @param   r       the {@link Random}
      */
     public void init(Random r) {
-        for (int i = 0; i < weights.length; i++) {
-            double[] weightsi = weights[i];
+        for (int i = 0, k = 0; i < size; i++) {
             for (int j = 0; j < inputSize; j++)
-                weightsi[j] = r.nextGaussian();
+                weights[k++] = r.nextGaussian();
             biases[i] = r.nextGaussian();
         }
     }
@@ -80,28 +116,87 @@ public class HiddenLayer implements Layer {
      * but in practice the performance cost of setting up the parallel stream would greatly
      * outweigh the possible benefits.
      *
-     * <p>Implementation note: this method could use {@link Network#dot(double[][], double[])},
-     * but that method allocates a new {@code double[]} to hold the result, and memory
-     * allocations are very costly in termms of performance.</p>
+     * <p>Implementation note: the weighted sums are calculated by
+     * {@link LinearAlgebra#gemv(int, int, double[], int, double[], int, double[], int)} into
+     * the existing outputs array, because memory allocations are very costly in terms of
+     * performance.</p>
      */
     public void iterate() {
-        double[] inputs = input.getOutputs();
+        forward(input.getOutputs(), outputs);
+    }
 
-        // iterate over each neuron
+    /**
+     * Calculate the outputs of the layer for the supplied inputs, storing them in the supplied
+     * array.  Unlike {@link #iterate()}, this method does not modify the state of the layer, so
+     * it may be used by multiple threads at the same time.
+     *
+     * @param   inputs  the inputs (of the size of the input layer)
+     * @param   outputs the array to hold the outputs (of the size of this layer)
+     */
+    public void forward(double[] inputs, double[] outputs) {
 
-        for (int i = 0; i < weights.length; i++) {
-            double[] neuronWeights = weights[i];
-            double sum = 0.0;
+        // weighted sums for all neurons (the weights for neuron i are at i * inputSize)
 
-            // iterate over inputs to neuron
+        LinearAlgebra.gemv(size, inputSize, weights, 0, inputs, 0, outputs, 0);
 
-            for (int j = 0; j < inputSize; j++)
-                sum += inputs[j] * neuronWeights[j];
+        for (int i = 0; i < size; i++)
+            outputs[i] += biases[i];
+        if (customActivation)
+            applyCustomActivation(outputs, size);
+        else
+            activation.forward(outputs, outputs, 0, size);
+    }
 
-            outputs[i] = activation(sum + biases[i]);
+    /**
+     * Calculate the outputs of the layer for a batch of inputs, with one row of inputs for each
+     * item, storing them as a matrix with one row of outputs for each item.  The weighted sums
+     * are calculated as a single matrix-matrix product.  Like
+     * {@link #forward(double[], double[])}, this method does not modify the state of the layer.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   outputs the array to hold the outputs
+     */
+    public void forwardBatch(double[] inputs, int offset, int count, double[] outputs) {
+        LinearAlgebra.gemmNT(count, size, inputSize, inputs, offset, weights, 0, outputs, 0);
+        for (int m = 0, k = 0; m < count; m++)
+            for (int i = 0; i < size; i++)
+                outputs[k++] += biases[i];
+        if (customActivation)
+            applyCustomActivation(outputs, count * size);
+        else if (activation.isElementwise())
+            activation.forward(outputs, outputs, 0, count * size);
+        else {
+            for (int m = 0; m < count; m++)
+                activation.forward(outputs, outputs, m * size, size);
         }
     }
 
+    @SuppressWarnings("deprecation")
+    private void applyCustomActivation(double[] outputs, int length) {
+        for (int i = 0; i < length; i++)
+            outputs[i] = activation(outputs[i]);
+    }
+
+    /**
+     * Get the activation function of the layer.
+     *
+     * @return  the {@link Activation}
+     */
+    public Activation getActivation() {
+        return activation;
+    }
+
+    /**
+     * Set the activation function of the layer (the default is {@link Activation#SIGMOID}).
+     *
+     * @param   activation  the {@link Activation}
+     */
+    public void setActivation(Activation activation) {
+        this.activation = Objects.requireNonNull(activation);
+    }
+
     /**
      * Get the input layer to this layer.  That may be an {@link InputLayer} or another
      *  {@link HiddenLayer}
@@ -135,14 +230,26 @@ public class HiddenLayer implements Layer {
     }
 
     /**
-     * Get the weights as a 2-dimension array.  For performance reasons this method returns a
-     * reference to the original array rather than a copy; the array must be treated as
-     * immutable.
+     * Get the number of inputs to each neuron in this layer (the size of the input layer).
      *
-     * @return  the weights
+     * @return  the input size
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the weights as a 2-dimension array.  The weights are held internally in a single
+     * row-major array (see {@link #getWeightsArray()}), so this method returns a copy; changes
+     * to the returned array will not affect the layer.
+     *
+     * @return  a copy of the weights
      */
     public double[][] getWeights() {
-        return weights;
+        double[][] result = new double[size][];
+        for (int i = 0; i < size; i++)
+            result[i] = Arrays.copyOfRange(weights, i * inputSize, (i + 1) * inputSize);
+        return result;
     }
 
     /**
@@ -152,10 +259,37 @@ public class HiddenLayer implements Layer {
      * @throws  IllegalArgumentException if the array is of the wrong dimensions
      */
     public void setWeights(double[][] newWeights) {
-        if (newWeights.length != size || newWeights[0].length != inputSize)
+        if (newWeights.length != size)
             throw new IllegalArgumentException("Wrong size");
-        for (int i = 0; i < size; i++)
-            System.arraycopy(newWeights[i], 0, weights[i], 0, inputSize);
+        for (int i = 0; i < size; i++) {
+            if (newWeights[i].length != inputSize)
+                throw new IllegalArgumentException("Wrong size");
+            System.arraycopy(newWeights[i], 0, weights, i * inputSize, inputSize);
+        }
+    }
+
+    /**
+     * Get the weights as a single row-major array, in which the weights for neuron {@code i}
+     * occupy the {@code inputSize} entries starting at {@code i * inputSize}.  For performance
+     * reasons this method returns a reference to the original array rather than a copy; the
+     * array must be treated as immutable.
+     *
+     * @return  the weights
+     */
+    public double[] getWeightsArray() {
+        return weights;
+    }
+
+    /**
+     * Set the weights from a supplied row-major array (see {@link #getWeightsArray()}).
+     *
+     * @param   newWeights      the new weights
+     * @throws  IllegalArgumentException if the array is of the wrong size
+     */
+    public void setWeightsArray(double[] newWeights) {
+        if (newWeights.length != weights.length)
+            throw new IllegalArgumentException("Wrong size");
+        System.arraycopy(newWeights, 0, weights, 0, weights.length);
     }
 
     /**
@@ -180,14 +314,32 @@ public class HiddenLayer implements Layer {
     }
 
     /**
-     * The activation function.  This is a separate method so that it may be overridden in a
-     * subclass.
+     * Get a zero array of the same size as the row-major weights array.
+     *
+     * @return  the zero array
+     */
+    public double[] getZeroWeightsFlatArray() {
+        return new double[weights.length];
+    }
+
+    /**
+     * The activation function, applied to a single value.  If a subclass overrides this method,
+     * the override is applied element by element in place of the {@link Activation} of the layer
+     * by {@link #iterate()}, {@link #forward(double[], double[])} and
+     * {@link #forwardBatch(double[], int, int, double[])} (the override is detected once for each
+     * class).  It is not used in training, where the derivative is also needed, or by copies of
+     * the layer such as those in a {@link FrozenNetwork}; a subclass should instead supply an
+     * {@link Activation} (see {@link #setActivation(Activation)}).
      *
      * @param   d       the raw value
      * @return  the activation function value
+     * @throws  UnsupportedOperationException if the activation function is not applied element
+     *                  by element
+     * @deprecated      use {@link #getActivation()}
      */
+    @Deprecated
     public double activation(double d) {
-        return 1.0 / (1.0 + Math.exp(-d)); // sigmoid function
+        return activation.apply(d);
     }
 
     /**
@@ -0,0 +1,383 @@
+/*
+ * @(#) IDXFile.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A file in the IDX format (as used for the MNIST data), accessed by memory-mapping.  The file
+ * is not read onto the heap: the header is parsed when the file is opened, and the data is
+ * mapped into memory, so that opening even a very large file takes very little time and the
+ * operating system pages the data in as it is used.
+ *
+ * <p>An IDX file holds a multi-dimensional array of elements of one of the types described by
+ * {@link ElementType}, stored big-endian.  The first dimension is treated as the number of
+ * records, and the remaining dimensions as the shape of each record (so that a file of 60000
+ * images of 28 &times; 28 pixels has 60000 records of 784 elements).  Because a single
+ * {@link MappedByteBuffer} is limited to 2GB, the data is mapped in chunks, each holding a
+ * whole number of records.</p>
+ *
+ * <p>The access functions use only absolute reads from the mapped buffers, so an
+ * {@code IDXFile} may be read by multiple threads concurrently.</p>
+ *
+ * @author  Peter Wall
+ */
+public class IDXFile {
+
+    /** The maximum size of each mapped chunk. */
+    private static final int defaultChunkBytes = 1 << 30;
+
+    /**
+     * The element types of the IDX format, with the type codes used in the file header.
+     */
+    public enum ElementType {
+
+        UBYTE(0x08, 1),
+        BYTE(0x09, 1),
+        SHORT(0x0B, 2),
+        INT(0x0C, 4),
+        FLOAT(0x0D, 4),
+        DOUBLE(0x0E, 8);
+
+        private final int code;
+        private final int size;
+
+        ElementType(int code, int size) {
+            this.code = code;
+            this.size = size;
+        }
+
+        /**
+         * Get the type code used in the file header.
+         *
+         * @return  the type code
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * Get the size of an element in bytes.
+         *
+         * @return  the size
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Get the {@code ElementType} for a type code.
+         *
+         * @param   code    the type code
+         * @return          the {@code ElementType}, or {@code null} if the code is not valid
+         */
+        public static ElementType forCode(int code) {
+            for (ElementType type : values())
+                if (type.code == code)
+                    return type;
+            return null;
+        }
+
+    }
+
+    private Path path;
+    private ElementType elementType;
+    private int[] dimensions;
+    private int numRecords;
+    private int recordSize;
+    private int recordBytes;
+    private int recordsPerChunk;
+    private ByteBuffer[] chunks;
+
+    /**
+     * Open an IDX file, parsing the header and mapping the data into memory.
+     *
+     * @param   path    the {@link Path} of the file
+     * @throws  IOException if the file can not be opened, or is not a valid IDX file
+     */
+    public IDXFile(Path path) throws IOException {
+        this(path, defaultChunkBytes);
+    }
+
+    /**
+     * Open an IDX file, mapping the data in chunks of no more than the specified size (except
+     * where a single record is larger).
+     *
+     * @param   path        the {@link Path} of the file
+     * @param   chunkBytes  the maximum size of each mapped chunk
+     * @throws  IOException if the file can not be opened, or is not a valid IDX file
+     */
+    IDXFile(Path path, int chunkBytes) throws IOException {
+        this.path = Objects.requireNonNull(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(channel, header, 0);
+            if (header.get(0) != 0 || header.get(1) != 0)
+                throw new IOException("Incorrect magic number: " + path);
+            elementType = ElementType.forCode(header.get(2) & 0xFF);
+            if (elementType == null)
+                throw new IOException("Unrecognised element type " + (header.get(2) & 0xFF) +
+                        ": " + path);
+            int numDimensions = header.get(3) & 0xFF;
+            if (numDimensions < 1)
+                throw new IOException("No dimensions: " + path);
+            ByteBuffer dims = ByteBuffer.allocate(numDimensions * 4);
+            readFully(channel, dims, 4);
+            dimensions = new int[numDimensions];
+            long elements = 1;
+            for (int i = 0; i < numDimensions; i++) {
+                int dim = dims.getInt(i * 4);
+                if (dim < 0)
+                    throw new IOException("Negative dimension: " + path);
+                dimensions[i] = dim;
+                if (i > 0)
+                    elements *= dim;
+            }
+            long recordLength = elements * elementType.getSize();
+            if (recordLength > Integer.MAX_VALUE)
+                throw new IOException("Record too large to map: " + path);
+            numRecords = dimensions[0];
+            recordSize = (int)elements;
+            recordBytes = (int)recordLength;
+            long dataOffset = 4 + numDimensions * 4;
+            if (dataOffset + (long)numRecords * recordBytes > fileSize)
+                throw new IOException("File too short for dimensions: " + path);
+            recordsPerChunk = recordBytes == 0 ? Math.max(numRecords, 1) :
+                    Math.max(chunkBytes / recordBytes, 1);
+            int numChunks = (int)(((long)numRecords + recordsPerChunk - 1) / recordsPerChunk);
+            chunks = new ByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                int records = Math.min(recordsPerChunk, numRecords - i * recordsPerChunk);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataOffset + (long)i * recordsPerChunk * recordBytes,
+                        (long)records * recordBytes);
+                chunk.order(ByteOrder.BIG_ENDIAN);
+                chunks[i] = chunk;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0)
+                throw new IOException("Unexpected EOF");
+        }
+    }
+
+    /**
+     * Get the {@link Path} of the file.
+     *
+     * @return  the {@link Path}
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the element type.
+     *
+     * @return  the {@link ElementType}
+     */
+    public ElementType getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Get the dimensions of the data.
+     *
+     * @return  a copy of the dimensions array
+     */
+    public int[] getDimensions() {
+        return dimensions.clone();
+    }
+
+    /**
+     * Get the number of records (the first dimension).
+     *
+     * @return  the number of records
+     */
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Get the number of elements in each record (the product of the remaining dimensions).
+     *
+     * @return  the record size
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Get an element of a record as a {@code double}.
+     *
+     * @param   record  the record index
+     * @param   element the element index within the record
+     * @return          the value
+     * @throws  IllegalArgumentException if either index is out of range
+     */
+    public double getValue(int record, int element) {
+        checkRecord(record);
+        if (element < 0 || element >= recordSize)
+            throw new IllegalArgumentException("element is not in range: " + element);
+        return read(chunks[record / recordsPerChunk], recordOffset(record) +
+                element * elementType.getSize());
+    }
+
+    /**
+     * Get an element of a record as an {@code int}.  This is intended for integer types (for
+     * example, labels); values of floating point types are truncated.
+     *
+     * @param   record  the record index
+     * @param   element the element index within the record
+     * @return          the value
+     * @throws  IllegalArgumentException if either index is out of range
+     */
+    public int getInt(int record, int element) {
+        checkRecord(record);
+        if (element < 0 || element >= recordSize)
+            throw new IllegalArgumentException("element is not in range: " + element);
+        ByteBuffer chunk = chunks[record / recordsPerChunk];
+        int offset = recordOffset(record) + element * elementType.getSize();
+        switch (elementType) {
+        case UBYTE:
+            return chunk.get(offset) & 0xFF;
+        case BYTE:
+            return chunk.get(offset);
+        case SHORT:
+            return chunk.getShort(offset);
+        case INT:
+            return chunk.getInt(offset);
+        default:
+            return (int)read(chunk, offset);
+        }
+    }
+
+    /**
+     * Copy a record into a {@code double} array, multiplying each value by a scale factor (for
+     * example, to convert pixel values in the range 0 to 255 to the range 0.0 to 1.0).  The
+     * values are read directly from the mapped file, without creating any intermediate array.
+     *
+     * @param   record  the record index
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @param   scale   the scale factor
+     * @return          the number of values copied (the record size)
+     * @throws  IllegalArgumentException if the record index is out of range
+     */
+    public int copyRecord(int record, double[] target, int offset, double scale) {
+        checkRecord(record);
+        ByteBuffer chunk = chunks[record / recordsPerChunk];
+        int position = recordOffset(record);
+        int n = recordSize;
+        switch (elementType) {
+        case UBYTE:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = (chunk.get(position + i) & 0xFF) * scale;
+            break;
+        case BYTE:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = chunk.get(position + i) * scale;
+            break;
+        case SHORT:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = chunk.getShort(position + i * 2) * scale;
+            break;
+        case INT:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = chunk.getInt(position + i * 4) * scale;
+            break;
+        case FLOAT:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = chunk.getFloat(position + i * 4) * scale;
+            break;
+        case DOUBLE:
+            for (int i = 0; i < n; i++)
+                target[offset + i] = chunk.getDouble(position + i * 8) * scale;
+            break;
+        }
+        return n;
+    }
+
+    /**
+     * Copy a record of a byte type ({@link ElementType#UBYTE} or {@link ElementType#BYTE}) into
+     * a {@code byte} array, without conversion.
+     *
+     * @param   record  the record index
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @return          the number of values copied (the record size)
+     * @throws  IllegalArgumentException if the record index is out of range
+     * @throws  IllegalStateException if the element type is not a byte type
+     */
+    public int copyRecord(int record, byte[] target, int offset) {
+        if (elementType != ElementType.UBYTE && elementType != ElementType.BYTE)
+            throw new IllegalStateException("Element type is not byte: " + elementType);
+        checkRecord(record);
+        ByteBuffer chunk = chunks[record / recordsPerChunk].duplicate();
+        chunk.position(recordOffset(record));
+        chunk.get(target, offset, recordSize);
+        return recordSize;
+    }
+
+    private double read(ByteBuffer chunk, int offset) {
+        switch (elementType) {
+        case UBYTE:
+            return chunk.get(offset) & 0xFF;
+        case BYTE:
+            return chunk.get(offset);
+        case SHORT:
+            return chunk.getShort(offset);
+        case INT:
+            return chunk.getInt(offset);
+        case FLOAT:
+            return chunk.getFloat(offset);
+        default:
+            return chunk.getDouble(offset);
+        }
+    }
+
+    private int recordOffset(int record) {
+        return (record % recordsPerChunk) * recordBytes;
+    }
+
+    private void checkRecord(int record) {
+        if (record < 0 || record >= numRecords)
+            throw new IllegalArgumentException("record is not in range: " + record);
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * @(#) IDXTrainingDataSource.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link TrainingDataSource} reading directly from a pair of memory-mapped IDX files (see
+ * {@link IDXFile}): one holding the inputs, with one record per item, and one holding the
+ * labels (the index of the expected output set to 1.0), with one element per item.  No data
+ * is copied onto the heap when the source is created; the inputs are converted to
+ * {@code double} as they are copied into the caller's arrays by
+ * {@link #copyInputs(int, double[], int)}.
+ *
+ * <p>For example, the MNIST training data may be accessed by:</p>
+ * <pre>
+ *     TrainingDataSource tds = new IDXTrainingDataSource(
+ *             new IDXFile(Paths.get("train-images.idx3-ubyte")),
+ *             new IDXFile(Paths.get("train-labels.idx1-ubyte")), 10, 1.0 / 256);
+ * </pre>
+ *
+ * @author  Peter Wall
+ */
+public class IDXTrainingDataSource implements TrainingDataSource {
+
+    private IDXFile inputs;
+    private IDXFile labels;
+    private int outputSize;
+    private double scale;
+
+    /**
+     * Construct an {@code IDXTrainingDataSource} from input and label files.
+     *
+     * @param   inputs      the {@link IDXFile} holding the inputs
+     * @param   labels      the {@link IDXFile} holding the labels
+     * @param   outputSize  the number of outputs for each item (the number of classes)
+     * @param   scale       the scale factor to be applied to each input value
+     * @throws  IllegalArgumentException if the files do not have the same number of records,
+     *                  the labels are not one per record, or the output size is not valid
+     */
+    public IDXTrainingDataSource(IDXFile inputs, IDXFile labels, int outputSize, double scale) {
+        this.inputs = Objects.requireNonNull(inputs);
+        this.labels = Objects.requireNonNull(labels);
+        if (inputs.getNumRecords() != labels.getNumRecords())
+            throw new IllegalArgumentException("Inputs and labels differ in size (" +
+                    inputs.getNumRecords() + " != " + labels.getNumRecords() + ')');
+        if (labels.getRecordSize() != 1)
+            throw new IllegalArgumentException("Labels must have one element per record");
+        if (outputSize <= 0)
+            throw new IllegalArgumentException("Output size must be > 0");
+        this.outputSize = outputSize;
+        this.scale = scale;
+    }
+
+    /**
+     * Construct an {@code IDXTrainingDataSource} from input and label files, using the input
+     * values unscaled.
+     *
+     * @param   inputs      the {@link IDXFile} holding the inputs
+     * @param   labels      the {@link IDXFile} holding the labels
+     * @param   outputSize  the number of outputs for each item (the number of classes)
+     * @throws  IllegalArgumentException if the files do not have the same number of records,
+     *                  the labels are not one per record, or the output size is not valid
+     */
+    public IDXTrainingDataSource(IDXFile inputs, IDXFile labels, int outputSize) {
+        this(inputs, labels, outputSize, 1.0);
+    }
+
+    /**
+     * Get a {@link TrainingData} item.  The arrays returned by the item are created on each
+     * call; {@link #copyInputs(int, double[], int)} and {@link #copyOutputs(int, double[], int)}
+     * avoid this.
+     *
+     * @param   index   the index of the item
+     * @return  the {@link TrainingData} item
+     */
+    @Override
+    public TrainingData getItem(int index) {
+        int label = getLabel(index);
+        return new TrainingData() {
+            @Override
+            public double[] getInputs() {
+                double[] result = new double[inputs.getRecordSize()];
+                inputs.copyRecord(index, result, 0, scale);
+                return result;
+            }
+            @Override
+            public double[] getOutputs() {
+                double[] result = new double[outputSize];
+                result[label] = 1.0;
+                return result;
+            }
+            @Override
+            public int getHighestOutputIndex() {
+                return label;
+            }
+        };
+    }
+
+    @Override
+    public int getSize() {
+        return inputs.getNumRecords();
+    }
+
+    @Override
+    public int copyInputs(int index, double[] target, int offset) {
+        return inputs.copyRecord(index, target, offset, scale);
+    }
+
+    @Override
+    public int copyOutputs(int index, double[] target, int offset) {
+        int label = getLabel(index);
+        Arrays.fill(target, offset, offset + outputSize, 0.0);
+        target[offset + label] = 1.0;
+        return outputSize;
+    }
+
+    /**
+     * Get the label for an item.
+     *
+     * @param   index   the index of the item
+     * @return          the label
+     * @throws  IllegalArgumentException if the index is out of range, or the label in the file
+     *                  is not in the range of the outputs
+     */
+    @Override
+    public int getLabel(int index) {
+        int label = labels.getInt(index, 0);
+        if (label < 0 || label >= outputSize)
+            throw new IllegalArgumentException("Label out of range: " + label);
+        return label;
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return true;
+    }
+
+    /**
+     * Get the number of inputs for each item.
+     *
+     * @return  the number of inputs
+     */
+    public int getInputSize() {
+        return inputs.getRecordSize();
+    }
+
+    /**
+     * Get the number of outputs for each item (the number of classes).
+     *
+     * @return  the number of outputs
+     */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * @(#) InferenceContext.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+
+/**
+ * Working storage for inference.  An {@code InferenceContext} holds an array for the outputs
+ * of each layer (other than the input layer) of a network, an array to hold a set of inputs
+ * (for use when the inputs are copied from a {@link TrainingDataSource}), and an array to hold
+ * the inputs to a layer in quantized form (for use by a {@link QuantizedNetwork}), so that a
+ * {@link Predictor} can process inputs without modifying any state of its own.  A
+ * {@link Predictor} may be used by any number of threads at the same time, as long as each
+ * thread uses its own context.
+ *
+ * <p>A context may be used with any {@link Predictor} having the same layer sizes.</p>
+ *
+ * @author  Peter Wall
+ */
+public class InferenceContext {
+
+    private int[] layerSizes;
+    final double[][] outputs;
+    final double[] inputs;
+    final byte[] quantized;
+
+    /**
+     * Construct an {@code InferenceContext} for a network with the supplied layer sizes.
+     *
+     * @param   layerSizes      the layer sizes (including the input layer)
+     * @throws  IllegalArgumentException if the number of layers less than 2
+     */
+    public InferenceContext(int ... layerSizes) {
+        int numLayers = layerSizes.length;
+        if (numLayers < 2)
+            throw new IllegalArgumentException("Must have 2 or more layers");
+        this.layerSizes = layerSizes.clone();
+        outputs = new double[numLayers - 1][];
+        for (int i = 1; i < numLayers; i++)
+            outputs[i - 1] = new double[layerSizes[i]];
+        inputs = new double[layerSizes[0]];
+        int maxInputs = 0;
+        for (int i = 0; i < numLayers - 1; i++)
+            maxInputs = Math.max(maxInputs, layerSizes[i]);
+        quantized = new byte[maxInputs];
+    }
+
+    /**
+     * Check that this context is suitable for a network with the supplied layer sizes.
+     *
+     * @param   sizes   the layer sizes of the network
+     * @return  this context
+     * @throws  IllegalArgumentException if the layer sizes do not match
+     */
+    InferenceContext check(int[] sizes) {
+        if (!Arrays.equals(layerSizes, sizes))
+            throw new IllegalArgumentException("Inference context does not match network");
+        return this;
+    }
+
+}
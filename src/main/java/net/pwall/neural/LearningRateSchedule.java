@@ -0,0 +1,105 @@
+/*
+ * @(#) LearningRateSchedule.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * A learning rate schedule: a function giving the learning rate to be used for each epoch of
+ * training, given the base learning rate (see {@link Network.Trainer#eta(double)}).
+ *
+ * @author  Peter Wall
+ */
+@FunctionalInterface
+public interface LearningRateSchedule {
+
+    /**
+     * Get the learning rate for an epoch.
+     *
+     * @param   eta     the base learning rate
+     * @param   epoch   the epoch number (starting from 0)
+     * @return  the learning rate
+     */
+    double getRate(double eta, int epoch);
+
+    /**
+     * Get a schedule that uses the base learning rate for every epoch (the default).
+     *
+     * @return  the schedule
+     */
+    static LearningRateSchedule constant() {
+        return (eta, epoch) -> eta;
+    }
+
+    /**
+     * Get a schedule that multiplies the learning rate by a factor after every {@code step}
+     * epochs.
+     *
+     * @param   step    the number of epochs between reductions
+     * @param   factor  the factor (for example, 0.5 to halve the learning rate)
+     * @return  the schedule
+     * @throws  IllegalArgumentException if the step is less than 1 or the factor is not
+     *                  positive
+     */
+    static LearningRateSchedule step(int step, double factor) {
+        if (step < 1)
+            throw new IllegalArgumentException("step must be >= 1");
+        if (!(factor > 0.0))
+            throw new IllegalArgumentException("factor must be > 0");
+        return (eta, epoch) -> eta * Math.pow(factor, epoch / step);
+    }
+
+    /**
+     * Get a schedule that multiplies the learning rate by a factor after every epoch.
+     *
+     * @param   factor  the factor (for example, 0.95)
+     * @return  the schedule
+     * @throws  IllegalArgumentException if the factor is not positive
+     */
+    static LearningRateSchedule exponential(double factor) {
+        return step(1, factor);
+    }
+
+    /**
+     * Get a schedule that reduces the learning rate from the base rate to a minimum over a
+     * number of epochs, following half a cosine curve, and uses the minimum thereafter.
+     *
+     * @param   epochs      the number of epochs over which the rate is reduced
+     * @param   minimum     the minimum learning rate, as a fraction of the base rate
+     * @return  the schedule
+     * @throws  IllegalArgumentException if the number of epochs is less than 1 or the minimum
+     *                      is not in the range 0 to 1
+     */
+    static LearningRateSchedule cosine(int epochs, double minimum) {
+        if (epochs < 1)
+            throw new IllegalArgumentException("epochs must be >= 1");
+        if (!(minimum >= 0.0 && minimum <= 1.0))
+            throw new IllegalArgumentException("minimum must be in range 0..1");
+        return (eta, epoch) -> {
+            double fraction = Math.min(epoch, epochs) / (double)epochs;
+            return eta * (minimum + (1.0 - minimum) * 0.5 * (1.0 + Math.cos(Math.PI * fraction)));
+        };
+    }
+
+}
@@ -0,0 +1,712 @@
+/*
+ * @(#) LinearAlgebra.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+
+/**
+ * Matrix functions operating on 2-dimension arrays held in row-major form in a single
+ * {@code double[]} (the layout used for the weights in {@link HiddenLayer}).  These are used by
+ * the batched training and inference functions, where a mini-batch of inputs is held as a
+ * matrix with one row per item.
+ *
+ * <p>The names follow the conventions of the BLAS functions {@code GEMM} (matrix-matrix),
+ * {@code GEMV} (matrix-vector) and {@code GER} (rank-1 update): the letters {@code N} and
+ * {@code T} indicate whether each operand is used as supplied or transposed.  For performance
+ * reasons the arrays are not checked beyond ensuring that they are large enough for the
+ * specified dimensions.</p>
+ *
+ * <p>The matrix-matrix functions are cache-blocked: the operands are processed in blocks small
+ * enough to remain in the processor cache while they are re-used, and the innermost loops work
+ * on small tiles held in local variables (which the JIT compiler keeps in registers), unrolled
+ * to give several independent operations per iteration.  Each element of a result is still
+ * accumulated in the same order as in the simple "triple loop" form, so the results are
+ * identical to those of the simple form.</p>
+ *
+ * @author  Peter Wall
+ */
+public class LinearAlgebra {
+
+    /** Block size for the shared dimension in {@code gemmNT}. */
+    private static final int blockK = 256;
+    /** Block size for the rows of the second operand in {@code gemmNT}. */
+    private static final int blockN = 64;
+    /** Block size for the shared dimension in {@code gemmNN}. */
+    private static final int blockKNN = 128;
+    /** Block size for the columns of the result in {@code gemmNN} and {@code gemmTNAdd}. */
+    private static final int blockNNN = 512;
+    /** Block size for the rows of the result in {@code gemmTNAdd}. */
+    private static final int blockMTN = 16;
+
+    private LinearAlgebra() {
+    }
+
+    /**
+     * Matrix multiplication with the second operand transposed: {@code C = A . B}<sup>T</sup>,
+     * where {@code A} is of dimension ({@code m}, {@code k}), {@code B} is of dimension
+     * ({@code n}, {@code k}) and {@code C} is of dimension ({@code m}, {@code n}).  This is the
+     * form used in the forward pass, where {@code A} holds a row of inputs for each item and
+     * {@code B} holds a row of weights for each neuron.  If {@code k} is zero, the result is a
+     * matrix of zeros.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of rows in {@code B} and columns in {@code C}
+     * @param   k       the number of columns in {@code A} and {@code B}
+     * @param   a       the first operand
+     * @param   b       the second operand
+     * @param   c       the array to hold the result
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNT(int m, int n, int k, double[] a, double[] b, double[] c) {
+        gemmNT(m, n, k, a, 0, b, 0, c, 0);
+    }
+
+    /**
+     * Matrix multiplication with the second operand transposed, as
+     * {@link #gemmNT(int, int, int, double[], double[], double[])}, with each matrix starting at
+     * a specified offset in its array.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of rows in {@code B} and columns in {@code C}
+     * @param   k       the number of columns in {@code A} and {@code B}
+     * @param   a       the first operand
+     * @param   aOffset the offset of the first operand in its array
+     * @param   b       the second operand
+     * @param   bOffset the offset of the second operand in its array
+     * @param   c       the array to hold the result
+     * @param   cOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNT(int m, int n, int k, double[] a, int aOffset, double[] b,
+            int bOffset, double[] c, int cOffset) {
+        checkSize(a, aOffset, m, k);
+        checkSize(b, bOffset, n, k);
+        checkSize(c, cOffset, m, n);
+        gemmNT(m, n, k, a, aOffset, b, null, bOffset, c, cOffset);
+    }
+
+    /**
+     * Matrix multiplication: {@code C = A . B}, where {@code A} is of dimension ({@code m},
+     * {@code k}), {@code B} is of dimension ({@code k}, {@code n}) and {@code C} is of dimension
+     * ({@code m}, {@code n}).  This is the form used to propagate the errors back through a
+     * layer, where {@code A} holds a row of errors for each item and {@code B} holds the
+     * weights.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of columns in {@code B} and {@code C}
+     * @param   k       the number of columns in {@code A} and rows in {@code B}
+     * @param   a       the first operand
+     * @param   b       the second operand
+     * @param   c       the array to hold the result
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNN(int m, int n, int k, double[] a, double[] b, double[] c) {
+        gemmNN(m, n, k, a, 0, b, 0, c, 0);
+    }
+
+    /**
+     * Matrix multiplication, as {@link #gemmNN(int, int, int, double[], double[], double[])},
+     * with each matrix starting at a specified offset in its array.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of columns in {@code B} and {@code C}
+     * @param   k       the number of columns in {@code A} and rows in {@code B}
+     * @param   a       the first operand
+     * @param   aOffset the offset of the first operand in its array
+     * @param   b       the second operand
+     * @param   bOffset the offset of the second operand in its array
+     * @param   c       the array to hold the result
+     * @param   cOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNN(int m, int n, int k, double[] a, int aOffset, double[] b,
+            int bOffset, double[] c, int cOffset) {
+        checkSize(a, aOffset, m, k);
+        checkSize(b, bOffset, k, n);
+        checkSize(c, cOffset, m, n);
+        gemmNN(m, n, k, a, aOffset, b, null, bOffset, c, cOffset);
+    }
+
+    /**
+     * Matrix multiplication with the first operand transposed, adding the result to the
+     * target: {@code C += A}<sup>T</sup>{@code  . B}, where {@code A} is of dimension
+     * ({@code k}, {@code m}), {@code B} is of dimension ({@code k}, {@code n}) and {@code C} is
+     * of dimension ({@code m}, {@code n}).  This is the form used to accumulate the weight
+     * gradients, where {@code A} holds a row of errors and {@code B} a row of input activations
+     * for each item; it is the sum of the outer products of the corresponding rows.
+     *
+     * @param   m       the number of columns in {@code A} and rows in {@code C}
+     * @param   n       the number of columns in {@code B} and {@code C}
+     * @param   k       the number of rows in {@code A} and {@code B}
+     * @param   a       the first operand
+     * @param   b       the second operand
+     * @param   c       the array to which the result is to be added
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmTNAdd(int m, int n, int k, double[] a, double[] b, double[] c) {
+        gemmTNAdd(m, n, k, a, 0, b, 0, c, 0);
+    }
+
+    /**
+     * Matrix multiplication with the first operand transposed, adding the result to the
+     * target, as {@link #gemmTNAdd(int, int, int, double[], double[], double[])}, with each
+     * matrix starting at a specified offset in its array.
+     *
+     * @param   m       the number of columns in {@code A} and rows in {@code C}
+     * @param   n       the number of columns in {@code B} and {@code C}
+     * @param   k       the number of rows in {@code A} and {@code B}
+     * @param   a       the first operand
+     * @param   aOffset the offset of the first operand in its array
+     * @param   b       the second operand
+     * @param   bOffset the offset of the second operand in its array
+     * @param   c       the array to which the result is to be added
+     * @param   cOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmTNAdd(int m, int n, int k, double[] a, int aOffset, double[] b,
+            int bOffset, double[] c, int cOffset) {
+        checkSize(a, aOffset, k, m);
+        checkSize(b, bOffset, k, n);
+        checkSize(c, cOffset, m, n);
+        for (int i0 = 0; i0 < m; i0 += blockMTN) {
+            int i1 = Math.min(m, i0 + blockMTN);
+            for (int j0 = 0; j0 < n; j0 += blockNNN) {
+                int j1 = Math.min(n, j0 + blockNNN);
+                for (int i = i0; i < i1; i++) {
+                    int cRow = cOffset + i * n;
+                    int p = 0;
+                    for (; p + 3 < k; p += 4) {
+                        double x0 = a[aOffset + p * m + i];
+                        double x1 = a[aOffset + (p + 1) * m + i];
+                        double x2 = a[aOffset + (p + 2) * m + i];
+                        double x3 = a[aOffset + (p + 3) * m + i];
+                        int b0 = bOffset + p * n;
+                        int b1 = b0 + n;
+                        int b2 = b1 + n;
+                        int b3 = b2 + n;
+                        for (int j = j0; j < j1; j++) {
+                            // the additions are kept in sequence to preserve the result
+                            double t = c[cRow + j];
+                            t += x0 * b[b0 + j];
+                            t += x1 * b[b1 + j];
+                            t += x2 * b[b2 + j];
+                            t += x3 * b[b3 + j];
+                            c[cRow + j] = t;
+                        }
+                    }
+                    for (; p < k; p++) {
+                        double x0 = a[aOffset + p * m + i];
+                        int b0 = bOffset + p * n;
+                        for (int j = j0; j < j1; j++)
+                            c[cRow + j] += x0 * b[b0 + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Matrix-vector multiplication: {@code y = A . x}, where {@code A} is of dimension
+     * ({@code m}, {@code n}), {@code x} is of length {@code n} and {@code y} is of length
+     * {@code m}.  This is the form used in the forward pass for a single item.
+     *
+     * @param   m       the number of rows in {@code A}
+     * @param   n       the number of columns in {@code A}
+     * @param   a       the matrix
+     * @param   aOffset the offset of the matrix in its array
+     * @param   x       the vector
+     * @param   xOffset the offset of the vector in its array
+     * @param   y       the array to hold the result
+     * @param   yOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemv(int m, int n, double[] a, int aOffset, double[] x, int xOffset,
+            double[] y, int yOffset) {
+        gemmNT(1, m, n, x, xOffset, a, aOffset, y, yOffset);
+    }
+
+    /**
+     * Matrix-vector multiplication with the matrix transposed: {@code y = A}<sup>T</sup>
+     * {@code . x}, where {@code A} is of dimension ({@code m}, {@code n}), {@code x} is of
+     * length {@code m} and {@code y} is of length {@code n}.  This is the form used to propagate
+     * the errors back through a layer for a single item; the matrix is accessed sequentially,
+     * four rows at a time.
+     *
+     * @param   m       the number of rows in {@code A}
+     * @param   n       the number of columns in {@code A}
+     * @param   a       the matrix
+     * @param   aOffset the offset of the matrix in its array
+     * @param   x       the vector
+     * @param   xOffset the offset of the vector in its array
+     * @param   y       the array to hold the result
+     * @param   yOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemvT(int m, int n, double[] a, int aOffset, double[] x, int xOffset,
+            double[] y, int yOffset) {
+        checkSize(a, aOffset, m, n);
+        checkSize(x, xOffset, m, 1);
+        checkSize(y, yOffset, n, 1);
+        Arrays.fill(y, yOffset, yOffset + n, 0.0);
+        for (int j0 = 0; j0 < n; j0 += blockNNN) {
+            int j1 = Math.min(n, j0 + blockNNN);
+            int i = 0;
+            for (; i + 3 < m; i += 4) {
+                double x0 = x[xOffset + i];
+                double x1 = x[xOffset + i + 1];
+                double x2 = x[xOffset + i + 2];
+                double x3 = x[xOffset + i + 3];
+                int a0 = aOffset + i * n;
+                int a1 = a0 + n;
+                int a2 = a1 + n;
+                int a3 = a2 + n;
+                for (int j = j0; j < j1; j++) {
+                    // the additions are kept in sequence to preserve the result
+                    double t = y[yOffset + j];
+                    t += a[a0 + j] * x0;
+                    t += a[a1 + j] * x1;
+                    t += a[a2 + j] * x2;
+                    t += a[a3 + j] * x3;
+                    y[yOffset + j] = t;
+                }
+            }
+            for (; i < m; i++) {
+                double x0 = x[xOffset + i];
+                int a0 = aOffset + i * n;
+                for (int j = j0; j < j1; j++)
+                    y[yOffset + j] += a[a0 + j] * x0;
+            }
+        }
+    }
+
+    /**
+     * Rank-1 update: {@code A += x . y}<sup>T</sup>, where {@code A} is of dimension
+     * ({@code m}, {@code n}), {@code x} is of length {@code m} and {@code y} is of length
+     * {@code n}.  This adds the outer product of two vectors to a matrix, and is the form used
+     * to accumulate the weight gradients for a single item.
+     *
+     * @param   m       the number of rows in {@code A}
+     * @param   n       the number of columns in {@code A}
+     * @param   x       the first vector
+     * @param   xOffset the offset of the first vector in its array
+     * @param   y       the second vector
+     * @param   yOffset the offset of the second vector in its array
+     * @param   a       the matrix to be updated
+     * @param   aOffset the offset of the matrix in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void ger(int m, int n, double[] x, int xOffset, double[] y, int yOffset,
+            double[] a, int aOffset) {
+        checkSize(x, xOffset, m, 1);
+        checkSize(y, yOffset, n, 1);
+        checkSize(a, aOffset, m, n);
+        for (int j0 = 0; j0 < n; j0 += blockNNN) {
+            int j1 = Math.min(n, j0 + blockNNN);
+            int i = 0;
+            for (; i + 3 < m; i += 4) {
+                double x0 = x[xOffset + i];
+                double x1 = x[xOffset + i + 1];
+                double x2 = x[xOffset + i + 2];
+                double x3 = x[xOffset + i + 3];
+                int a0 = aOffset + i * n;
+                int a1 = a0 + n;
+                int a2 = a1 + n;
+                int a3 = a2 + n;
+                for (int j = j0; j < j1; j++) {
+                    double yj = y[yOffset + j];
+                    a[a0 + j] += x0 * yj;
+                    a[a1 + j] += x1 * yj;
+                    a[a2 + j] += x2 * yj;
+                    a[a3 + j] += x3 * yj;
+                }
+            }
+            for (; i < m; i++) {
+                double x0 = x[xOffset + i];
+                int a0 = aOffset + i * n;
+                for (int j = j0; j < j1; j++)
+                    a[a0 + j] += x0 * y[yOffset + j];
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication with the second operand transposed, as
+     * {@link #gemmNT(int, int, int, double[], int, double[], int, double[], int)}, where the
+     * second operand is an array of {@code float}.  The products are calculated and summed in
+     * {@code double} precision.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of rows in {@code B} and columns in {@code C}
+     * @param   k       the number of columns in {@code A} and {@code B}
+     * @param   a       the first operand
+     * @param   aOffset the offset of the first operand in its array
+     * @param   b       the second operand
+     * @param   bOffset the offset of the second operand in its array
+     * @param   c       the array to hold the result
+     * @param   cOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNT(int m, int n, int k, double[] a, int aOffset, float[] b,
+            int bOffset, double[] c, int cOffset) {
+        checkSize(a, aOffset, m, k);
+        checkSize(b.length, bOffset, n, k);
+        checkSize(c, cOffset, m, n);
+        gemmNT(m, n, k, a, aOffset, null, b, bOffset, c, cOffset);
+    }
+
+    /**
+     * Matrix multiplication, as
+     * {@link #gemmNN(int, int, int, double[], int, double[], int, double[], int)}, where the
+     * second operand is an array of {@code float}.  The products are calculated and summed in
+     * {@code double} precision.
+     *
+     * @param   m       the number of rows in {@code A} and {@code C}
+     * @param   n       the number of columns in {@code B} and {@code C}
+     * @param   k       the number of columns in {@code A} and rows in {@code B}
+     * @param   a       the first operand
+     * @param   aOffset the offset of the first operand in its array
+     * @param   b       the second operand
+     * @param   bOffset the offset of the second operand in its array
+     * @param   c       the array to hold the result
+     * @param   cOffset the offset of the result in its array
+     * @throws  IllegalArgumentException if any of the arrays is too small
+     */
+    public static void gemmNN(int m, int n, int k, double[] a, int aOffset, float[] b,
+            int bOffset, double[] c, int cOffset) {
+        checkSize(a, aOffset, m, k);
+        checkSize(b.length, bOffset, k, n);
+        checkSize(c, cOffset, m, n);
+        gemmNN(m, n, k, a, aOffset, null, b, bOffset, c, cOffset);
+    }
+
+    /*
+     * The tiling of gemmNT and gemmNN is shared by the double and float forms of the second
+     * operand: exactly one of b and bf is non-null, and only the innermost loops (the
+     * micro-kernels below, which are small enough to be inlined) are specific to the type.
+     */
+
+    private static void gemmNT(int m, int n, int k, double[] a, int aOffset, double[] b,
+            float[] bf, int bOffset, double[] c, int cOffset) {
+        if (k == 0) {
+            // there are no products to sum, and the blocked loops would not store the result
+            zero(m, n, c, cOffset);
+            return;
+        }
+        for (int p0 = 0; p0 < k; p0 += blockK) {
+            int p1 = Math.min(k, p0 + blockK);
+            boolean first = p0 == 0;
+            for (int j0 = 0; j0 < n; j0 += blockN) {
+                int j1 = Math.min(n, j0 + blockN);
+                int i = 0;
+                for (; i + 1 < m; i += 2) {
+                    int a0 = aOffset + i * k;
+                    int c0 = cOffset + i * n;
+                    int j = j0;
+                    for (; j + 3 < j1; j += 4) {
+                        if (bf == null)
+                            tileNT2x4(a, a0, k, b, bOffset + j * k, c, c0 + j, n, p0, p1, first);
+                        else
+                            tileNT2x4(a, a0, k, bf, bOffset + j * k, c, c0 + j, n, p0, p1, first);
+                    }
+                    for (; j < j1; j++) {
+                        if (bf == null)
+                            tileNT2x1(a, a0, k, b, bOffset + j * k, c, c0 + j, n, p0, p1, first);
+                        else
+                            tileNT2x1(a, a0, k, bf, bOffset + j * k, c, c0 + j, n, p0, p1, first);
+                    }
+                }
+                if (i < m) {
+                    int a0 = aOffset + i * k;
+                    int c0 = cOffset + i * n;
+                    int j = j0;
+                    for (; j + 3 < j1; j += 4) {
+                        if (bf == null)
+                            tileNT1x4(a, a0, k, b, bOffset + j * k, c, c0 + j, p0, p1, first);
+                        else
+                            tileNT1x4(a, a0, k, bf, bOffset + j * k, c, c0 + j, p0, p1, first);
+                    }
+                    for (; j < j1; j++) {
+                        if (bf == null)
+                            tileNT1x1(a, a0, b, bOffset + j * k, c, c0 + j, p0, p1, first);
+                        else
+                            tileNT1x1(a, a0, bf, bOffset + j * k, c, c0 + j, p0, p1, first);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void gemmNN(int m, int n, int k, double[] a, int aOffset, double[] b,
+            float[] bf, int bOffset, double[] c, int cOffset) {
+        zero(m, n, c, cOffset);
+        for (int j0 = 0; j0 < n; j0 += blockNNN) {
+            int j1 = Math.min(n, j0 + blockNNN);
+            for (int p0 = 0; p0 < k; p0 += blockKNN) {
+                int p1 = Math.min(k, p0 + blockKNN);
+                int i = 0;
+                for (; i + 3 < m; i += 4) {
+                    int a0 = aOffset + i * k;
+                    int c0 = cOffset + i * n;
+                    if (bf == null)
+                        tileNN4(a, a0, k, b, bOffset, c, c0, n, p0, p1, j0, j1);
+                    else
+                        tileNN4(a, a0, k, bf, bOffset, c, c0, n, p0, p1, j0, j1);
+                }
+                for (; i < m; i++) {
+                    int a0 = aOffset + i * k;
+                    int c0 = cOffset + i * n;
+                    if (bf == null)
+                        tileNN1(a, a0, b, bOffset, c, c0, n, p0, p1, j0, j1);
+                    else
+                        tileNN1(a, a0, bf, bOffset, c, c0, n, p0, p1, j0, j1);
+                }
+            }
+        }
+    }
+
+    private static void zero(int m, int n, double[] c, int cOffset) {
+        Arrays.fill(c, cOffset, cOffset + m * n, 0.0);
+    }
+
+    /*
+     * gemmNT micro-kernels: rows a0 (and a0 + k) of A against rows b0 (to b0 + 3k) of B, for
+     * the shared dimension p0 to p1, storing into c0 (and c0 + n); the first block of the
+     * shared dimension starts from zero, later blocks from the partial sums already in C.
+     */
+
+    private static void tileNT2x4(double[] a, int a0, int k, double[] b, int b0, double[] c,
+            int c0, int n, int p0, int p1, boolean first) {
+        int a1 = a0 + k;
+        int b1 = b0 + k;
+        int b2 = b1 + k;
+        int b3 = b2 + k;
+        int c1 = c0 + n;
+        double s00 = 0.0, s01 = 0.0, s02 = 0.0, s03 = 0.0;
+        double s10 = 0.0, s11 = 0.0, s12 = 0.0, s13 = 0.0;
+        if (!first) {
+            s00 = c[c0]; s01 = c[c0 + 1]; s02 = c[c0 + 2]; s03 = c[c0 + 3];
+            s10 = c[c1]; s11 = c[c1 + 1]; s12 = c[c1 + 2]; s13 = c[c1 + 3];
+        }
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            double x1 = a[a1 + p];
+            double y0 = b[b0 + p];
+            double y1 = b[b1 + p];
+            double y2 = b[b2 + p];
+            double y3 = b[b3 + p];
+            s00 += x0 * y0; s01 += x0 * y1; s02 += x0 * y2; s03 += x0 * y3;
+            s10 += x1 * y0; s11 += x1 * y1; s12 += x1 * y2; s13 += x1 * y3;
+        }
+        c[c0] = s00; c[c0 + 1] = s01; c[c0 + 2] = s02; c[c0 + 3] = s03;
+        c[c1] = s10; c[c1 + 1] = s11; c[c1 + 2] = s12; c[c1 + 3] = s13;
+    }
+
+    private static void tileNT2x4(double[] a, int a0, int k, float[] b, int b0, double[] c,
+            int c0, int n, int p0, int p1, boolean first) {
+        int a1 = a0 + k;
+        int b1 = b0 + k;
+        int b2 = b1 + k;
+        int b3 = b2 + k;
+        int c1 = c0 + n;
+        double s00 = 0.0, s01 = 0.0, s02 = 0.0, s03 = 0.0;
+        double s10 = 0.0, s11 = 0.0, s12 = 0.0, s13 = 0.0;
+        if (!first) {
+            s00 = c[c0]; s01 = c[c0 + 1]; s02 = c[c0 + 2]; s03 = c[c0 + 3];
+            s10 = c[c1]; s11 = c[c1 + 1]; s12 = c[c1 + 2]; s13 = c[c1 + 3];
+        }
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            double x1 = a[a1 + p];
+            double y0 = b[b0 + p];
+            double y1 = b[b1 + p];
+            double y2 = b[b2 + p];
+            double y3 = b[b3 + p];
+            s00 += x0 * y0; s01 += x0 * y1; s02 += x0 * y2; s03 += x0 * y3;
+            s10 += x1 * y0; s11 += x1 * y1; s12 += x1 * y2; s13 += x1 * y3;
+        }
+        c[c0] = s00; c[c0 + 1] = s01; c[c0 + 2] = s02; c[c0 + 3] = s03;
+        c[c1] = s10; c[c1 + 1] = s11; c[c1 + 2] = s12; c[c1 + 3] = s13;
+    }
+
+    private static void tileNT2x1(double[] a, int a0, int k, double[] b, int b0, double[] c,
+            int c0, int n, int p0, int p1, boolean first) {
+        int a1 = a0 + k;
+        int c1 = c0 + n;
+        double s0 = first ? 0.0 : c[c0];
+        double s1 = first ? 0.0 : c[c1];
+        for (int p = p0; p < p1; p++) {
+            double y = b[b0 + p];
+            s0 += a[a0 + p] * y;
+            s1 += a[a1 + p] * y;
+        }
+        c[c0] = s0;
+        c[c1] = s1;
+    }
+
+    private static void tileNT2x1(double[] a, int a0, int k, float[] b, int b0, double[] c,
+            int c0, int n, int p0, int p1, boolean first) {
+        int a1 = a0 + k;
+        int c1 = c0 + n;
+        double s0 = first ? 0.0 : c[c0];
+        double s1 = first ? 0.0 : c[c1];
+        for (int p = p0; p < p1; p++) {
+            double y = b[b0 + p];
+            s0 += a[a0 + p] * y;
+            s1 += a[a1 + p] * y;
+        }
+        c[c0] = s0;
+        c[c1] = s1;
+    }
+
+    private static void tileNT1x4(double[] a, int a0, int k, double[] b, int b0, double[] c,
+            int c0, int p0, int p1, boolean first) {
+        int b1 = b0 + k;
+        int b2 = b1 + k;
+        int b3 = b2 + k;
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        if (!first) {
+            s0 = c[c0]; s1 = c[c0 + 1]; s2 = c[c0 + 2]; s3 = c[c0 + 3];
+        }
+        for (int p = p0; p < p1; p++) {
+            double x = a[a0 + p];
+            s0 += x * b[b0 + p]; s1 += x * b[b1 + p];
+            s2 += x * b[b2 + p]; s3 += x * b[b3 + p];
+        }
+        c[c0] = s0; c[c0 + 1] = s1; c[c0 + 2] = s2; c[c0 + 3] = s3;
+    }
+
+    private static void tileNT1x4(double[] a, int a0, int k, float[] b, int b0, double[] c,
+            int c0, int p0, int p1, boolean first) {
+        int b1 = b0 + k;
+        int b2 = b1 + k;
+        int b3 = b2 + k;
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+        if (!first) {
+            s0 = c[c0]; s1 = c[c0 + 1]; s2 = c[c0 + 2]; s3 = c[c0 + 3];
+        }
+        for (int p = p0; p < p1; p++) {
+            double x = a[a0 + p];
+            s0 += x * b[b0 + p]; s1 += x * b[b1 + p];
+            s2 += x * b[b2 + p]; s3 += x * b[b3 + p];
+        }
+        c[c0] = s0; c[c0 + 1] = s1; c[c0 + 2] = s2; c[c0 + 3] = s3;
+    }
+
+    private static void tileNT1x1(double[] a, int a0, double[] b, int b0, double[] c, int c0,
+            int p0, int p1, boolean first) {
+        double s0 = first ? 0.0 : c[c0];
+        for (int p = p0; p < p1; p++)
+            s0 += a[a0 + p] * b[b0 + p];
+        c[c0] = s0;
+    }
+
+    private static void tileNT1x1(double[] a, int a0, float[] b, int b0, double[] c, int c0,
+            int p0, int p1, boolean first) {
+        double s0 = first ? 0.0 : c[c0];
+        for (int p = p0; p < p1; p++)
+            s0 += a[a0 + p] * b[b0 + p];
+        c[c0] = s0;
+    }
+
+    /*
+     * gemmNN micro-kernels: rows a0 (to a0 + 3k) of A, for the shared dimension p0 to p1,
+     * multiplied by the corresponding rows of B and added to columns j0 to j1 of rows c0 (to
+     * c0 + 3n) of C.
+     */
+
+    private static void tileNN4(double[] a, int a0, int k, double[] b, int bOffset, double[] c,
+            int c0, int n, int p0, int p1, int j0, int j1) {
+        int c1 = c0 + n;
+        int c2 = c1 + n;
+        int c3 = c2 + n;
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            double x1 = a[a0 + k + p];
+            double x2 = a[a0 + 2 * k + p];
+            double x3 = a[a0 + 3 * k + p];
+            int bRow = bOffset + p * n;
+            for (int j = j0; j < j1; j++) {
+                double y = b[bRow + j];
+                c[c0 + j] += x0 * y;
+                c[c1 + j] += x1 * y;
+                c[c2 + j] += x2 * y;
+                c[c3 + j] += x3 * y;
+            }
+        }
+    }
+
+    private static void tileNN4(double[] a, int a0, int k, float[] b, int bOffset, double[] c,
+            int c0, int n, int p0, int p1, int j0, int j1) {
+        int c1 = c0 + n;
+        int c2 = c1 + n;
+        int c3 = c2 + n;
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            double x1 = a[a0 + k + p];
+            double x2 = a[a0 + 2 * k + p];
+            double x3 = a[a0 + 3 * k + p];
+            int bRow = bOffset + p * n;
+            for (int j = j0; j < j1; j++) {
+                double y = b[bRow + j];
+                c[c0 + j] += x0 * y;
+                c[c1 + j] += x1 * y;
+                c[c2 + j] += x2 * y;
+                c[c3 + j] += x3 * y;
+            }
+        }
+    }
+
+    private static void tileNN1(double[] a, int a0, double[] b, int bOffset, double[] c, int c0,
+            int n, int p0, int p1, int j0, int j1) {
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            int bRow = bOffset + p * n;
+            for (int j = j0; j < j1; j++)
+                c[c0 + j] += x0 * b[bRow + j];
+        }
+    }
+
+    private static void tileNN1(double[] a, int a0, float[] b, int bOffset, double[] c, int c0,
+            int n, int p0, int p1, int j0, int j1) {
+        for (int p = p0; p < p1; p++) {
+            double x0 = a[a0 + p];
+            int bRow = bOffset + p * n;
+            for (int j = j0; j < j1; j++)
+                c[c0 + j] += x0 * b[bRow + j];
+        }
+    }
+
+    private static void checkSize(double[] array, int offset, int rows, int cols) {
+        checkSize(array.length, offset, rows, cols);
+    }
+
+    private static void checkSize(int length, int offset, int rows, int cols) {
+        if (offset < 0 || length - offset < rows * cols)
+            throw new IllegalArgumentException("Array too small for dimensions (" + rows + ", " +
+                    cols + ')');
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * @(#) LoggingTrainingListener.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Objects;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The default {@link TrainingListener}, which writes the metrics for each epoch (and the result
+ * of evaluating the network against the test data, if any) to a log at {@code INFO} level, and
+ * the metrics for each mini-batch at {@code DEBUG} level.  Mini-batch events are requested only
+ * if {@code DEBUG} level is enabled at the start of the training operation.
+ *
+ * @author  Peter Wall
+ */
+public class LoggingTrainingListener implements TrainingListener {
+
+    private final Log log;
+
+    /**
+     * Construct a {@code LoggingTrainingListener} using the log of the {@link Network} class.
+     */
+    public LoggingTrainingListener() {
+        this(LogFactory.getLog(Network.class));
+    }
+
+    /**
+     * Construct a {@code LoggingTrainingListener} using the specified log.
+     *
+     * @param   log     the {@link Log}
+     */
+    public LoggingTrainingListener(Log log) {
+        this.log = Objects.requireNonNull(log);
+    }
+
+    @Override
+    public void miniBatchCompleted(TrainingMetrics metrics) {
+        if (log.isDebugEnabled())
+            log.debug(metrics.toString());
+    }
+
+    @Override
+    public void epochCompleted(TrainingMetrics metrics) {
+        if (log.isInfoEnabled()) {
+            log.info(metrics.toString());
+            EvaluationResult evaluation = metrics.getEvaluation();
+            if (evaluation != null)
+                log.info(evaluation.toString());
+        }
+    }
+
+    @Override
+    public boolean isMiniBatchListener() {
+        return log.isDebugEnabled();
+    }
+
+}
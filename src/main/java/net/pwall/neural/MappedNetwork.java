@@ -0,0 +1,188 @@
+/*
+ * @(#) MappedNetwork.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A {@link Predictor} using the weights and biases of a model file (see {@link ModelFile})
+ * directly from memory-mapped storage.  Nothing is copied to the Java heap, so a large model is
+ * ready for use as soon as the file has been mapped, and the pages of the file are shared by all
+ * processes using the same model.  The mapped storage is read-only, so a single instance may be
+ * shared by any number of threads, as long as each uses its own {@link InferenceContext}.
+ *
+ * <p>The calculations are performed in the same order as those of {@link Network} and
+ * {@link FrozenNetwork}, so the results are identical to those of the network that was
+ * saved.</p>
+ *
+ * @author  Peter Wall
+ */
+public class MappedNetwork implements Predictor {
+
+    private final int[] layerSizes;
+    private final Activation[] activations;
+    private final DoubleBuffer[] biases;
+    private final DoubleBuffer[] weights;
+    private final ThreadLocal<InferenceContext> threadContext;
+
+    /**
+     * Construct a {@code MappedNetwork}.
+     *
+     * @param   layerSizes  the layer sizes (including the input layer)
+     * @param   activations the activation functions of each layer after the input layer
+     * @param   biases      the biases of each layer after the input layer
+     * @param   weights     the weights of each layer after the input layer
+     */
+    MappedNetwork(int[] layerSizes, Activation[] activations, DoubleBuffer[] biases,
+            DoubleBuffer[] weights) {
+        this.layerSizes = layerSizes;
+        this.activations = activations;
+        this.biases = biases;
+        this.weights = weights;
+        threadContext = ThreadLocal.withInitial(this::newInferenceContext);
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    @Override
+    public double[] predict(double[] inputs, InferenceContext context) {
+        if (inputs.length != layerSizes[0])
+            throw new IllegalArgumentException("Inputs array wrong size");
+        Object event = FlightRecorderEvents.beginInference();
+        double[][] outputs = context.check(layerSizes).outputs;
+        double[] activation = inputs;
+        for (int i = 0, n = outputs.length; i < n; i++) {
+            forward(weights[i], biases[i], activation, outputs[i]);
+            activations[i].forward(outputs[i], outputs[i], 0, outputs[i].length);
+            activation = outputs[i];
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, 1);
+        return activation;
+    }
+
+    private static void forward(DoubleBuffer weights, DoubleBuffer biases, double[] inputs,
+            double[] outputs) {
+        // absolute get() does not modify the shared buffers
+        int inputSize = inputs.length;
+        for (int i = 0, k = 0, n = outputs.length; i < n; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < inputSize; j++)
+                sum += weights.get(k++) * inputs[j];
+            outputs[i] = sum + biases.get(i);
+        }
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, storing the outputs in the
+     * supplied array and using a per-thread {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @param   outputs the array to hold the outputs
+     * @throws  IllegalArgumentException if either array is of the wrong size
+     */
+    public void predict(double[] inputs, double[] outputs) {
+        predict(inputs, outputs, threadContext.get());
+    }
+
+    /**
+     * Process an array of inputs to get the index of the highest output, using a per-thread
+     * {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @return  the index of the highest output
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size
+     */
+    public int predictClass(double[] inputs) {
+        return predictClass(inputs, threadContext.get());
+    }
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    @Override
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    /**
+     * Get the activation function of a layer.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  the {@link Activation}
+     */
+    public Activation getActivation(int index) {
+        return activations[index - 1];
+    }
+
+    /**
+     * Get a read-only view of the mapped weights of a layer, in the row-major form described in
+     * {@link HiddenLayer#getWeightsArray()}.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  the weights
+     */
+    public DoubleBuffer getWeightsBuffer(int index) {
+        return weights[index - 1].asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only view of the mapped biases of a layer.
+     *
+     * @param   index   the layer number (1 for the first layer after the input layer)
+     * @return  the biases
+     */
+    public DoubleBuffer getBiasesBuffer(int index) {
+        return biases[index - 1].asReadOnlyBuffer();
+    }
+
+    /**
+     * Create a display representation of the network for debug output.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MappedNetwork[");
+        for (int i = 0; i < layerSizes.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(layerSizes[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+}
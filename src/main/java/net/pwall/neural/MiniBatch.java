@@ -0,0 +1,210 @@
+/*
+ * @(#) MiniBatch.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+
+/**
+ * A mini-batch of training data packed into contiguous arrays: the inputs are held as a matrix
+ * with one row per item, and the expected outputs likewise.  Where the source of the data is
+ * labelled (see {@link TrainingDataSource#isLabelled()}), the expected outputs are instead held
+ * as an array of labels, and the output matrix is not used.  A {@code MiniBatch} is created with
+ * a fixed capacity and refilled for each mini-batch, so that packing does not allocate any
+ * further storage within the network.
+ *
+ * @author  Peter Wall
+ */
+class MiniBatch {
+
+    final int capacity;
+    final int inputSize;
+    final int outputSize;
+    final double[] inputs;
+    final double[] outputs;
+    final int[] labels;
+    int size;
+    boolean labelled;
+
+    /**
+     * Construct a {@code MiniBatch} with the specified capacity and row sizes.
+     *
+     * @param   capacity        the maximum number of items
+     * @param   inputSize       the number of inputs for each item
+     * @param   outputSize      the number of outputs for each item
+     */
+    MiniBatch(int capacity, int inputSize, int outputSize) {
+        this.capacity = capacity;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        inputs = new double[capacity * inputSize];
+        outputs = new double[capacity * outputSize];
+        labels = new int[capacity];
+        size = 0;
+        labelled = false;
+    }
+
+    /**
+     * Fill the {@code MiniBatch} with a range of items from a {@link TrainingDataSource}.  The
+     * expected outputs are held as labels if the source is labelled.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   start   the index of the first item
+     * @param   count   the number of items
+     * @throws  IllegalArgumentException if the count exceeds the capacity, or if the data is not
+     *                  of the expected size
+     */
+    void fill(TrainingDataSource source, int start, int count) {
+        labelled = source.isLabelled();
+        fillRows(source, start, count, 0);
+        size = count;
+    }
+
+    /**
+     * Fill the {@code MiniBatch} with the next items from a {@link TrainingDataStream.Reader},
+     * up to the capacity of the mini-batch.
+     *
+     * @param   reader      the {@link TrainingDataStream.Reader}
+     * @param   labelled    {@code true} if the expected outputs are to be held as labels
+     * @return  the number of items (0 at the end of the data)
+     * @throws  IOException if the data can not be read
+     * @throws  IllegalArgumentException if the data is not of the expected size
+     */
+    int fill(TrainingDataStream.Reader reader, boolean labelled) throws IOException {
+        this.labelled = labelled;
+        int count = 0;
+        while (count < capacity && reader.next()) {
+            checkRowSize(reader.copyInputs(inputs, count * inputSize), inputSize);
+            if (labelled) {
+                int label = reader.getLabel();
+                if (label < 0 || label >= outputSize)
+                    throw new IllegalArgumentException("Label out of range: " + label);
+                labels[count] = label;
+            }
+            else
+                checkRowSize(reader.copyOutputs(outputs, count * outputSize), outputSize);
+            count++;
+        }
+        size = count;
+        return count;
+    }
+
+    /**
+     * Fill a range of rows in the {@code MiniBatch} with a range of items from a
+     * {@link TrainingDataSource}, without changing the size.  This allows a mini-batch to be
+     * filled by several threads, each filling a separate range of rows.  The {@code labelled}
+     * flag must already have been set to indicate whether the source is labelled.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   start   the index of the first item
+     * @param   count   the number of items
+     * @param   row     the first row to be filled
+     * @throws  IllegalArgumentException if the rows exceed the capacity, or if the data is not
+     *                  of the expected size
+     */
+    void fillRows(TrainingDataSource source, int start, int count, int row) {
+        if (row < 0 || row + count > capacity)
+            throw new IllegalArgumentException("Mini-batch capacity exceeded: " + (row + count));
+        if (source instanceof TrainingDataRandom && ((TrainingDataRandom)source).isPacked()) {
+            TrainingDataRandom tdr = (TrainingDataRandom)source;
+            checkRowSize(tdr.getPackedInputSize(), inputSize);
+            checkRowSize(tdr.getPackedOutputSize(), outputSize);
+            tdr.copyPacked(start, count, inputs, outputs, labels, row);
+            return;
+        }
+        for (int m = 0; m < count; m++) {
+            int r = row + m;
+            checkRowSize(source.copyInputs(start + m, inputs, r * inputSize), inputSize);
+            if (!labelled)
+                checkRowSize(source.copyOutputs(start + m, outputs, r * outputSize),
+                        outputSize);
+        }
+        if (labelled) {
+            for (int m = 0; m < count; m++) {
+                int label = source.getLabel(start + m);
+                if (label < 0 || label >= outputSize)
+                    throw new IllegalArgumentException("Label out of range: " + label);
+                labels[row + m] = label;
+            }
+        }
+    }
+
+    /**
+     * Fill the {@code MiniBatch} with items from a {@link FloatTrainingDataSource}, selected by
+     * a range of entries in an index array, converting the data to {@code double}.
+     *
+     * @param   source  the {@link FloatTrainingDataSource}
+     * @param   index   the index array
+     * @param   start   the first entry in the index array
+     * @param   count   the number of items
+     * @throws  IllegalArgumentException if the count exceeds the capacity, or if the data is not
+     *                  of the expected size
+     */
+    void fill(FloatTrainingDataSource source, int[] index, int start, int count) {
+        if (count > capacity)
+            throw new IllegalArgumentException("Mini-batch capacity exceeded: " + count);
+        if (source instanceof FloatTrainingDataSet) {
+            FloatTrainingDataSet dataSet = (FloatTrainingDataSet)source;
+            // all items in the data set are of the same size, so check the sizes once
+            checkRowSize(dataSet.getInputSize(), inputSize);
+            checkRowSize(dataSet.getOutputSize(), outputSize);
+            for (int m = 0; m < count; m++) {
+                dataSet.copyInputs(index[start + m], inputs, m * inputSize);
+                dataSet.copyOutputs(index[start + m], outputs, m * outputSize);
+            }
+        }
+        else {
+            for (int m = 0; m < count; m++) {
+                FloatTrainingData td = source.getItem(index[start + m]);
+                copyRow(td.getInputs(), inputs, m, inputSize);
+                copyRow(td.getOutputs(), outputs, m, outputSize);
+            }
+        }
+        size = count;
+        labelled = false;
+    }
+
+    /**
+     * Check that an item of training data copied into a packed array was of the expected size.
+     *
+     * @param   length  the number of values copied
+     * @param   rowSize the expected number of values
+     * @throws  IllegalArgumentException if the sizes differ
+     */
+    static void checkRowSize(int length, int rowSize) {
+        if (length != rowSize)
+            throw new IllegalArgumentException("Training data wrong size (" + length + " != " +
+                    rowSize + ')');
+    }
+
+    private static void copyRow(float[] row, double[] target, int m, int rowSize) {
+        if (row.length != rowSize)
+            throw new IllegalArgumentException("Training data wrong size (" + row.length +
+                    " != " + rowSize + ')');
+        for (int j = 0, k = m * rowSize; j < rowSize; j++)
+            target[k++] = row[j];
+    }
+
+}
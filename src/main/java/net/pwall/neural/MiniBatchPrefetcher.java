@@ -0,0 +1,186 @@
+/*
+ * @(#) MiniBatchPrefetcher.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Background preparation of mini-batches for training.  A producer thread shuffles the training
+ * data at the start of each epoch and packs each mini-batch in turn into a {@link MiniBatch}
+ * buffer, while the training thread computes the gradients for the previous one.  Where the
+ * preparation of the data is expensive (for example, when it is read from a memory-mapped file
+ * or converted from a quantized form) this hides most of its cost.
+ *
+ * <p>The number of mini-batches prepared in advance is limited by the queue depth: the producer
+ * uses a fixed set of buffers (one more than the depth), and waits for the training thread to
+ * release a buffer before filling it again, so no storage is allocated once the prefetcher has
+ * been created.  The end of each epoch is signalled by {@link #next()} returning {@code null}.
+ * If the producer fails, the exception is rethrown to the training thread at the next call to
+ * {@link #next()}.</p>
+ *
+ * <p>The producer uses the {@link TrainingDataRandom} and the {@link Random} exclusively from
+ * the time it is started, and the sequence of mini-batches is the same as that produced by
+ * shuffling and packing in the training thread, so the results of training are unchanged.</p>
+ *
+ * @author  Peter Wall
+ */
+class MiniBatchPrefetcher implements AutoCloseable {
+
+    /** Marker for the end of an epoch (or of the data, following a failure). */
+    private static final MiniBatch endOfEpoch = new MiniBatch(0, 0, 0);
+
+    private TrainingDataRandom source;
+    private Random random;
+    private int epochs;
+    private int miniBatchSize;
+    private BlockingQueue<MiniBatch> free;
+    private BlockingQueue<MiniBatch> ready;
+    private Thread producer;
+    private volatile Throwable failure;
+
+    /**
+     * Construct a {@code MiniBatchPrefetcher}.
+     *
+     * @param   source          the training data
+     * @param   random          the {@link Random} used to shuffle the training data
+     * @param   epochs          the number of epochs
+     * @param   miniBatchSize   the mini-batch size
+     * @param   inputSize       the number of inputs for each item
+     * @param   outputSize      the number of outputs for each item
+     * @param   depth           the maximum number of mini-batches to be prepared in advance
+     * @throws  IllegalArgumentException if the depth is less than 1
+     */
+    MiniBatchPrefetcher(TrainingDataRandom source, Random random, int epochs, int miniBatchSize,
+            int inputSize, int outputSize, int depth) {
+        if (depth < 1)
+            throw new IllegalArgumentException("prefetch depth must be >= 1");
+        this.source = source;
+        this.random = random;
+        this.epochs = epochs;
+        this.miniBatchSize = miniBatchSize;
+        free = new ArrayBlockingQueue<>(depth + 1);
+        ready = new ArrayBlockingQueue<>(depth + 2);
+        for (int i = 0; i <= depth; i++)
+            free.add(new MiniBatch(miniBatchSize, inputSize, outputSize));
+        producer = new Thread(this::produce, "MiniBatchPrefetcher");
+        producer.setDaemon(true);
+    }
+
+    /**
+     * Start the producer thread.
+     */
+    void start() {
+        producer.start();
+    }
+
+    private void produce() {
+        try {
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                source.randomise(random);
+                for (int k = 0, size = source.getSize(); k < size; k += miniBatchSize) {
+                    MiniBatch batch = free.take();
+                    batch.fill(source, k, Math.min(miniBatchSize, size - k));
+                    ready.put(batch);
+                }
+                ready.put(endOfEpoch);
+            }
+        }
+        catch (InterruptedException e) {
+            // the prefetcher has been closed
+        }
+        catch (Throwable t) {
+            failure = t;
+            try {
+                ready.put(endOfEpoch);
+            }
+            catch (InterruptedException e) {
+                // the prefetcher has been closed
+            }
+        }
+    }
+
+    /**
+     * Get the next mini-batch, waiting for it to be prepared if necessary.  The mini-batch must
+     * be returned by {@link #release(MiniBatch)} when it has been used.
+     *
+     * @return  the next mini-batch, or {@code null} at the end of an epoch
+     * @throws  IllegalStateException if the thread is interrupted while waiting
+     * @throws  RuntimeException if the producer failed (the original exception, or an
+     *                  {@code IllegalStateException} wrapping it if it was a checked exception)
+     */
+    MiniBatch next() {
+        MiniBatch batch;
+        try {
+            batch = ready.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for mini-batch", e);
+        }
+        if (batch != endOfEpoch)
+            return batch;
+        Throwable t = failure;
+        if (t != null) {
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            throw new IllegalStateException("Mini-batch preparation failed", t);
+        }
+        return null;
+    }
+
+    /**
+     * Return a mini-batch buffer to the producer for re-use.
+     *
+     * @param   batch   the mini-batch
+     */
+    void release(MiniBatch batch) {
+        free.add(batch);
+    }
+
+    /**
+     * Stop the producer thread (if it has not already finished) and wait for it to terminate.
+     */
+    @Override
+    public void close() {
+        producer.interrupt();
+        boolean interrupted = false;
+        while (producer.isAlive()) {
+            try {
+                producer.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * @(#) ModelFile.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Functions to save and load trained networks in a compact binary format.  The format is:
+ *
+ * <table summary="Model file format">
+ *   <tr><th>Offset</th><th>Content</th></tr>
+ *   <tr><td>0</td><td>the magic number: the 4 ASCII characters {@code NNDL}</td></tr>
+ *   <tr><td>4</td><td>the format version (currently 2)</td></tr>
+ *   <tr><td>8</td><td>the number of layers, including the input layer</td></tr>
+ *   <tr><td>12</td><td>the layer sizes, one {@code int} for each layer</td></tr>
+ *   <tr><td></td><td>the activation function codes (see {@link Activation#getCode()}), one
+ *     {@code int} for each layer after the input layer (not present in version 1, where all
+ *     layers use {@link Activation#SIGMOID})</td></tr>
+ *   <tr><td></td><td>zero padding to a multiple of 8 bytes</td></tr>
+ *   <tr><td></td><td>for each layer after the input layer: the biases (one {@code double} for
+ *     each neuron), followed by the weights (in the row-major form described in
+ *     {@link HiddenLayer#getWeightsArray()})</td></tr>
+ *   <tr><td></td><td>the CRC-32 of all the preceding bytes</td></tr>
+ * </table>
+ *
+ * <p>All values are little-endian, and the {@code double} arrays are aligned on 8-byte
+ * boundaries, so that the data may be used directly from a memory-mapped file (see
+ * {@link MappedNetwork}) without being copied or converted.</p>
+ *
+ * @author  Peter Wall
+ */
+public class ModelFile {
+
+    /** The magic number (the characters "NNDL" read as a little-endian {@code int}). */
+    static final int magic = 0x4C444E4E;
+
+    /** The current format version. */
+    static final int version = 2;
+
+    /** The maximum size of each block used to calculate the checksum of a mapped file. */
+    private static final int checksumBlock = 1 << 30;
+
+    private ModelFile() {
+    }
+
+    /**
+     * Save a {@link Network} to a file.
+     *
+     * @param   network     the {@link Network}
+     * @param   path        the {@link Path} of the file
+     * @throws  IOException if the file can not be written
+     */
+    public static void save(Network network, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            save(network, out);
+        }
+    }
+
+    /**
+     * Save a {@link Network} to an {@link OutputStream}.  The stream is not closed.
+     *
+     * @param   network     the {@link Network}
+     * @param   out         the {@link OutputStream}
+     * @throws  IOException if the data can not be written
+     */
+    public static void save(Network network, OutputStream out) throws IOException {
+        write(network.getLayerSizes(), i -> ((HiddenLayer)network.getLayer(i)).getActivation(),
+                i -> ((HiddenLayer)network.getLayer(i)).getBiases(),
+                i -> ((HiddenLayer)network.getLayer(i)).getWeightsArray(), out);
+    }
+
+    /**
+     * Save a {@link FrozenNetwork} to a file.
+     *
+     * @param   network     the {@link FrozenNetwork}
+     * @param   path        the {@link Path} of the file
+     * @throws  IOException if the file can not be written
+     */
+    public static void save(FrozenNetwork network, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            save(network, out);
+        }
+    }
+
+    /**
+     * Save a {@link FrozenNetwork} to an {@link OutputStream}.  The stream is not closed.
+     *
+     * @param   network     the {@link FrozenNetwork}
+     * @param   out         the {@link OutputStream}
+     * @throws  IOException if the data can not be written
+     */
+    public static void save(FrozenNetwork network, OutputStream out) throws IOException {
+        write(network.getLayerSizes(), network::getActivation, network::getBiases,
+                network::getWeights, out);
+    }
+
+    /**
+     * Get the size of a model file for a network with the supplied layer sizes.
+     *
+     * @param   layerSizes  the layer sizes (including the input layer)
+     * @return  the size of the file in bytes
+     */
+    static long fileSize(int[] layerSizes) {
+        int numLayers = layerSizes.length;
+        long size = dataOffset(numLayers * 2 - 1) + 4;
+        for (int i = 1; i < numLayers; i++)
+            size += ((long)layerSizes[i] * layerSizes[i - 1] + layerSizes[i]) * 8;
+        return size;
+    }
+
+    private static long dataOffset(int headerInts) {
+        return (12 + headerInts * 4 + 7) & ~7L;
+    }
+
+    private static void write(int[] layerSizes, IntFunction<Activation> activations,
+            IntFunction<double[]> biases, IntFunction<double[]> weights, OutputStream out)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out) {
+            @Override
+            public void close() throws IOException {
+                flush(); // do not close the underlying stream
+            }
+        }, crc);
+        int numLayers = layerSizes.length;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(8192, numLayers * 8 + 16)).
+                order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(magic).putInt(version).putInt(numLayers);
+        for (int size : layerSizes)
+            buffer.putInt(size);
+        for (int i = 1; i < numLayers; i++)
+            buffer.putInt(activations.apply(i).getCode());
+        while ((buffer.position() & 7) != 0)
+            buffer.put((byte)0);
+        for (int i = 1; i < numLayers; i++) {
+            buffer = writeDoubles(biases.apply(i), buffer, checked);
+            buffer = writeDoubles(weights.apply(i), buffer, checked);
+        }
+        checked.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+        buffer.putInt((int)crc.getValue());
+        checked.write(buffer.array(), 0, buffer.position());
+        checked.close();
+    }
+
+    private static ByteBuffer writeDoubles(double[] array, ByteBuffer buffer, OutputStream out)
+            throws IOException {
+        for (double value : array) {
+            if (buffer.remaining() < 8) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putDouble(value);
+        }
+        return buffer;
+    }
+
+    /**
+     * Load a {@link Network} from a file.  The checksum is verified.
+     *
+     * @param   path        the {@link Path} of the file
+     * @return  the {@link Network}
+     * @throws  IOException if the file can not be read, or is not a valid model file
+     */
+    public static Network load(Path path) throws IOException {
+        return load(map(path, true));
+    }
+
+    /**
+     * Create a {@link Network} from a {@link MappedNetwork}, copying the weights and biases.
+     *
+     * @param   mapped      the {@link MappedNetwork}
+     * @return  the {@link Network}
+     */
+    static Network load(MappedNetwork mapped) {
+        int[] layerSizes = mapped.getLayerSizes();
+        Network network = new Network(layerSizes);
+        for (int i = 1; i < layerSizes.length; i++) {
+            // getBiases() and getWeightsArray() return the arrays, not copies
+            HiddenLayer layer = (HiddenLayer)network.getLayer(i);
+            mapped.getBiasesBuffer(i).get(layer.getBiases());
+            mapped.getWeightsBuffer(i).get(layer.getWeightsArray());
+            layer.setActivation(mapped.getActivation(i));
+        }
+        return network;
+    }
+
+    /**
+     * Memory-map a model file for inference, verifying the checksum.
+     *
+     * @param   path        the {@link Path} of the file
+     * @return  the {@link MappedNetwork}
+     * @throws  IOException if the file can not be read, or is not a valid model file
+     */
+    public static MappedNetwork map(Path path) throws IOException {
+        return map(path, true);
+    }
+
+    /**
+     * Memory-map a model file for inference.  Verifying the checksum requires the whole file to
+     * be read; where the file is known to be valid (for example, when it has been verified when
+     * it was installed), skipping the verification allows a model to be made ready for use
+     * without reading any data other than the header.
+     *
+     * @param   path        the {@link Path} of the file
+     * @param   verify      {@code true} to verify the checksum
+     * @return  the {@link MappedNetwork}
+     * @throws  IOException if the file can not be read, or is not a valid model file
+     */
+    public static MappedNetwork map(Path path, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size(), path, verify);
+        }
+    }
+
+    /**
+     * Memory-map a model held within a file at a given position (for example, in a
+     * {@link Checkpoint}).  The position must be a multiple of 8, so that the {@code double}
+     * arrays remain aligned.
+     *
+     * @param   channel     the {@link FileChannel}
+     * @param   base        the position of the model within the file
+     * @param   fileSize    the size of the model
+     * @param   path        the {@link Path} of the file (for error messages)
+     * @param   verify      {@code true} to verify the checksum
+     * @return  the {@link MappedNetwork}
+     * @throws  IOException if the file can not be read, or does not contain a valid model
+     */
+    static MappedNetwork map(FileChannel channel, long base, long fileSize, Path path,
+            boolean verify) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, base);
+        if (header.getInt(0) != magic)
+            throw new IOException("Incorrect magic number: " + path);
+        int fileVersion = header.getInt(4);
+        if (fileVersion < 1 || fileVersion > version)
+            throw new IOException("Unsupported model version " + fileVersion + ": " + path);
+        int numLayers = header.getInt(8);
+        if (numLayers < 2 || numLayers > 0xFFFF)
+            throw new IOException("Invalid number of layers " + numLayers + ": " + path);
+        int headerInts = fileVersion == 1 ? numLayers : numLayers * 2 - 1;
+        ByteBuffer sizes = ByteBuffer.allocate(headerInts * 4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, sizes, base + 12);
+        int[] layerSizes = new int[numLayers];
+        for (int i = 0; i < numLayers; i++) {
+            layerSizes[i] = sizes.getInt(i * 4);
+            if (layerSizes[i] <= 0)
+                throw new IOException("Invalid layer size " + layerSizes[i] + ": " + path);
+        }
+        Activation[] activations = new Activation[numLayers - 1];
+        for (int i = 1; i < numLayers; i++) {
+            if (fileVersion == 1)
+                activations[i - 1] = Activation.SIGMOID;
+            else {
+                int code = sizes.getInt((numLayers + i - 1) * 4);
+                activations[i - 1] = Activation.forCode(code);
+                if (activations[i - 1] == null)
+                    throw new IOException("Invalid activation code " + code + ": " + path);
+            }
+        }
+        long offset = dataOffset(headerInts);
+        DoubleBuffer[] biases = new DoubleBuffer[numLayers - 1];
+        DoubleBuffer[] weights = new DoubleBuffer[numLayers - 1];
+        long expectedSize = offset + 4;
+        for (int i = 1; i < numLayers; i++)
+            expectedSize += ((long)layerSizes[i] * layerSizes[i - 1] + layerSizes[i]) * 8;
+        if (fileSize != expectedSize)
+            throw new IOException("File size does not match layer sizes: " + path);
+        for (int i = 1; i < numLayers; i++) {
+            long numWeights = (long)layerSizes[i] * layerSizes[i - 1];
+            if (numWeights > Integer.MAX_VALUE / 8)
+                throw new IOException("Layer too large to map: " + path);
+            biases[i - 1] = mapDoubles(channel, base + offset, layerSizes[i]);
+            offset += layerSizes[i] * 8L;
+            weights[i - 1] = mapDoubles(channel, base + offset, (int)numWeights);
+            offset += numWeights * 8;
+        }
+        if (verify) {
+            CRC32 crc = new CRC32();
+            for (long position = 0; position < offset; position += checksumBlock) {
+                long length = Math.min(checksumBlock, offset - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, base + position,
+                        length));
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, trailer, base + offset);
+            if (trailer.getInt(0) != (int)crc.getValue())
+                throw new IOException("Checksum error: " + path);
+        }
+        return new MappedNetwork(layerSizes, activations, biases, weights);
+    }
+
+    private static DoubleBuffer mapDoubles(FileChannel channel, long offset, int count)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, count * 8L).
+                order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0)
+                throw new IOException("Unexpected EOF");
+        }
+    }
+
+}
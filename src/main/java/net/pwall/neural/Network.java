@@ -26,8 +26,17 @@
 
 package net.pwall.neural;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,13 +55,20 @@ import org.apache.commons.logging.LogFactory;
  * @author      Peter Wall
  * @author      Michael Nielsen (original Python code)
  */
-public class Network {
+public class Network implements Predictor {
 
     private static final Log log = LogFactory.getLog(Network.class);
 
+    /** Block size used by {@link #transpose(double[][])}. */
+    private static final int transposeBlock = 32;
+
     private int numLayers;
+    private int[] layerSizes;
     private InputLayer inputLayer;
     private HiddenLayer[] hiddenLayers;
+    private TrainingWorkspace workspace;
+    private Cost cost;
+    private Optimizer optimizer;
 
     /**
      * Construct a network with the supplied layer sizes.
@@ -64,11 +80,15 @@ public class Network {
         numLayers = layerSizes.length;
         if (numLayers < 2)
             throw new IllegalArgumentException("Must have 2 or more layers");
+        this.layerSizes = layerSizes.clone();
         inputLayer = new InputLayer(layerSizes[0]);
         hiddenLayers = new HiddenLayer[numLayers - 1];
         hiddenLayers[0] = new HiddenLayer(inputLayer, layerSizes[1]);
         for (int i = 2; i < numLayers; i++)
             hiddenLayers[i - 1] = new HiddenLayer(hiddenLayers[i - 2], layerSizes[i]);
+        workspace = new TrainingWorkspace(layerSizes);
+        cost = Cost.QUADRATIC;
+        optimizer = new Optimizer.SGD();
     }
 
     /**
@@ -83,6 +103,57 @@ public class Network {
         return index == 0 ? inputLayer : hiddenLayers[index - 1];
     }
 
+    /**
+     * Set the activation function of a layer (the default is {@link Activation#SIGMOID}).
+     *
+     * @param   index       the layer number (1 for the first layer after the input layer)
+     * @param   activation  the {@link Activation}
+     * @throws  IndexOutOfBoundsException if the layer number is not valid
+     */
+    public void setActivation(int index, Activation activation) {
+        if (index < 1 || index >= numLayers)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        hiddenLayers[index - 1].setActivation(activation);
+    }
+
+    /**
+     * Get the cost function used in training.
+     *
+     * @return  the {@link Cost}
+     */
+    public Cost getCost() {
+        return cost;
+    }
+
+    /**
+     * Set the cost function used in training (the default is {@link Cost#QUADRATIC}).
+     *
+     * @param   cost    the {@link Cost}
+     */
+    public void setCost(Cost cost) {
+        this.cost = Objects.requireNonNull(cost);
+    }
+
+    /**
+     * Get the optimizer used in training.
+     *
+     * @return  the {@link Optimizer}
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * Set the optimizer used in training (the default is {@link Optimizer.SGD}).  The state
+     * arrays of the optimizer are allocated (if necessary) at this point.
+     *
+     * @param   optimizer   the {@link Optimizer}
+     */
+    public void setOptimizer(Optimizer optimizer) {
+        optimizer.prepare(layerSizes);
+        this.optimizer = optimizer;
+    }
+
     /**
      * Get the input layer.
      *
@@ -178,6 +249,122 @@ public class Network {
         return indexOfHighest(getResultArray(inputs));
     }
 
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.  Unlike {@link #getResultArray(double[])},
+     * this method does not modify the state of the network, so it may be used by multiple
+     * threads at the same time, as long as each thread uses its own context and the network is
+     * not being trained concurrently.  For a {@link Predictor} that can not be affected by
+     * training, see {@link #freeze()}.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    @Override
+    public double[] predict(double[] inputs, InferenceContext context) {
+        if (inputs.length != layerSizes[0])
+            throw new IllegalArgumentException("Inputs array wrong size");
+        Object event = FlightRecorderEvents.beginInference();
+        double[][] outputs = context.check(layerSizes).outputs;
+        double[] activation = inputs;
+        for (int i = 0, n = hiddenLayers.length; i < n; i++) {
+            hiddenLayers[i].forward(activation, outputs[i]);
+            activation = outputs[i];
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, 1);
+        return activation;
+    }
+
+    /**
+     * Process a batch of inputs packed into an array (see
+     * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}), calculating
+     * the outputs of each layer for the whole batch as a single matrix-matrix product.  As with
+     * {@link #predict(double[], InferenceContext)}, the network must not be trained
+     * concurrently.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is too small, the number of items
+     *                  exceeds the capacity of the context, or the context does not match the
+     *                  layer sizes
+     */
+    @Override
+    public double[] predictBatch(double[] inputs, int offset, int count,
+            BatchInferenceContext context) {
+        double[][] outputs = context.check(layerSizes, count).outputs;
+        context.checkInputs(inputs, offset, count);
+        Object event = FlightRecorderEvents.beginInference();
+        double[] activation = inputs;
+        int activationOffset = offset;
+        for (int i = 0, n = hiddenLayers.length; i < n; i++) {
+            hiddenLayers[i].forwardBatch(activation, activationOffset, count, outputs[i]);
+            activation = outputs[i];
+            activationOffset = 0;
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, count);
+        return context.complete(count);
+    }
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    @Override
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    /**
+     * Create an immutable snapshot of the network in its current state, for use in inference.
+     * The snapshot is not affected by any subsequent training of the network, and it may be
+     * shared by any number of threads.
+     *
+     * @return  the {@link FrozenNetwork}
+     */
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(inputLayer, hiddenLayers);
+    }
+
+    /**
+     * Set the weights and biases of all layers, copying them from arrays supplied by the
+     * functions (the layer sizes must already have been checked).
+     *
+     * @param   biases      a function to get the biases for a layer (1 for the first layer
+     *                      after the input layer)
+     * @param   weights     a function to get the weights for a layer, in the row-major form
+     *                      described in {@link HiddenLayer#getWeightsArray()}
+     */
+    void setParameters(IntFunction<double[]> biases, IntFunction<double[]> weights) {
+        for (int i = 1; i < numLayers; i++) {
+            HiddenLayer h = hiddenLayers[i - 1];
+            // getBiases() and getWeightsArray() return references, not copies
+            double[] b = h.getBiases();
+            double[] w = h.getWeightsArray();
+            System.arraycopy(biases.apply(i), 0, b, 0, b.length);
+            System.arraycopy(weights.apply(i), 0, w, 0, w.length);
+        }
+    }
+
+    /**
+     * Create a {@link QuantizedNetwork} from the network in its current state, with the weights
+     * quantized to 8-bit integers, to reduce the memory needed for inference.  Like
+     * {@link #freeze()}, the result is not affected by any subsequent training of the network.
+     *
+     * @return  the {@link QuantizedNetwork}
+     */
+    public QuantizedNetwork quantize() {
+        return new QuantizedNetwork(layerSizes, i -> hiddenLayers[i - 1].getActivation(),
+                i -> hiddenLayers[i - 1].getBiases(),
+                i -> hiddenLayers[i - 1].getWeightsArray());
+    }
+
     /**
      * Implementation of the mini-batch Stochastic Gradient Descent algorithm.
      *
@@ -192,35 +379,12 @@ public class Network {
      *                          note on {@link #init(Random)}
      * @param   testData        a second {@link TrainingDataSource} containing test data to
      *                          evaluate progress (may be {@code null})
-     * @throws  IllegalArgumentException if the number of epochs not in allowed range
+     * @throws  IllegalArgumentException if the number of epochs is less than 1
      */
     public void stochasticGradientDescent(TrainingDataSource tds, int epochs, int miniBatchSize,
             double eta, Random r, TrainingDataSource testData) {
-        if (log.isInfoEnabled()) {
-            log.info("Stochastic Gradient Descent on " + toString() + "; training data " +
-                    tds.getSize() + "; " + epochs + " epochs; mini-batch size " +
-                    miniBatchSize + "; eta " + eta);
-        }
-        if (r == null)
-            r = new Random();
-        TrainingDataRandom tdr = new TrainingDataRandom(Objects.requireNonNull(tds));
-        if (epochs < 1 || epochs > 200)
-            throw new IllegalArgumentException("number of epochs must be in range 1..200");
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            tdr.randomise(r);
-            for (int k = 0; k < tdr.getSize(); k += miniBatchSize) {
-                TrainingDataSubset miniBatch = new TrainingDataSubset(tdr, k,
-                        Math.min(miniBatchSize, tdr.getSize() - k));
-                updateMiniBatch(miniBatch, eta);
-            }
-            if (log.isInfoEnabled()) {
-                log.info("Completed epoch " + (epoch + 1));
-                if (testData != null) {
-                    int n = evaluate(testData);
-                    log.info("Correctly identified " + n + " of " + testData.getSize());
-                }
-            }
-        }
+        train(tds).epochs(epochs).miniBatchSize(miniBatchSize).eta(eta).random(r).
+                testData(testData).go();
     }
 
     /**
@@ -229,111 +393,334 @@ public class Network {
      * @param   miniBatch       the mini-batch
      * @param   eta             the learning rate
      */
-    private void updateMiniBatch(TrainingDataSubset miniBatch, double eta) {
+    void updateMiniBatch(TrainingDataSubset miniBatch, double eta) {
+        TrainingWorkspace ws = workspace;
+        ws.clear();
+        for (int m = 0, n = miniBatch.getSize(); m < n; m++)
+            backProp(miniBatch, m, ws);
+        applyGradients(ws, miniBatch.getSize(), eta);
+    }
+
+    /**
+     * Implementation of "update_mini_batch" using matrix-matrix operations on a packed
+     * mini-batch.  This gives the same results as {@link #updateMiniBatch(TrainingDataSubset,
+     * double)} (apart from possible rounding differences), but makes much better use of the
+     * processor cache because the weights are traversed once per layer for the whole
+     * mini-batch, rather than once for each item.
+     *
+     * @param   miniBatch       the packed mini-batch
+     * @param   ws              the {@link BatchWorkspace}
+     * @param   eta             the learning rate
+     */
+    void updateMiniBatch(MiniBatch miniBatch, BatchWorkspace ws, double eta) {
+        ws.clear();
+        backPropBatch(miniBatch, 0, miniBatch.size, ws);
+        applyGradients(ws, miniBatch.size, eta);
+    }
+
+    /**
+     * Update the weights and biases using the accumulated gradients from a mini-batch, using
+     * the current {@link Optimizer}.
+     *
+     * @param   ws              the {@link GradientWorkspace} holding the gradients
+     * @param   batchSize       the number of items in the mini-batch
+     * @param   eta             the learning rate
+     */
+    private void applyGradients(GradientWorkspace ws, int batchSize, double eta) {
+        Optimizer opt = optimizer;
+        opt.beginStep();
+        for (int i = 0, numHiddens = hiddenLayers.length; i < numHiddens; i++) {
+            HiddenLayer h = hiddenLayers[i];
+            // getBiases() and getWeightsArray() return references, not copies
+            opt.update(i * 2, h.getBiases(), ws.nablaB[i], batchSize, eta);
+            opt.update(i * 2 + 1, h.getWeightsArray(), ws.nablaW[i], batchSize, eta);
+        }
+    }
+
+    /**
+     * Calculate gradient for the cost function, and add it to the gradient accumulators
+     * {@code nablaB} and {@code nablaW} in the supplied {@link TrainingWorkspace}.  These are
+     * layer-by-layer lists of {@code double[]} arrays, similar to {@code biases} and
+     * {@code weights} (the weights for each layer are in the row-major form described in
+     * {@link HiddenLayer#getWeightsArray()}).  All intermediate values are held in the
+     * workspace, so this method does not allocate any storage.
+     *
+     * @param   inputs  the inputs for the training data item
+     * @param   y       the expected outputs for the training data item
+     * @param   ws      the {@link TrainingWorkspace}
+     */
+    void backProp(double[] inputs, double[] y, TrainingWorkspace ws) {
+        int numHiddens = hiddenLayers.length;
+        Object event = FlightRecorderEvents.beginBackProp();
+        long start = ws.startTimer();
+        double[] activation = feedForward(inputs, ws);
+        start = ws.forwardCompleted(start);
+        if (y.length != activation.length)
+            throw arraySameLengthException(activation.length, y.length);
+        cost.outputError(hiddenLayers[numHiddens - 1].getActivation(), ws.zs[numHiddens - 1],
+                activation, y, 0, ws.deltas[numHiddens - 1], 0, activation.length);
+        backward(ws);
+        ws.backwardCompleted(start);
+        FlightRecorderEvents.endBackProp(event, layerSizes, 1);
+    }
+
+    /**
+     * Calculate gradient for the cost function, as
+     * {@link #backProp(double[], double[], TrainingWorkspace)}, for a training data item where
+     * the expected output is specified as a label (the index of the single output expected to
+     * be 1.0, with all others 0.0).  The output error is calculated in place from the label, so
+     * no array of expected outputs is needed.
+     *
+     * @param   inputs  the inputs for the training data item
+     * @param   label   the expected output label for the training data item
+     * @param   ws      the {@link TrainingWorkspace}
+     */
+    void backProp(double[] inputs, int label, TrainingWorkspace ws) {
+        int numHiddens = hiddenLayers.length;
+        Object event = FlightRecorderEvents.beginBackProp();
+        long start = ws.startTimer();
+        double[] activation = feedForward(inputs, ws);
+        start = ws.forwardCompleted(start);
+        if (label < 0 || label >= activation.length)
+            throw new IllegalArgumentException("Label out of range: " + label);
+        cost.outputError(hiddenLayers[numHiddens - 1].getActivation(), ws.zs[numHiddens - 1],
+                activation, label, ws.deltas[numHiddens - 1], 0, activation.length);
+        backward(ws);
+        ws.backwardCompleted(start);
+        FlightRecorderEvents.endBackProp(event, layerSizes, 1);
+    }
+
+    private double[] feedForward(double[] inputs, TrainingWorkspace ws) {
         int numHiddens = hiddenLayers.length;
-        double[][] nablaB = new double[numHiddens][];
-        double[][][] nablaW = new double[numHiddens][][];
+        double[][] activations = ws.activations;
+        double[][] zs = ws.zs;
+        double[] activation = inputs;
+        activations[0] = activation;
         for (int i = 0; i < numHiddens; i++) {
-            nablaB[i] = hiddenLayers[i].getZeroBiasesArray();
-            nablaW[i] = hiddenLayers[i].getZeroWeightsArray();
+            HiddenLayer h = hiddenLayers[i];
+            double[] z = zs[i];
+            dot(h.getWeightsArray(), h.getInputSize(), activation, z);
+            addInPlace(z, h.getBiases());
+            activation = activations[i + 1];
+            h.getActivation().forward(z, activation, 0, z.length);
         }
+        return activation;
+    }
 
-        double[][] deltaNablaB = new double[numHiddens][];
-        double[][][] deltaNablaW = new double[numHiddens][][];
-        for (int m = 0, n = miniBatch.getSize(); m < n; m++) {
-            backProp(miniBatch.getItem(m), deltaNablaB, deltaNablaW);
-            for (int i = 0; i < numHiddens; i++) {
-                addInPlace(nablaB[i], deltaNablaB[i]);
-                addInPlace2(nablaW[i], deltaNablaW[i]);
-            }
+    private void backward(TrainingWorkspace ws) {
+        int numHiddens = hiddenLayers.length;
+        double[][] activations = ws.activations;
+        double[][] zs = ws.zs;
+        double[][] deltas = ws.deltas;
+
+        // the output error is already in the last delta array
+        double[] delta = deltas[numHiddens - 1];
+        addInPlace(ws.nablaB[numHiddens - 1], delta);
+        addOuterProduct(delta, activations[numHiddens - 1], ws.nablaW[numHiddens - 1]);
+
+        for (int l = numHiddens - 2; l >= 0; l--) {
+            HiddenLayer h = hiddenLayers[l + 1];
+            double[] previous = delta;
+            delta = deltas[l];
+            transposeDot(h.getWeightsArray(), h.getInputSize(), previous, delta);
+            hiddenLayers[l].getActivation().backward(zs[l], activations[l + 1], delta, 0,
+                    delta.length);
+            addInPlace(ws.nablaB[l], delta);
+            addOuterProduct(delta, activations[l], ws.nablaW[l]);
         }
 
-        double etaDivBatchSize = eta / miniBatch.getSize();
-        for (int i = 0; i < numHiddens; i++) {
-            HiddenLayer h = hiddenLayers[i];
-            double[] biases = h.getBiases(); // reference, not copy
-            double[] nablaBi = nablaB[i];
-            double[][] weights = h.getWeights(); // reference, not copy
-            double[][] nablaWi = nablaW[i];
-            for (int j = 0; j < h.getSize(); j++) {
-                // calculate new biases
-                biases[j] -= etaDivBatchSize * nablaBi[j];
-                // calculate new weights
-                double[] weightsj = weights[j];
-                double[] nablaWij = nablaWi[j];
-                for (int k = 0; k < weightsj.length; k++)
-                    weightsj[k] -= etaDivBatchSize * nablaWij[k];
-            }
+    }
+
+    /**
+     * Calculate the gradient for the cost function for an item of training data, identified by
+     * its index in a {@link TrainingDataSource}.  The inputs and expected outputs are copied
+     * into the buffers in the workspace (see {@link TrainingDataSource#copyInputs(int,
+     * double[], int)}), so that a source holding its data in packed form need not create any
+     * objects for the item.  If the source is labelled (see
+     * {@link TrainingDataSource#isLabelled()}) the label is used in place of the expected
+     * outputs.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   index   the index of the item
+     * @param   ws      the {@link TrainingWorkspace}
+     * @throws  IllegalArgumentException if the item is not of the size expected by the network
+     */
+    void backProp(TrainingDataSource source, int index, TrainingWorkspace ws) {
+        MiniBatch.checkRowSize(source.copyInputs(index, ws.inputs, 0), ws.inputs.length);
+        if (source.isLabelled())
+            backProp(ws.inputs, source.getLabel(index), ws);
+        else {
+            MiniBatch.checkRowSize(source.copyOutputs(index, ws.expected, 0),
+                    ws.expected.length);
+            backProp(ws.inputs, ws.expected, ws);
         }
     }
 
     /**
-     * Calculate gradient for the cost function.  {@code nablaB} and {@code nablaW} are
-     * layer-by-layer lists of {@code double[]} or {@code double[][]} arrays, similar to
-     * {@code biases} and {@code weights}.
+     * Calculate the gradient for the cost function for a range of items in a packed
+     * mini-batch, and add it to the gradient accumulators in the supplied
+     * {@link BatchWorkspace}.  This is the batched equivalent of
+     * {@link #backProp(double[], double[], TrainingWorkspace)}: the weighted inputs,
+     * activations and errors for each layer are matrices with a row for each item, and the
+     * forward and backward passes are performed as matrix-matrix products.
      *
-     * @param   td      the training data item
+     * @param   miniBatch       the packed mini-batch
+     * @param   start           the index of the first item to process
+     * @param   count           the number of items to process
+     * @param   ws              the {@link BatchWorkspace}
      */
-    private void backProp(TrainingData td, double[][] nablaB, double[][][] nablaW) {
+    void backPropBatch(MiniBatch miniBatch, int start, int count, BatchWorkspace ws) {
         int numHiddens = hiddenLayers.length;
+        double[][] activations = ws.batchActivations;
+        double[][] zs = ws.batchZs;
+        double[][] deltas = ws.batchDeltas;
+        Object event = FlightRecorderEvents.beginBackProp();
+        long startTime = ws.startTimer();
 
         // feedforward
-        double[] activation = td.getInputs();
-        double[][] activations = new double[numHiddens + 1][];
+        // (the inputs are used in place, so the input activations start at an offset)
+        double[] activation = miniBatch.inputs;
+        int inputOffset = start * layerSizes[0];
         activations[0] = activation;
-        double[][] zs = new double[numHiddens][];
         for (int i = 0; i < numHiddens; i++) {
-            double[] z = dot(hiddenLayers[i].getWeights(), activation);
-            addInPlace(z, hiddenLayers[i].getBiases());
-            zs[i] = z;
-            activation = sigmoid(z);
-            activations[i + 1] = activation;
+            HiddenLayer h = hiddenLayers[i];
+            int size = h.getSize();
+            double[] z = zs[i];
+            LinearAlgebra.gemmNT(count, size, h.getInputSize(), activation,
+                    i == 0 ? inputOffset : 0, h.getWeightsArray(), 0, z, 0);
+            double[] biases = h.getBiases();
+            for (int m = 0, k = 0; m < count; m++)
+                for (int j = 0; j < size; j++)
+                    z[k++] += biases[j];
+            activation = activations[i + 1];
+            Activation f = h.getActivation();
+            if (f.isElementwise())
+                f.forward(z, activation, 0, count * size);
+            else {
+                for (int m = 0; m < count; m++)
+                    f.forward(z, activation, m * size, size);
+            }
         }
 
         // backward pass
-        double[] delta = costDerivative(activations[numHiddens], td.getOutputs());
-        multiplyInPlace(delta, sigmoidPrime(zs[zs.length - 1]));
-        nablaB[numHiddens - 1] = delta;
-        nablaW[numHiddens - 1] = matrixMultiply(delta, activations[numHiddens - 1]);
+        startTime = ws.forwardCompleted(startTime);
+        int outputSize = layerSizes[numHiddens];
+        double[] delta = deltas[numHiddens - 1];
+        double[] z = zs[numHiddens - 1];
+        Activation f = hiddenLayers[numHiddens - 1].getActivation();
+        if (miniBatch.labelled) {
+            int[] labels = miniBatch.labels;
+            for (int m = 0; m < count; m++)
+                cost.outputError(f, z, activation, labels[start + m], delta, m * outputSize,
+                        outputSize);
+        }
+        else {
+            double[] y = miniBatch.outputs;
+            for (int m = 0; m < count; m++)
+                cost.outputError(f, z, activation, y, (start + m) * outputSize, delta,
+                        m * outputSize, outputSize);
+        }
+        accumulateBatch(numHiddens - 1, count, delta, activations[numHiddens - 1],
+                numHiddens == 1 ? inputOffset : 0, ws);
+
+        for (int l = numHiddens - 2; l >= 0; l--) {
+            HiddenLayer h = hiddenLayers[l + 1];
+            double[] previous = delta;
+            delta = deltas[l];
+            LinearAlgebra.gemmNN(count, h.getInputSize(), h.getSize(), previous,
+                    h.getWeightsArray(), delta);
+            backwardBatch(l, count, delta, ws);
+            accumulateBatch(l, count, delta, activations[l], l == 0 ? inputOffset : 0, ws);
+        }
+        ws.backwardCompleted(startTime);
+        FlightRecorderEvents.endBackProp(event, layerSizes, count);
+
+    }
 
-        for (int l = 2; l < numLayers; l++) {
-            double[] z = zs[zs.length - l];
-            double[] sp = sigmoidPrime(z);
-            delta = dot(transpose(hiddenLayers[numHiddens - l + 1].getWeights()), delta);
-            multiplyInPlace(delta, sp);
-            nablaB[numHiddens - l] = delta;
-            nablaW[numHiddens - l] = matrixMultiply(delta, activations[numHiddens - l]);
+    private void backwardBatch(int layer, int count, double[] delta, BatchWorkspace ws) {
+        int size = layerSizes[layer + 1];
+        Activation f = hiddenLayers[layer].getActivation();
+        double[] z = ws.batchZs[layer];
+        double[] a = ws.batchActivations[layer + 1];
+        if (f.isElementwise())
+            f.backward(z, a, delta, 0, count * size);
+        else {
+            for (int m = 0; m < count; m++)
+                f.backward(z, a, delta, m * size, size);
         }
+    }
 
+    private void accumulateBatch(int layer, int count, double[] delta, double[] activation,
+            int activationOffset, GradientWorkspace ws) {
+        int size = layerSizes[layer + 1];
+        double[] nablaB = ws.nablaB[layer];
+        for (int m = 0, k = 0; m < count; m++)
+            for (int j = 0; j < size; j++)
+                nablaB[j] += delta[k++];
+        LinearAlgebra.gemmTNAdd(size, layerSizes[layer], count, delta, 0, activation,
+                activationOffset, ws.nablaW[layer], 0);
     }
 
     public double[] costDerivative(double[] outputActivations, double[] y) {
+        double[] result = new double[outputActivations.length];
+        costDerivative(outputActivations, y, result);
+        return result;
+    }
+
+    /**
+     * Calculate the derivative of the (quadratic) cost function with respect to the output
+     * activations, storing the result in a supplied array.
+     *
+     * @param   outputActivations   the output activations
+     * @param   y                   the expected outputs
+     * @param   result              the array to hold the result
+     * @throws  IllegalArgumentException if the arrays are of different lengths
+     */
+    public void costDerivative(double[] outputActivations, double[] y, double[] result) {
         int n = outputActivations.length;
         if (n != y.length)
             throw arraySameLengthException(n, y.length);
-        double[] result = new double[n];
+        if (n != result.length)
+            throw arraySameLengthException(n, result.length);
         for (int i = 0; i < n; i++)
             result[i] = outputActivations[i] - y[i];
-        return result;
+    }
+
+    /**
+     * Calculate the derivative of the (quadratic) cost function with respect to the output
+     * activations, where the expected output is specified as a label (the index of the single
+     * output expected to be 1.0, with all others 0.0), storing the result in a supplied array.
+     * The result is the same as for {@link #costDerivative(double[], double[], double[])} with
+     * the equivalent expected outputs array, but no such array is needed.
+     *
+     * @param   outputActivations   the output activations
+     * @param   label               the expected output label
+     * @param   result              the array to hold the result
+     * @throws  IllegalArgumentException if the arrays are of different lengths, or the label is
+     *                  out of range
+     */
+    public void costDerivative(double[] outputActivations, int label, double[] result) {
+        int n = outputActivations.length;
+        if (n != result.length)
+            throw arraySameLengthException(n, result.length);
+        if (label < 0 || label >= n)
+            throw new IllegalArgumentException("Label out of range: " + label);
+        for (int i = 0; i < n; i++)
+            result[i] = outputActivations[i];
+        result[label] -= 1.0;
     }
 
     /**
      * Return the number of test inputs for which the neural network outputs the correct result.
      * Note that the neural network's output is assumed to be the index of whichever neuron in
-     * the final layer has the highest activation.
+     * the final layer has the highest activation.  For a parallel version that also gives
+     * results for each class, see {@link #evaluate(TrainingDataSource, boolean)}.
      *
      * @param   testData    the set of test data
      * @return              the total number of correct results
      */
     public int evaluate(TrainingDataSource testData) {
-        // parallelise?
-        int sum = 0;
-        for (int i = 0, n = testData.getSize(); i < n; i++) {
-            TrainingData td = testData.getItem(i);
-            if (getResultInt(td.getInputs()) == td.getHighestOutputIndex())
-                sum++;
-        }
-        return sum;
+        return evaluate(testData, false).getCorrect();
     }
 
     /**
@@ -361,11 +748,25 @@ public class Network {
     }
 
     public static double[] sigmoid(double[] a) {
+        double[] result = new double[a.length];
+        sigmoid(a, result);
+        return result;
+    }
+
+    /**
+     * Apply the sigmoid function to each value in an array, storing the results in a second
+     * array (which may be the same as the first).
+     *
+     * @param   a       the array of values
+     * @param   result  the array to hold the results
+     * @throws  IllegalArgumentException if the arrays are of different lengths
+     */
+    public static void sigmoid(double[] a, double[] result) {
         int n = a.length;
-        double[] result = new double[n];
+        if (n != result.length)
+            throw arraySameLengthException(n, result.length);
         for (int i = 0; i < n; i++)
             result[i] = sigmoid(a[i]);
-        return result;
     }
 
     public static double sigmoidPrime(double z) {
@@ -374,11 +775,25 @@ public class Network {
     }
 
     public static double[] sigmoidPrime(double[] a) {
+        double[] result = new double[a.length];
+        sigmoidPrime(a, result);
+        return result;
+    }
+
+    /**
+     * Apply the derivative of the sigmoid function to each value in an array, storing the
+     * results in a second array (which may be the same as the first).
+     *
+     * @param   a       the array of values
+     * @param   result  the array to hold the results
+     * @throws  IllegalArgumentException if the arrays are of different lengths
+     */
+    public static void sigmoidPrime(double[] a, double[] result) {
         int n = a.length;
-        double[] result = new double[n];
+        if (n != result.length)
+            throw arraySameLengthException(n, result.length);
         for (int i = 0; i < n; i++)
             result[i] = sigmoidPrime(a[i]);
-        return result;
     }
 
     /**
@@ -396,15 +811,21 @@ public class Network {
         if (n != b.length)
             throw new IllegalArgumentException("Arrays must be compatible (" + n + " != " +
                     b.length + ')');
+        int m = b[0].length;
         double[][] result = new double[a.length][];
         for (int i = 0; i < a.length; i++) {
-            int m = b[0].length;
-            result[i] = new double[m];
-            for (int j = 0; j < m; j++) {
-                double sum = 0.0;
-                for (int k = 0; k < n; k++)
-                    sum += a[i][k] * b[k][j];
-                result[i][j] = sum;
+            double[] ai = a[i];
+            double[] ri = new double[m];
+            result[i] = ri;
+
+            // accumulate a row of b at a time, so that b is accessed along its rows rather than
+            // down its columns; each element still has its terms added in the same order
+
+            for (int k = 0; k < n; k++) {
+                double aik = ai[k];
+                double[] bk = b[k];
+                for (int j = 0; j < m; j++)
+                    ri[j] += aik * bk[j];
             }
         }
         return result;
@@ -437,6 +858,117 @@ public class Network {
         return result;
     }
 
+    /**
+     * Matrix multiplication of a 2-dimension array held in row-major form in a single
+     * {@code double[]} by a 1-dimension array.  This is the equivalent of
+     * {@link #dot(double[][], double[])} for the weights layout used by {@link HiddenLayer}.
+     *
+     * @param   a       a 2-dimension array in row-major form
+     * @param   cols    the number of columns in {@code a}
+     * @param   b       a 1-dimension array
+     * @return          a 1-dimension array
+     * @throws  IllegalArgumentException if the arrays are of incompatible dimensions
+     */
+    public static double[] dot(double[] a, int cols, double[] b) {
+        double[] result = new double[cols == 0 ? 0 : a.length / cols];
+        dot(a, cols, b, result);
+        return result;
+    }
+
+    /**
+     * Matrix multiplication of a 2-dimension array held in row-major form in a single
+     * {@code double[]} by a 1-dimension array, storing the result in a supplied array.
+     *
+     * @param   a       a 2-dimension array in row-major form
+     * @param   cols    the number of columns in {@code a}
+     * @param   b       a 1-dimension array
+     * @param   result  the array to hold the result, with length equal to the number of rows
+     *                  in {@code a}
+     * @throws  IllegalArgumentException if the arrays are of incompatible dimensions
+     */
+    public static void dot(double[] a, int cols, double[] b, double[] result) {
+        if (cols != b.length)
+            throw arraySameLengthException(cols, b.length);
+        int rows = result.length;
+        if (rows * cols != a.length)
+            throw arraySameLengthException(a.length, rows * cols);
+        LinearAlgebra.gemv(rows, cols, a, 0, b, 0, result, 0);
+    }
+
+    /**
+     * Matrix multiplication of the transpose of a 2-dimension array held in row-major form in a
+     * single {@code double[]} by a 1-dimension array.  The result is the same as
+     * {@code dot(transpose(a), b)}, but the transposed array is never created, and the array
+     * {@code a} is accessed sequentially.
+     *
+     * @param   a       a 2-dimension array in row-major form
+     * @param   cols    the number of columns in {@code a}
+     * @param   b       a 1-dimension array, with length equal to the number of rows in
+     *                  {@code a}
+     * @return          a 1-dimension array of length {@code cols}
+     * @throws  IllegalArgumentException if the arrays are of incompatible dimensions
+     */
+    public static double[] transposeDot(double[] a, int cols, double[] b) {
+        double[] result = new double[cols];
+        transposeDot(a, cols, b, result);
+        return result;
+    }
+
+    /**
+     * Matrix multiplication of the transpose of a 2-dimension array held in row-major form in a
+     * single {@code double[]} by a 1-dimension array, storing the result in a supplied array.
+     *
+     * @param   a       a 2-dimension array in row-major form
+     * @param   cols    the number of columns in {@code a}
+     * @param   b       a 1-dimension array, with length equal to the number of rows in
+     *                  {@code a}
+     * @param   result  the array to hold the result, of length {@code cols}
+     * @throws  IllegalArgumentException if the arrays are of incompatible dimensions
+     */
+    public static void transposeDot(double[] a, int cols, double[] b, double[] result) {
+        int rows = b.length;
+        if (rows * cols != a.length)
+            throw arraySameLengthException(a.length, rows * cols);
+        if (cols != result.length)
+            throw arraySameLengthException(cols, result.length);
+        LinearAlgebra.gemvT(rows, cols, a, 0, b, 0, result, 0);
+    }
+
+    /**
+     * The outer product of two arrays, returned as a 2-dimension array in row-major form in a
+     * single {@code double[]}.  This is the equivalent of
+     * {@link #matrixMultiply(double[], double[])} for the weights layout used by
+     * {@link HiddenLayer}.
+     *
+     * @param   a       the first array
+     * @param   b       the second array
+     * @return          the matrix product, of dimension ({@code a.length}, {@code b.length})
+     */
+    public static double[] outerProduct(double[] a, double[] b) {
+        double[] result = new double[a.length * b.length];
+        addOuterProduct(a, b, result);
+        return result;
+    }
+
+    /**
+     * Add the outer product of two arrays to a 2-dimension array held in row-major form in a
+     * single {@code double[]}.  This is used to accumulate the weight gradients directly, without
+     * creating an intermediate array to hold the product.
+     *
+     * @param   a       the first array
+     * @param   b       the second array
+     * @param   result  the array to which the product is to be added, of dimension
+     *                  ({@code a.length}, {@code b.length})
+     * @throws  IllegalArgumentException if the arrays are of incompatible dimensions
+     */
+    public static void addOuterProduct(double[] a, double[] b, double[] result) {
+        int alen = a.length;
+        int blen = b.length;
+        if (alen * blen != result.length)
+            throw arraySameLengthException(alen * blen, result.length);
+        LinearAlgebra.ger(alen, blen, a, 0, b, 0, result, 0);
+    }
+
     /**
      * This is a special case of a matrix multiply, where the first operand is treated as if it
      * were of dimension (x, 1) and the second (1, y).  The resulting array is of dimension
@@ -469,12 +1001,21 @@ public class Network {
     public static double[][] transpose(double[][] a) {
         int len1 = a.length;
         int len2 = a[0].length;
-        double[][] result = new double[len2][];
-        for (int i = 0; i < len2; i++) {
-            double[] newArray = new double[len1];
-            result[i] = newArray;
-            for (int j = 0; j < len1; j++)
-                newArray[j] = a[j][i];
+        double[][] result = new double[len2][len1];
+
+        // copy in square blocks, so that both the source and the destination rows in use remain
+        // in the cache
+
+        for (int j0 = 0; j0 < len1; j0 += transposeBlock) {
+            int j1 = Math.min(len1, j0 + transposeBlock);
+            for (int i0 = 0; i0 < len2; i0 += transposeBlock) {
+                int i1 = Math.min(len2, i0 + transposeBlock);
+                for (int j = j0; j < j1; j++) {
+                    double[] aj = a[j];
+                    for (int i = i0; i < i1; i++)
+                        result[i][j] = aj[i];
+                }
+            }
         }
         return result;
     }
@@ -577,23 +1118,83 @@ public class Network {
     public class Trainer {
 
         private TrainingDataSource trainingData;
+        private TrainingDataStream trainingStream;
         private TrainingDataSource testData;
         private int epochs;
         private int miniBatchSize;
         private double eta;
         private Random random;
+        private boolean batched;
+        private int parallelism;
+        private ForkJoinPool pool;
+        private boolean deterministic;
+        private boolean packed;
+        private int prefetch;
+        private Cost cost;
+        private Optimizer optimizer;
+        private LearningRateSchedule schedule;
+        private List<TrainingListener> listeners;
+        private boolean logging;
+        private int patience;
+        private ToDoubleFunction<EvaluationResult> metric;
+        private boolean restoreBest;
+        private Path checkpointPath;
+        private int checkpointInterval;
+        private Checkpoint resumeFrom;
+        private int epochsCompleted;
+        private int bestEpoch;
+        private double bestScore;
 
         public Trainer() {
             trainingData = null;
+            trainingStream = null;
             testData = null;
             epochs = 30;
             miniBatchSize = 10;
             eta = 3.0;
             random = null;
+            batched = false;
+            parallelism = 1;
+            pool = null;
+            deterministic = false;
+            packed = false;
+            prefetch = 0;
+            cost = null;
+            optimizer = null;
+            schedule = LearningRateSchedule.constant();
+            listeners = new ArrayList<>();
+            logging = true;
+            patience = 0;
+            metric = null;
+            restoreBest = true;
+            checkpointPath = null;
+            checkpointInterval = 0;
+            resumeFrom = null;
+            epochsCompleted = 0;
+            bestEpoch = 0;
+            bestScore = Double.NaN;
         }
 
         public Trainer trainingData(TrainingDataSource trainingData) {
             this.trainingData = trainingData;
+            trainingStream = null;
+            return this;
+        }
+
+        /**
+         * Select a {@link TrainingDataStream} as the training data (in place of a
+         * {@link TrainingDataSource}).  Each epoch is a single pass through the stream, and the
+         * mini-batches are packed from the items in the order in which they are read, so
+         * training is always batched (see {@link #batched(boolean)}); the {@code packed} and
+         * {@code prefetch} options do not apply.  If the stream can not be read, the training
+         * operation fails with an {@link UncheckedIOException}.
+         *
+         * @param   trainingStream  the {@link TrainingDataStream}
+         * @return  the {@code Trainer}
+         */
+        public Trainer trainingStream(TrainingDataStream trainingStream) {
+            this.trainingStream = Objects.requireNonNull(trainingStream);
+            trainingData = null;
             return this;
         }
 
@@ -622,9 +1223,563 @@ public class Network {
             return this;
         }
 
+        /**
+         * Select batched training, in which each mini-batch is packed into a matrix and the
+         * forward and backward passes are performed as matrix-matrix products.  The results are
+         * the same as for the default (item by item) training, apart from possible rounding
+         * differences.
+         *
+         * @param   batched     {@code true} to select batched training
+         * @return  the {@code Trainer}
+         */
+        public Trainer batched(boolean batched) {
+            this.batched = batched;
+            return this;
+        }
+
+        /**
+         * Select parallel training, in which each mini-batch is divided among the specified
+         * number of worker threads.  Each worker accumulates the gradients for its part of the
+         * mini-batch separately, and the results are combined before the weights are updated.
+         * A {@link ForkJoinPool} with the specified parallelism is created for the duration of
+         * the training operation (unless a pool is supplied using
+         * {@link #pool(ForkJoinPool)}).
+         *
+         * @param   parallelism the number of worker threads
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the parallelism is less than 1
+         */
+        public Trainer parallelism(int parallelism) {
+            if (parallelism < 1)
+                throw new IllegalArgumentException("parallelism must be >= 1");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Select parallel training (see {@link #parallelism(int)}) using the supplied
+         * {@link ForkJoinPool}.  The pool is not shut down at the end of the training
+         * operation.
+         *
+         * @param   pool        the {@link ForkJoinPool}
+         * @return  the {@code Trainer}
+         */
+        public Trainer pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Select deterministic reduction of the gradients in parallel training.  The order of
+         * floating point additions affects the results, so by default the results of parallel
+         * training depend on the number of worker threads.  With deterministic reduction the
+         * mini-batch is always divided into the same partitions, and the partial results are
+         * always combined in the same order, so that training with a {@link Random} with a known
+         * seed gives the same results regardless of the number of threads (including one).
+         *
+         * @param   deterministic   {@code true} to select deterministic reduction
+         * @return  the {@code Trainer}
+         */
+        public Trainer deterministic(boolean deterministic) {
+            this.deterministic = deterministic;
+            return this;
+        }
+
+        /**
+         * Select packed training data.  A copy of the training data is held in contiguous
+         * arrays, and the copy is permuted along with the index at the start of each epoch, so
+         * that each mini-batch may be copied from a contiguous range of memory (see
+         * {@link TrainingDataRandom#TrainingDataRandom(TrainingDataSource, boolean)}).  This
+         * takes effect only in batched training (see {@link #batched(boolean)}), where the
+         * mini-batch is packed before use.  It may not be used with a
+         * {@link QuantizedTrainingDataSet}, which already holds its data in compact form.
+         *
+         * @param   packed      {@code true} to select packed training data
+         * @return  the {@code Trainer}
+         */
+        public Trainer packed(boolean packed) {
+            this.packed = packed;
+            return this;
+        }
+
+        /**
+         * Select prefetching of mini-batches.  A background thread shuffles the training data
+         * and packs the mini-batches, up to the specified number in advance, while the
+         * gradients are calculated for the current mini-batch (see {@link MiniBatchPrefetcher}).
+         * The results are the same as without prefetching.  This takes effect only in batched
+         * training (see {@link #batched(boolean)}).
+         *
+         * @param   depth       the number of mini-batches to prepare in advance (0 for no
+         *                      prefetching)
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the depth is negative
+         */
+        public Trainer prefetch(int depth) {
+            if (depth < 0)
+                throw new IllegalArgumentException("prefetch depth must be >= 0");
+            this.prefetch = depth;
+            return this;
+        }
+
+        /**
+         * Select the cost function (see {@link Network#setCost(Cost)}).  The cost function of
+         * the network is set when the training operation starts, and it remains in effect
+         * afterwards; if no cost function is selected, the network's current cost function is
+         * used.
+         *
+         * @param   cost        the {@link Cost}
+         * @return  the {@code Trainer}
+         */
+        public Trainer cost(Cost cost) {
+            this.cost = Objects.requireNonNull(cost);
+            return this;
+        }
+
+        /**
+         * Select the optimizer (see {@link Network#setOptimizer(Optimizer)}).  As with
+         * {@link #cost(Cost)}, the optimizer of the network is set when the training operation
+         * starts, and it remains in effect afterwards; if no optimizer is selected, the
+         * network's current optimizer (and its state) is used.
+         *
+         * @param   optimizer   the {@link Optimizer}
+         * @return  the {@code Trainer}
+         */
+        public Trainer optimizer(Optimizer optimizer) {
+            this.optimizer = Objects.requireNonNull(optimizer);
+            return this;
+        }
+
+        /**
+         * Select a learning rate schedule, which gives the learning rate for each epoch from
+         * the base learning rate (see {@link #eta(double)}).
+         *
+         * @param   schedule    the {@link LearningRateSchedule}
+         * @return  the {@code Trainer}
+         */
+        public Trainer schedule(LearningRateSchedule schedule) {
+            this.schedule = Objects.requireNonNull(schedule);
+            return this;
+        }
+
+        /**
+         * Add a {@link TrainingListener} to receive the {@link TrainingMetrics} for each
+         * mini-batch and epoch of the training operation.
+         *
+         * @param   listener    the {@link TrainingListener}
+         * @return  the {@code Trainer}
+         */
+        public Trainer listener(TrainingListener listener) {
+            listeners.add(Objects.requireNonNull(listener));
+            return this;
+        }
+
+        /**
+         * Select the default {@link LoggingTrainingListener}, which logs the metrics for each
+         * epoch, and the result of evaluating the network against the test data (if any).  It
+         * is selected by default, and takes effect only if {@code INFO} level logging is
+         * enabled for the {@code Network} class.  If it is switched off and no other listeners
+         * are added, no metrics are collected and the test data is not evaluated, so the
+         * training operation incurs no overhead for the measurements.
+         *
+         * @param   logging     {@code true} to select the default listener
+         * @return  the {@code Trainer}
+         */
+        public Trainer logging(boolean logging) {
+            this.logging = logging;
+            return this;
+        }
+
+        /**
+         * Select early stopping, using the accuracy against the test data as the metric (see
+         * {@link #earlyStopping(int, ToDoubleFunction)}).
+         *
+         * @param   patience    the number of epochs without improvement before stopping
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the patience is less than 1
+         */
+        public Trainer earlyStopping(int patience) {
+            return earlyStopping(patience, EvaluationResult::getAccuracy);
+        }
+
+        /**
+         * Select early stopping.  At the end of each epoch the network is evaluated against the
+         * test data (which must be supplied), and the metric is calculated from the
+         * {@link EvaluationResult} (a higher value is better).  Training stops when the metric
+         * has not improved for the specified number of epochs, and (unless switched off using
+         * {@link #restoreBest(boolean)}) the weights and biases are then restored to those of
+         * the epoch with the best score.  The network is copied (see {@link Network#freeze()})
+         * each time the score improves, and the copy is included in any {@link Checkpoint}.
+         * The number of epochs (see {@link #epochs(int)}) is the maximum.
+         *
+         * @param   patience    the number of epochs without improvement before stopping
+         * @param   metric      a function to calculate the metric from the
+         *                      {@link EvaluationResult}
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the patience is less than 1
+         */
+        public Trainer earlyStopping(int patience, ToDoubleFunction<EvaluationResult> metric) {
+            if (patience < 1)
+                throw new IllegalArgumentException("patience must be >= 1");
+            this.patience = patience;
+            this.metric = Objects.requireNonNull(metric);
+            return this;
+        }
+
+        /**
+         * Select whether, in early stopping, the weights and biases are restored at the end of
+         * training to those of the epoch with the best score (the default).  The copy of the
+         * network at the epoch with the best score is kept (and included in any
+         * {@link Checkpoint}) either way, so that training resumed from a checkpoint may still
+         * restore it.
+         *
+         * @param   restoreBest {@code true} to restore the best weights and biases
+         * @return  the {@code Trainer}
+         */
+        public Trainer restoreBest(boolean restoreBest) {
+            this.restoreBest = restoreBest;
+            return this;
+        }
+
+        /**
+         * Select periodic checkpoints.  A {@link Checkpoint} is written to the specified file
+         * every {@code interval} epochs, and at the end of training, replacing the previous one
+         * atomically.  If a checkpoint can not be written, the training operation fails with an
+         * {@link UncheckedIOException}.
+         *
+         * @param   path        the {@link Path} of the checkpoint file
+         * @param   interval    the number of epochs between checkpoints
+         * @return  the {@code Trainer}
+         * @throws  IllegalArgumentException if the interval is less than 1
+         */
+        public Trainer checkpoint(Path path, int interval) {
+            if (interval < 1)
+                throw new IllegalArgumentException("checkpoint interval must be >= 1");
+            this.checkpointPath = Objects.requireNonNull(path);
+            this.checkpointInterval = interval;
+            return this;
+        }
+
+        /**
+         * Resume training from a {@link Checkpoint}.  When the training operation starts, the
+         * weights and biases of the network are set from the checkpoint, and training continues
+         * from the epoch following the last one completed, up to the number of epochs specified
+         * (see {@link #epochs(int)}), with the early stopping state from the checkpoint.  The
+         * remaining options (including the training data and early stopping) must be set again.
+         * The state of the optimizer is not saved in a checkpoint, so the optimizer must be one
+         * that holds no state (see {@link Optimizer#hasState()}), such as the default
+         * {@link Optimizer.SGD}.
+         *
+         * @param   checkpoint  the {@link Checkpoint} (see {@link Checkpoint#load(Path)})
+         * @return  the {@code Trainer}
+         */
+        public Trainer resume(Checkpoint checkpoint) {
+            this.resumeFrom = Objects.requireNonNull(checkpoint);
+            return this;
+        }
+
+        /**
+         * Resume training from a {@link Checkpoint} file (see {@link #resume(Checkpoint)}).
+         *
+         * @param   path        the {@link Path} of the checkpoint file
+         * @return  the {@code Trainer}
+         * @throws  IOException if the file can not be read, or is not a valid checkpoint file
+         */
+        public Trainer resume(Path path) throws IOException {
+            return resume(Checkpoint.load(path));
+        }
+
+        /**
+         * Get the number of epochs completed by the training operation (including any completed
+         * before a checkpoint from which training was resumed).
+         *
+         * @return  the number of epochs
+         */
+        public int getEpochsCompleted() {
+            return epochsCompleted;
+        }
+
+        /**
+         * Get the epoch with the best score in early stopping.
+         *
+         * @return  the epoch (starting from 1), or 0 if early stopping was not selected
+         */
+        public int getBestEpoch() {
+            return bestEpoch;
+        }
+
+        /**
+         * Get the best score in early stopping.
+         *
+         * @return  the score, or {@code NaN} if early stopping was not selected
+         */
+        public double getBestScore() {
+            return bestScore;
+        }
+
+        /**
+         * Run the training operation (see
+         * {@link #stochasticGradientDescent(TrainingDataSource, int, int, double, Random,
+         * TrainingDataSource)}).
+         *
+         * @throws  IllegalArgumentException if the number of epochs is less than 1, if early
+         *          stopping is selected without test data, if the network of a checkpoint
+         *          does not have the same layer sizes, if training is resumed from a checkpoint
+         *          with an optimizer that holds state, or if a training data stream does not
+         *          match the input and output sizes
+         * @throws  UncheckedIOException if a checkpoint can not be written, or a training data
+         *          stream can not be read
+         */
         public void go() {
-            stochasticGradientDescent(trainingData, epochs, miniBatchSize, eta, random,
-                    testData);
+            TrainingDataStream stream = trainingStream;
+            TrainingDataSource tds = stream == null ? Objects.requireNonNull(trainingData) : null;
+            boolean batchMode = batched || stream != null;
+            if (cost != null)
+                setCost(cost);
+            if (optimizer != null)
+                setOptimizer(optimizer);
+            if (log.isInfoEnabled()) {
+                log.info("Stochastic Gradient Descent on " + Network.this.toString() +
+                        "; training data " + (tds != null ? tds.getSize() : "stream") + "; " +
+                        epochs + " epochs; mini-batch size " + miniBatchSize + "; eta " + eta +
+                        "; cost " + Network.this.cost + "; optimizer " + Network.this.optimizer +
+                        (batchMode ? "; batched" : "") + (packed && tds != null && batchMode ?
+                        "; packed" : "") + (prefetch > 0 && tds != null && batchMode ?
+                        "; prefetch " + prefetch : "") +
+                        (parallelism > 1 ? "; parallelism " + parallelism : ""));
+            }
+            Random r = random != null ? random : new Random();
+            if (epochs < 1)
+                throw new IllegalArgumentException("number of epochs must be >= 1");
+            if (patience > 0 && testData == null)
+                throw new IllegalArgumentException("early stopping requires test data");
+            if (stream != null && (stream.getInputSize() != layerSizes[0] ||
+                    stream.getOutputSize() != layerSizes[numLayers - 1]))
+                throw new IllegalArgumentException("Training data stream sizes do not match");
+            int startEpoch = 0;
+            FrozenNetwork best = null;
+            bestEpoch = 0;
+            bestScore = Double.NaN;
+            if (resumeFrom != null) {
+                Network network = resumeFrom.getNetwork();
+                if (!Arrays.equals(network.layerSizes, layerSizes))
+                    throw new IllegalArgumentException("Checkpoint layer sizes do not match");
+                if (Network.this.optimizer.hasState())
+                    throw new IllegalArgumentException("Can not resume from checkpoint with " +
+                            "optimizer " + Network.this.optimizer + " (state is not saved)");
+                if (network != Network.this)
+                    setParameters(i -> network.hiddenLayers[i - 1].getBiases(),
+                            i -> network.hiddenLayers[i - 1].getWeightsArray());
+                startEpoch = resumeFrom.getEpoch();
+                bestEpoch = resumeFrom.getBestEpoch();
+                bestScore = resumeFrom.getBestScore();
+                best = resumeFrom.getBest();
+                if (log.isInfoEnabled())
+                    log.info("Resuming after epoch " + startEpoch);
+            }
+            epochsCompleted = startEpoch;
+            TrainingDataRandom tdr = tds == null ? null : new TrainingDataRandom(tds,
+                    packed && batchMode);
+            MiniBatch miniBatch = null;
+            BatchWorkspace ws = null;
+            ParallelGradient parallel = null;
+            ForkJoinPool ownPool = null;
+            ForkJoinPool evaluationPool = null;
+            if (parallelism > 1 || pool != null || deterministic) {
+                ForkJoinPool fjp = pool;
+                if (fjp == null && parallelism > 1)
+                    fjp = ownPool = new ForkJoinPool(parallelism);
+                evaluationPool = fjp;
+                int partitions = deterministic ? ParallelGradient.deterministicPartitions :
+                        fjp != null ? fjp.getParallelism() : 1;
+                parallel = new ParallelGradient(Network.this, fjp, partitions, miniBatchSize,
+                        batchMode, layerSizes);
+            }
+            else if (batchMode)
+                ws = new BatchWorkspace(miniBatchSize, layerSizes);
+            if (batchMode && (parallel == null || stream != null))
+                miniBatch = new MiniBatch(miniBatchSize, layerSizes[0], layerSizes[numLayers - 1]);
+            List<TrainingListener> activeListeners = new ArrayList<>();
+            if (logging && log.isInfoEnabled())
+                activeListeners.add(new LoggingTrainingListener(log));
+            activeListeners.addAll(listeners);
+            TrainingMonitor monitor = activeListeners.isEmpty() ? null :
+                    new TrainingMonitor(Network.this, epochs, activeListeners);
+            boolean timed = monitor != null;
+            if (parallel != null)
+                parallel.setTimed(timed);
+            else if (ws != null)
+                ws.timed = timed;
+            else
+                workspace.timed = timed;
+            MiniBatchPrefetcher prefetcher = null;
+            try {
+                if (monitor != null)
+                    monitor.trainingStarted();
+                if (prefetch > 0 && tdr != null && batchMode) {
+                    prefetcher = new MiniBatchPrefetcher(tdr, r, epochs - startEpoch, miniBatchSize,
+                            layerSizes[0], layerSizes[numLayers - 1], prefetch);
+                    prefetcher.start();
+                }
+                for (int epoch = startEpoch; epoch < epochs; epoch++) {
+                    double rate = schedule.getRate(eta, epoch);
+                    Object epochEvent = FlightRecorderEvents.beginEpoch();
+                    if (monitor != null)
+                        monitor.beginEpoch(epoch, rate);
+                    long samples;
+                    if (stream != null)
+                        samples = trainStream(stream, r, miniBatch, ws, parallel, rate, monitor,
+                                epoch);
+                    else if (prefetcher != null) {
+                        while (true) {
+                            // the wait for the next mini-batch is not part of its timing
+                            MiniBatch batch = prefetcher.next();
+                            if (batch == null)
+                                break;
+                            Object batchEvent = FlightRecorderEvents.beginMiniBatch();
+                            if (monitor != null)
+                                monitor.beginMiniBatch();
+                            GradientWorkspace gradients;
+                            if (parallel != null)
+                                gradients = parallel.compute(batch);
+                            else {
+                                ws.clear();
+                                backPropBatch(batch, 0, batch.size, ws);
+                                gradients = ws;
+                            }
+                            update(gradients, batch.size, rate, monitor);
+                            FlightRecorderEvents.endMiniBatch(batchEvent, layerSizes, epoch + 1,
+                                    batch.size);
+                            prefetcher.release(batch);
+                        }
+                        samples = tdr.getSize();
+                    }
+                    else {
+                        tdr.randomise(r);
+                        for (int k = 0; k < tdr.getSize(); k += miniBatchSize) {
+                            Object batchEvent = FlightRecorderEvents.beginMiniBatch();
+                            if (monitor != null)
+                                monitor.beginMiniBatch();
+                            int n = Math.min(miniBatchSize, tdr.getSize() - k);
+                            GradientWorkspace gradients;
+                            if (parallel != null)
+                                gradients = parallel.compute(tdr, k, n);
+                            else if (batchMode) {
+                                miniBatch.fill(tdr, k, n);
+                                ws.clear();
+                                backPropBatch(miniBatch, 0, n, ws);
+                                gradients = ws;
+                            }
+                            else {
+                                workspace.clear();
+                                for (int m = 0; m < n; m++)
+                                    backProp(tdr, k + m, workspace);
+                                gradients = workspace;
+                            }
+                            update(gradients, n, rate, monitor);
+                            FlightRecorderEvents.endMiniBatch(batchEvent, layerSizes, epoch + 1,
+                                    n);
+                        }
+                        samples = tdr.getSize();
+                    }
+                    FlightRecorderEvents.endEpoch(epochEvent, layerSizes, epoch + 1,
+                            miniBatchSize, samples);
+                    EvaluationResult evaluation = null;
+                    if (monitor != null)
+                        evaluation = monitor.endEpoch(testData, evaluationPool);
+                    else if (patience > 0)
+                        evaluation = EvaluationResult.evaluate(Network.this, testData,
+                                evaluationPool != null, evaluationPool);
+                    epochsCompleted = epoch + 1;
+                    boolean stop = false;
+                    if (patience > 0) {
+                        double score = metric.applyAsDouble(evaluation);
+                        if (bestEpoch == 0 || score > bestScore) {
+                            bestEpoch = epochsCompleted;
+                            bestScore = score;
+                            best = freeze();
+                        }
+                        else if (epochsCompleted - bestEpoch >= patience)
+                            stop = true;
+                    }
+                    if (checkpointPath != null && (epochsCompleted % checkpointInterval == 0 ||
+                            epochsCompleted == epochs || stop))
+                        saveCheckpoint(best);
+                    if (stop) {
+                        if (log.isInfoEnabled())
+                            log.info("Early stopping after epoch " + epochsCompleted +
+                                    "; best epoch " + bestEpoch + ", score " + bestScore);
+                        break;
+                    }
+                }
+                if (restoreBest && best != null && bestEpoch < epochsCompleted) {
+                    FrozenNetwork b = best;
+                    setParameters(b::getBiases, b::getWeights);
+                }
+            }
+            finally {
+                workspace.timed = false;
+                if (prefetcher != null)
+                    prefetcher.close();
+                if (ownPool != null)
+                    ownPool.shutdown();
+                if (monitor != null)
+                    monitor.trainingCompleted();
+            }
+        }
+
+        private long trainStream(TrainingDataStream stream, Random r, MiniBatch miniBatch,
+                BatchWorkspace ws, ParallelGradient parallel, double rate,
+                TrainingMonitor monitor, int epoch) {
+            boolean labelled = stream.isLabelled();
+            long samples = 0;
+            try (TrainingDataStream.Reader reader = stream.open(r)) {
+                while (true) {
+                    // the reading of the stream is not part of the timing of the mini-batch
+                    int n = miniBatch.fill(reader, labelled);
+                    if (n == 0)
+                        break;
+                    Object batchEvent = FlightRecorderEvents.beginMiniBatch();
+                    if (monitor != null)
+                        monitor.beginMiniBatch();
+                    GradientWorkspace gradients;
+                    if (parallel != null)
+                        gradients = parallel.compute(miniBatch);
+                    else {
+                        ws.clear();
+                        backPropBatch(miniBatch, 0, n, ws);
+                        gradients = ws;
+                    }
+                    update(gradients, n, rate, monitor);
+                    FlightRecorderEvents.endMiniBatch(batchEvent, layerSizes, epoch + 1, n);
+                    samples += n;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Error reading training data", e);
+            }
+            return samples;
+        }
+
+        private void saveCheckpoint(FrozenNetwork best) {
+            try {
+                new Checkpoint(Network.this, epochsCompleted, bestEpoch, bestScore, best).
+                        save(checkpointPath);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Error writing checkpoint: " + checkpointPath, e);
+            }
+        }
+
+        private void update(GradientWorkspace gradients, int batchSize, double rate,
+                TrainingMonitor monitor) {
+            if (monitor == null)
+                applyGradients(gradients, batchSize, rate);
+            else {
+                monitor.beginUpdate();
+                applyGradients(gradients, batchSize, rate);
+                monitor.endMiniBatch(batchSize, gradients.takeForwardNanos(),
+                        gradients.takeBackwardNanos());
+            }
         }
 
     }
@@ -0,0 +1,423 @@
+/*
+ * @(#) Optimizer.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+
+/**
+ * Optimizers: the rules used to update the weights and biases of a network from the gradients
+ * accumulated over a mini-batch.  The parameters of a network are treated as a list of arrays
+ * (for each layer after the input layer, the biases followed by the weights in the row-major
+ * form described in {@link HiddenLayer#getWeightsArray()}), and any state kept by an optimizer
+ * (for example, the velocities of the momentum method) is held in flat arrays of the same
+ * sizes, allocated when the optimizer is first used with a network.  The updates are performed
+ * in place, so no storage is allocated during training.
+ *
+ * <p>An optimizer with state belongs to a single network (see
+ * {@link Network#setOptimizer(Optimizer)}); the state is carried over from one training
+ * operation to the next, and may be discarded using {@link #reset()}.</p>
+ *
+ * <p>A new optimizer may be created by extending this class and implementing
+ * {@link #allocate(int[])} and {@link #update(int, double[], double[], int, double)}.</p>
+ *
+ * @author  Peter Wall
+ */
+public abstract class Optimizer {
+
+    private int[] parameterSizes;
+    private double[][] floatParameters;
+
+    /**
+     * Prepare the optimizer for use with a network, allocating the state arrays if they have
+     * not already been allocated for a network of the same shape.  This is called when the
+     * optimizer is set, not for each update step.
+     *
+     * @param   layerSizes  the layer sizes of the network
+     */
+    void prepare(int[] layerSizes) {
+        int numHiddens = layerSizes.length - 1;
+        int[] sizes = new int[numHiddens * 2];
+        for (int i = 0; i < numHiddens; i++) {
+            sizes[i * 2] = layerSizes[i + 1];
+            sizes[i * 2 + 1] = layerSizes[i + 1] * layerSizes[i];
+        }
+        if (!Arrays.equals(sizes, parameterSizes)) {
+            allocate(sizes);
+            parameterSizes = sizes;
+            floatParameters = null;
+        }
+    }
+
+    /**
+     * Test whether the optimizer holds state from one update step to the next.  The state is
+     * not saved in a {@link Checkpoint}, so training can not be resumed from a checkpoint with
+     * an optimizer that holds state.  The default implementation returns {@code true}; an
+     * optimizer without state should override it.
+     *
+     * @return  {@code true} if the optimizer holds state
+     */
+    public boolean hasState() {
+        return true;
+    }
+
+    /**
+     * Discard any state held by the optimizer, re-initialising it as for a new optimizer.
+     */
+    public void reset() {
+        if (parameterSizes != null)
+            allocate(parameterSizes);
+    }
+
+    /**
+     * Allocate (and initialise) the state arrays.
+     *
+     * @param   parameterSizes  the sizes of the parameter arrays
+     */
+    protected abstract void allocate(int[] parameterSizes);
+
+    /**
+     * Start an update step (called once for each mini-batch, before the calls to
+     * {@link #update(int, double[], double[], int, double)} for the individual arrays).
+     */
+    protected void beginStep() {
+    }
+
+    /**
+     * Update an array of parameters in place.
+     *
+     * @param   index       the index of the array in the list of parameter arrays (the same
+     *                      index identifies the corresponding state arrays)
+     * @param   parameters  the parameters
+     * @param   gradients   the gradients, summed over the mini-batch
+     * @param   batchSize   the number of items in the mini-batch
+     * @param   eta         the learning rate
+     */
+    protected abstract void update(int index, double[] parameters, double[] gradients,
+            int batchSize, double eta);
+
+    /**
+     * Update an array of single-precision parameters in place (for a {@link FloatNetwork}).
+     * The parameters are copied to a {@code double} array (allocated when first required, and
+     * then re-used), updated using {@link #update(int, double[], double[], int, double)}, and
+     * rounded back to {@code float}, so that any optimizer may be used with either form of
+     * network, and the update itself is calculated in {@code double}.
+     *
+     * @param   index       the index of the array in the list of parameter arrays
+     * @param   parameters  the parameters
+     * @param   gradients   the gradients, summed over the mini-batch
+     * @param   batchSize   the number of items in the mini-batch
+     * @param   eta         the learning rate
+     */
+    void update(int index, float[] parameters, double[] gradients, int batchSize, double eta) {
+        if (floatParameters == null)
+            floatParameters = allocateArrays(parameterSizes);
+        double[] p = floatParameters[index];
+        for (int k = 0, n = parameters.length; k < n; k++)
+            p[k] = parameters[k];
+        update(index, p, gradients, batchSize, eta);
+        for (int k = 0, n = parameters.length; k < n; k++)
+            parameters[k] = (float)p[k];
+    }
+
+    private static double[][] allocateArrays(int[] sizes) {
+        double[][] result = new double[sizes.length][];
+        for (int i = 0; i < sizes.length; i++)
+            result[i] = new double[sizes[i]];
+        return result;
+    }
+
+    private static double checkFraction(double value, String name) {
+        if (!(value >= 0.0 && value < 1.0))
+            throw new IllegalArgumentException(name + " must be in range 0 <= x < 1: " + value);
+        return value;
+    }
+
+    private static double checkEpsilon(double value) {
+        if (!(value > 0.0))
+            throw new IllegalArgumentException("epsilon must be > 0: " + value);
+        return value;
+    }
+
+    /**
+     * Plain Stochastic Gradient Descent: <i>w</i> &larr; <i>w</i> &minus; &eta;<i>g</i> (the
+     * default).
+     */
+    public static class SGD extends Optimizer {
+
+        @Override
+        protected void allocate(int[] parameterSizes) {
+            // no state
+        }
+
+        @Override
+        public boolean hasState() {
+            return false;
+        }
+
+        @Override
+        protected void update(int index, double[] parameters, double[] gradients, int batchSize,
+                double eta) {
+            double etaDivBatchSize = eta / batchSize;
+            for (int k = 0, n = parameters.length; k < n; k++)
+                parameters[k] -= etaDivBatchSize * gradients[k];
+        }
+
+        @Override
+        public String toString() {
+            return "SGD";
+        }
+
+    }
+
+    /**
+     * Momentum-based gradient descent: <i>v</i> &larr; &mu;<i>v</i> &minus; &eta;<i>g</i>,
+     * <i>w</i> &larr; <i>w</i> + <i>v</i> (see
+     * <a href="http://neuralnetworksanddeeplearning.com/chap3.html">Neural Networks and Deep
+     * Learning, Chapter 3</a>).
+     */
+    public static class Momentum extends Optimizer {
+
+        private final double mu;
+        private double[][] velocities;
+
+        /**
+         * Construct a {@code Momentum} optimizer.
+         *
+         * @param   mu      the momentum coefficient (typically 0.9)
+         * @throws  IllegalArgumentException if the coefficient is not in the range 0 to 1
+         */
+        public Momentum(double mu) {
+            this.mu = checkFraction(mu, "mu");
+        }
+
+        @Override
+        protected void allocate(int[] parameterSizes) {
+            velocities = allocateArrays(parameterSizes);
+        }
+
+        @Override
+        protected void update(int index, double[] parameters, double[] gradients, int batchSize,
+                double eta) {
+            double etaDivBatchSize = eta / batchSize;
+            double[] v = velocities[index];
+            for (int k = 0, n = parameters.length; k < n; k++) {
+                double vk = mu * v[k] - etaDivBatchSize * gradients[k];
+                v[k] = vk;
+                parameters[k] += vk;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Momentum(" + mu + ')';
+        }
+
+    }
+
+    /**
+     * Nesterov accelerated gradient, in the form in which the parameters are held at the
+     * look-ahead position: <i>v'</i> &larr; &mu;<i>v</i> &minus; &eta;<i>g</i>,
+     * <i>w</i> &larr; <i>w</i> &minus; &mu;<i>v</i> + (1 + &mu;)<i>v'</i>.
+     */
+    public static class Nesterov extends Optimizer {
+
+        private final double mu;
+        private double[][] velocities;
+
+        /**
+         * Construct a {@code Nesterov} optimizer.
+         *
+         * @param   mu      the momentum coefficient (typically 0.9)
+         * @throws  IllegalArgumentException if the coefficient is not in the range 0 to 1
+         */
+        public Nesterov(double mu) {
+            this.mu = checkFraction(mu, "mu");
+        }
+
+        @Override
+        protected void allocate(int[] parameterSizes) {
+            velocities = allocateArrays(parameterSizes);
+        }
+
+        @Override
+        protected void update(int index, double[] parameters, double[] gradients, int batchSize,
+                double eta) {
+            double etaDivBatchSize = eta / batchSize;
+            double onePlusMu = 1.0 + mu;
+            double[] v = velocities[index];
+            for (int k = 0, n = parameters.length; k < n; k++) {
+                double previous = v[k];
+                double vk = mu * previous - etaDivBatchSize * gradients[k];
+                v[k] = vk;
+                parameters[k] += onePlusMu * vk - mu * previous;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Nesterov(" + mu + ')';
+        }
+
+    }
+
+    /**
+     * RMSProp: <i>s</i> &larr; &rho;<i>s</i> + (1 &minus; &rho;)<i>g</i><sup>2</sup>,
+     * <i>w</i> &larr; <i>w</i> &minus; &eta;<i>g</i> / (&radic;<i>s</i> + &epsilon;).  The
+     * learning rate for this method is normally much smaller than for plain gradient descent
+     * (typically 0.001).
+     */
+    public static class RMSProp extends Optimizer {
+
+        private final double rho;
+        private final double epsilon;
+        private double[][] meanSquares;
+
+        /**
+         * Construct an {@code RMSProp} optimizer with the usual decay rate (0.9) and epsilon
+         * (10<sup>-8</sup>).
+         */
+        public RMSProp() {
+            this(0.9, 1.0e-8);
+        }
+
+        /**
+         * Construct an {@code RMSProp} optimizer.
+         *
+         * @param   rho     the decay rate of the mean square
+         * @param   epsilon the value added to the denominator to avoid division by zero
+         * @throws  IllegalArgumentException if either value is out of range
+         */
+        public RMSProp(double rho, double epsilon) {
+            this.rho = checkFraction(rho, "rho");
+            this.epsilon = checkEpsilon(epsilon);
+        }
+
+        @Override
+        protected void allocate(int[] parameterSizes) {
+            meanSquares = allocateArrays(parameterSizes);
+        }
+
+        @Override
+        protected void update(int index, double[] parameters, double[] gradients, int batchSize,
+                double eta) {
+            double oneMinusRho = 1.0 - rho;
+            double[] s = meanSquares[index];
+            for (int k = 0, n = parameters.length; k < n; k++) {
+                double g = gradients[k] / batchSize;
+                double sk = rho * s[k] + oneMinusRho * g * g;
+                s[k] = sk;
+                parameters[k] -= eta * g / (Math.sqrt(sk) + epsilon);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "RMSProp(" + rho + ',' + epsilon + ')';
+        }
+
+    }
+
+    /**
+     * Adam (Kingma and Ba, 2014): exponential moving averages of the gradient and its square,
+     * with bias correction for the early steps.  The learning rate for this method is normally
+     * much smaller than for plain gradient descent (typically 0.001).
+     */
+    public static class Adam extends Optimizer {
+
+        private final double beta1;
+        private final double beta2;
+        private final double epsilon;
+        private double[][] means;
+        private double[][] variances;
+        private double beta1Power;
+        private double beta2Power;
+        private double correction1;
+        private double correction2;
+
+        /**
+         * Construct an {@code Adam} optimizer with the usual parameters (&beta;<sub>1</sub> =
+         * 0.9, &beta;<sub>2</sub> = 0.999, &epsilon; = 10<sup>-8</sup>).
+         */
+        public Adam() {
+            this(0.9, 0.999, 1.0e-8);
+        }
+
+        /**
+         * Construct an {@code Adam} optimizer.
+         *
+         * @param   beta1   the decay rate of the mean of the gradient
+         * @param   beta2   the decay rate of the mean of the squared gradient
+         * @param   epsilon the value added to the denominator to avoid division by zero
+         * @throws  IllegalArgumentException if any value is out of range
+         */
+        public Adam(double beta1, double beta2, double epsilon) {
+            this.beta1 = checkFraction(beta1, "beta1");
+            this.beta2 = checkFraction(beta2, "beta2");
+            this.epsilon = checkEpsilon(epsilon);
+        }
+
+        @Override
+        protected void allocate(int[] parameterSizes) {
+            means = allocateArrays(parameterSizes);
+            variances = allocateArrays(parameterSizes);
+            beta1Power = 1.0;
+            beta2Power = 1.0;
+        }
+
+        @Override
+        protected void beginStep() {
+            beta1Power *= beta1;
+            beta2Power *= beta2;
+            correction1 = 1.0 / (1.0 - beta1Power);
+            correction2 = 1.0 / (1.0 - beta2Power);
+        }
+
+        @Override
+        protected void update(int index, double[] parameters, double[] gradients, int batchSize,
+                double eta) {
+            double oneMinusBeta1 = 1.0 - beta1;
+            double oneMinusBeta2 = 1.0 - beta2;
+            double stepSize = eta * correction1;
+            double[] m = means[index];
+            double[] v = variances[index];
+            for (int k = 0, n = parameters.length; k < n; k++) {
+                double g = gradients[k] / batchSize;
+                double mk = beta1 * m[k] + oneMinusBeta1 * g;
+                double vk = beta2 * v[k] + oneMinusBeta2 * g * g;
+                m[k] = mk;
+                v[k] = vk;
+                parameters[k] -= stepSize * mk / (Math.sqrt(vk * correction2) + epsilon);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Adam(" + beta1 + ',' + beta2 + ',' + epsilon + ')';
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * @(#) PackedTrainingDataSet.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link TrainingDataSource} for classification data holding all of its data in memory in
+ * packed form: the inputs in a single array with one row per item, and the expected outputs as
+ * an array of labels (the index of the single output set to 1.0).  The methods
+ * {@link #copyInputs(int, double[], int)} and {@link #copyOutputs(int, double[], int)} copy
+ * directly from the packed arrays, so that training and evaluation do not create any objects
+ * for the individual items.
+ *
+ * @author  Peter Wall
+ */
+public class PackedTrainingDataSet implements TrainingDataSource {
+
+    private int size;
+    private int inputSize;
+    private int outputSize;
+    private double[] inputs;
+    private int[] labels;
+
+    /**
+     * Construct a {@code PackedTrainingDataSet} from existing arrays of inputs and labels.  The
+     * arrays are used directly (not copied), so a data set may be loaded into a single array
+     * for the inputs and a single array for the labels with no further allocation.
+     *
+     * @param   inputs      the inputs, with one row of {@code inputSize} values per item
+     * @param   inputSize   the number of inputs for each item
+     * @param   labels      the labels, one per item
+     * @param   outputSize  the number of outputs for each item (the number of classes)
+     * @throws  IllegalArgumentException if the array sizes are inconsistent, or any label is
+     *                  out of range
+     */
+    public PackedTrainingDataSet(double[] inputs, int inputSize, int[] labels, int outputSize) {
+        this.inputs = Objects.requireNonNull(inputs);
+        this.labels = Objects.requireNonNull(labels);
+        if (inputSize <= 0 || outputSize <= 0)
+            throw new IllegalArgumentException("Input and output sizes must be > 0");
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        size = labels.length;
+        if ((long)size * inputSize != inputs.length)
+            throw new IllegalArgumentException("Inputs array wrong size (" + inputs.length +
+                    " != " + (long)size * inputSize + ')');
+        for (int i = 0; i < size; i++)
+            checkLabel(labels[i]);
+    }
+
+    /**
+     * Construct a {@code PackedTrainingDataSet} by copying the data from a
+     * {@link TrainingDataSource}.  The label for each item is taken from
+     * {@link TrainingData#getHighestOutputIndex()}, so the expected outputs are assumed to
+     * consist of a single value of 1.0 with all others 0.0.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @throws  IllegalArgumentException if the source is empty, or the items are not all of
+     *                  the same dimensions
+     */
+    public PackedTrainingDataSet(TrainingDataSource source) {
+        size = Objects.requireNonNull(source).getSize();
+        if (size <= 0)
+            throw new IllegalArgumentException("Training data must not be empty");
+        TrainingData first = source.getItem(0);
+        inputSize = first.getInputs().length;
+        outputSize = first.getOutputs().length;
+        if ((long)size * inputSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Training data too large to pack: " + size);
+        inputs = new double[size * inputSize];
+        labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            MiniBatch.checkRowSize(source.copyInputs(i, inputs, i * inputSize), inputSize);
+            labels[i] = checkLabel(source.getLabel(i));
+        }
+    }
+
+    private int checkLabel(int label) {
+        if (label < 0 || label >= outputSize)
+            throw new IllegalArgumentException("Label out of range: " + label);
+        return label;
+    }
+
+    /**
+     * Get a {@link TrainingData} item.  The item is a view of the packed data; the arrays
+     * returned by the item are copies.
+     *
+     * @param   index   the index of the item
+     * @return  the {@link TrainingData} item
+     */
+    @Override
+    public TrainingData getItem(int index) {
+        checkIndex(index);
+        return new TrainingData() {
+            @Override
+            public double[] getInputs() {
+                return Arrays.copyOfRange(inputs, index * inputSize, (index + 1) * inputSize);
+            }
+            @Override
+            public double[] getOutputs() {
+                double[] result = new double[outputSize];
+                result[labels[index]] = 1.0;
+                return result;
+            }
+            @Override
+            public int getHighestOutputIndex() {
+                return labels[index];
+            }
+        };
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int copyInputs(int index, double[] target, int offset) {
+        checkIndex(index);
+        System.arraycopy(inputs, index * inputSize, target, offset, inputSize);
+        return inputSize;
+    }
+
+    @Override
+    public int copyOutputs(int index, double[] target, int offset) {
+        checkIndex(index);
+        Arrays.fill(target, offset, offset + outputSize, 0.0);
+        target[offset + labels[index]] = 1.0;
+        return outputSize;
+    }
+
+    @Override
+    public int getLabel(int index) {
+        checkIndex(index);
+        return labels[index];
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return true;
+    }
+
+    /**
+     * Get the number of inputs for each item.
+     *
+     * @return  the number of inputs
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the number of outputs for each item (the number of classes).
+     *
+     * @return  the number of outputs
+     */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IllegalArgumentException("index is not in range: " + index);
+    }
+
+}
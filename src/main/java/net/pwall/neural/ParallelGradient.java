@@ -0,0 +1,309 @@
+/*
+ * @(#) ParallelGradient.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Data-parallel gradient calculation for a mini-batch.  The mini-batch is divided into a number
+ * of partitions, each with its own {@link GradientWorkspace} (a {@link TrainingWorkspace} or a
+ * {@link BatchWorkspace}, and so its own gradient accumulators); the partitions are processed
+ * as separate tasks in a {@link ForkJoinPool}, and the accumulators are then combined by a
+ * pairwise tree reduction, leaving the total in the accumulators of the first partition.
+ *
+ * <p>The partitions and the order of the reduction depend only on the number of partitions and
+ * the mini-batch size, not on the threads that happen to process them, so for a given number of
+ * partitions the results are reproducible.  To make the results independent of the degree of
+ * parallelism, the {@link Network.Trainer} uses a fixed number of partitions when deterministic
+ * reduction is selected.</p>
+ *
+ * <p>Batched back-propagation is performed by a {@link BatchBackProp} function, so that the
+ * same calculation may be used for a {@link FloatNetwork}.</p>
+ *
+ * <p>The partition and reduction tasks are created once, when the {@code ParallelGradient} is
+ * constructed, and are reset with {@link ForkJoinTask#reinitialize()} for each mini-batch, so
+ * that the calculation does not allocate any storage.</p>
+ *
+ * <p>If timing is selected, the times taken by the forward and backward passes in all the
+ * partitions are added to the totals in the workspace returned.</p>
+ *
+ * @author  Peter Wall
+ */
+class ParallelGradient {
+
+    /** The number of partitions used for deterministic reduction. */
+    static final int deterministicPartitions = 32;
+
+    private Network network;
+    private BatchBackProp batchBackProp;
+    private ForkJoinPool pool;
+    private int partitions;
+    private GradientWorkspace[] workspaces;
+    private MiniBatch miniBatch;
+    private PartitionTask[] partitionTasks;
+    private ReductionTask[][] reductionTasks;
+    private RootTask rootTask;
+
+    /**
+     * Construct a {@code ParallelGradient}.
+     *
+     * @param   network         the {@link Network}
+     * @param   pool            the {@link ForkJoinPool} ({@code null} to process the partitions
+     *                          sequentially in the calling thread)
+     * @param   partitions      the number of partitions
+     * @param   miniBatchSize   the maximum mini-batch size
+     * @param   batched         {@code true} to use batched back-propagation within each
+     *                          partition
+     * @param   layerSizes      the layer sizes of the network
+     */
+    ParallelGradient(Network network, ForkJoinPool pool, int partitions, int miniBatchSize,
+            boolean batched, int[] layerSizes) {
+        this(network, batched ? network::backPropBatch : null, pool, partitions, miniBatchSize,
+                layerSizes);
+    }
+
+    /**
+     * Construct a {@code ParallelGradient} for batched back-propagation using the supplied
+     * function, for mini-batches that have already been packed (see {@link #compute(MiniBatch)}).
+     *
+     * @param   batchBackProp   the batched back-propagation function
+     * @param   pool            the {@link ForkJoinPool} ({@code null} to process the partitions
+     *                          sequentially in the calling thread)
+     * @param   partitions      the number of partitions
+     * @param   miniBatchSize   the maximum mini-batch size
+     * @param   layerSizes      the layer sizes of the network
+     */
+    ParallelGradient(BatchBackProp batchBackProp, ForkJoinPool pool, int partitions,
+            int miniBatchSize, int[] layerSizes) {
+        this(null, batchBackProp, pool, partitions, miniBatchSize, layerSizes);
+    }
+
+    private ParallelGradient(Network network, BatchBackProp batchBackProp, ForkJoinPool pool,
+            int partitions, int miniBatchSize, int[] layerSizes) {
+        boolean batched = batchBackProp != null;
+        this.network = network;
+        this.batchBackProp = batchBackProp;
+        this.pool = pool;
+        partitions = Math.max(1, Math.min(partitions, miniBatchSize));
+        this.partitions = partitions;
+        workspaces = new GradientWorkspace[partitions];
+        int partitionCapacity = (miniBatchSize + partitions - 1) / partitions;
+        for (int i = 0; i < partitions; i++)
+            workspaces[i] = batched ? new BatchWorkspace(partitionCapacity, layerSizes) :
+                    new TrainingWorkspace(layerSizes);
+        miniBatch = batched ? new MiniBatch(miniBatchSize, layerSizes[0],
+                layerSizes[layerSizes.length - 1]) : null;
+        partitionTasks = new PartitionTask[partitions];
+        for (int i = 0; i < partitions; i++)
+            partitionTasks[i] = new PartitionTask(workspaces[i]);
+        int levels = 0;
+        for (int stride = 1; stride < partitions; stride <<= 1)
+            levels++;
+        reductionTasks = new ReductionTask[levels][];
+        for (int level = 0, stride = 1; level < levels; level++, stride <<= 1) {
+            int numPairs = (partitions - stride + (stride << 1) - 1) / (stride << 1);
+            ReductionTask[] reductions = new ReductionTask[numPairs];
+            for (int i = 0, j = 0; i + stride < partitions; i += stride << 1)
+                reductions[j++] = new ReductionTask(workspaces[i], workspaces[i + stride]);
+            reductionTasks[level] = reductions;
+        }
+        rootTask = new RootTask();
+    }
+
+    /**
+     * Select timing of the forward and backward passes (see {@link GradientWorkspace}).
+     *
+     * @param   timed   {@code true} to select timing
+     */
+    void setTimed(boolean timed) {
+        for (GradientWorkspace ws : workspaces)
+            ws.timed = timed;
+    }
+
+    /**
+     * Calculate the gradients for a mini-batch taken from a range of items in a
+     * {@link TrainingDataSource}.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   start   the index of the first item of the mini-batch
+     * @param   count   the number of items in the mini-batch
+     * @return  the {@link GradientWorkspace} holding the total gradients
+     */
+    GradientWorkspace compute(TrainingDataSource source, int start, int count) {
+        if (miniBatch != null) {
+            miniBatch.size = count;
+            miniBatch.labelled = source.isLabelled();
+        }
+        return computePartitions(source, start, count, miniBatch);
+    }
+
+    /**
+     * Calculate the gradients for a mini-batch that has already been packed (for example, by a
+     * {@link MiniBatchPrefetcher}).  This may be used only if the {@code ParallelGradient} was
+     * created for batched back-propagation.
+     *
+     * @param   batch   the packed mini-batch
+     * @return  the {@link GradientWorkspace} holding the total gradients
+     * @throws  IllegalStateException if the {@code ParallelGradient} is not batched
+     */
+    GradientWorkspace compute(MiniBatch batch) {
+        if (miniBatch == null)
+            throw new IllegalStateException("Packed mini-batch requires batched calculation");
+        return computePartitions(null, 0, batch.size, batch);
+    }
+
+    private GradientWorkspace computePartitions(TrainingDataSource source, int start, int count,
+            MiniBatch batch) {
+        for (int i = 0; i < partitions; i++) {
+            int lo = (int)((long)count * i / partitions);
+            int hi = (int)((long)count * (i + 1) / partitions);
+            partitionTasks[i].reset(source, start, lo, hi - lo, batch);
+        }
+        for (ReductionTask[] reductions : reductionTasks)
+            for (ReductionTask task : reductions)
+                task.reinitialize();
+        if (pool == null) {
+            // invoke() outside a pool runs the task in the calling thread
+            for (PartitionTask task : partitionTasks)
+                task.invoke();
+            for (ReductionTask[] reductions : reductionTasks)
+                for (ReductionTask task : reductions)
+                    task.invoke();
+        }
+        else {
+            rootTask.reinitialize();
+            pool.invoke(rootTask);
+        }
+        GradientWorkspace result = workspaces[0];
+        if (result.timed) {
+            for (int i = 1; i < partitions; i++) {
+                result.forwardNanos += workspaces[i].takeForwardNanos();
+                result.backwardNanos += workspaces[i].takeBackwardNanos();
+            }
+        }
+        return result;
+    }
+
+    private class RootTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            invokeAll(partitionTasks);
+            for (ReductionTask[] reductions : reductionTasks)
+                invokeAll(reductions);
+        }
+
+    }
+
+    private class PartitionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GradientWorkspace ws;
+        private TrainingDataSource source;
+        private int start;
+        private int row;
+        private int count;
+        private MiniBatch batch;
+
+        PartitionTask(GradientWorkspace ws) {
+            this.ws = ws;
+        }
+
+        void reset(TrainingDataSource source, int start, int row, int count, MiniBatch batch) {
+            reinitialize();
+            this.source = source;
+            this.start = start;
+            this.row = row;
+            this.count = count;
+            this.batch = batch;
+        }
+
+        @Override
+        protected void compute() {
+            ws.clear();
+            if (batch != null) {
+                if (count > 0) {
+                    // a null source indicates that the mini-batch has already been filled
+                    if (source != null)
+                        batch.fillRows(source, start + row, count, row);
+                    batchBackProp.backPropBatch(batch, row, count, (BatchWorkspace)ws);
+                }
+            }
+            else {
+                for (int m = 0; m < count; m++)
+                    network.backProp(source, start + row + m, (TrainingWorkspace)ws);
+            }
+        }
+
+    }
+
+    /**
+     * A batched back-propagation function (see
+     * {@link Network#backPropBatch(MiniBatch, int, int, BatchWorkspace)}).
+     */
+    interface BatchBackProp {
+
+        /**
+         * Calculate the gradient for a range of items in a packed mini-batch, and add it to the
+         * gradient accumulators in the supplied {@link BatchWorkspace}.
+         *
+         * @param   miniBatch       the packed mini-batch
+         * @param   start           the index of the first item to process
+         * @param   count           the number of items to process
+         * @param   ws              the {@link BatchWorkspace}
+         */
+        void backPropBatch(MiniBatch miniBatch, int start, int count, BatchWorkspace ws);
+
+    }
+
+    private static class ReductionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GradientWorkspace target;
+        private final GradientWorkspace addend;
+
+        ReductionTask(GradientWorkspace target, GradientWorkspace addend) {
+            this.target = target;
+            this.addend = addend;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0, n = target.nablaB.length; i < n; i++) {
+                Network.addInPlace(target.nablaB[i], addend.nablaB[i]);
+                Network.addInPlace(target.nablaW[i], addend.nablaW[i]);
+            }
+        }
+
+    }
+
+}
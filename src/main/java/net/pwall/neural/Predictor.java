@@ -0,0 +1,205 @@
+/*
+ * @(#) Predictor.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Interface for objects that can process an array of inputs to produce an array of outputs
+ * (a trained network, or a derivative of one).  Implementations must not modify any shared
+ * state while processing inputs; all working storage is held in an {@link InferenceContext}
+ * supplied by the caller, so that a single {@code Predictor} may be used by multiple threads at
+ * the same time as long as each thread has its own context.
+ *
+ * @author  Peter Wall
+ */
+public interface Predictor {
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    int[] getLayerSizes();
+
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.  The result is an array within the context,
+     * and it will be overwritten by the next use of the context.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    double[] predict(double[] inputs, InferenceContext context);
+
+    /**
+     * Process an array of inputs to produce an array of outputs, storing the outputs in the
+     * supplied array and using the supplied {@link InferenceContext} for working storage.
+     *
+     * @param   inputs  the array of inputs
+     * @param   outputs the array to hold the outputs
+     * @param   context the {@link InferenceContext}
+     * @throws  IllegalArgumentException if either array is of the wrong size, or the context
+     *                  does not match the layer sizes
+     */
+    default void predict(double[] inputs, double[] outputs, InferenceContext context) {
+        double[] result = predict(inputs, context);
+        if (outputs.length != result.length)
+            throw new IllegalArgumentException("Outputs array wrong size");
+        System.arraycopy(result, 0, outputs, 0, result.length);
+    }
+
+    /**
+     * Process an array of inputs to get a single integer output - the index of the highest
+     * value in the output array.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the index of the highest output
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    default int predictClass(double[] inputs, InferenceContext context) {
+        return Network.indexOfHighest(predict(inputs, context));
+    }
+
+    /**
+     * Process a batch of inputs packed into an array, with one row of inputs for each item,
+     * using the supplied {@link BatchInferenceContext} for working storage.  The outputs are
+     * returned as a matrix with one row for each item, and the index of the highest output for
+     * each item is also stored in the context (see {@link BatchInferenceContext#getClasses()}).
+     * The number of items must not exceed the capacity of the context.
+     *
+     * <p>The default implementation processes the items one at a time using
+     * {@link #predict(double[], InferenceContext)}; implementations that can do so process the
+     * whole batch using matrix-matrix products.</p>
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is too small, the number of items
+     *                  exceeds the capacity of the context, or the context does not match the
+     *                  layer sizes
+     */
+    default double[] predictBatch(double[] inputs, int offset, int count,
+            BatchInferenceContext context) {
+        context.checkCount(count).checkInputs(inputs, offset, count);
+        int inputSize = context.inputSize;
+        int outputSize = context.outputSize;
+        double[] result = context.getOutputs();
+        InferenceContext rowContext = context.rowContext;
+        double[] row = rowContext.inputs;
+        for (int m = 0; m < count; m++) {
+            System.arraycopy(inputs, offset + m * inputSize, row, 0, inputSize);
+            System.arraycopy(predict(row, rowContext), 0, result, m * outputSize, outputSize);
+        }
+        return context.complete(count);
+    }
+
+    /**
+     * Process a batch of inputs supplied as an array of rows (see
+     * {@link #predictBatch(double[], int, int, BatchInferenceContext)}).  The rows are first
+     * copied into the inputs array of the context.
+     *
+     * @param   inputs  the array of rows of inputs
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if any of the rows is of the wrong size, the number of
+     *                  rows exceeds the capacity of the context, or the context does not match
+     *                  the layer sizes
+     */
+    default double[] predictBatch(double[][] inputs, BatchInferenceContext context) {
+        int count = inputs.length;
+        context.checkCount(count);
+        int inputSize = context.inputSize;
+        double[] packed = context.inputs;
+        for (int m = 0; m < count; m++) {
+            if (inputs[m].length != inputSize)
+                throw new IllegalArgumentException("Inputs array wrong size");
+            System.arraycopy(inputs[m], 0, packed, m * inputSize, inputSize);
+        }
+        return predictBatch(packed, 0, count, context);
+    }
+
+    /**
+     * Create a {@link BatchInferenceContext} suitable for use with this {@code Predictor}.
+     *
+     * @param   capacity    the maximum number of items in a batch
+     * @return  the new {@link BatchInferenceContext}
+     */
+    default BatchInferenceContext newBatchInferenceContext(int capacity) {
+        return new BatchInferenceContext(capacity, getLayerSizes());
+    }
+
+    /**
+     * Evaluate the {@code Predictor} against a set of test data, returning the number of items
+     * for which the index of the highest output matches the expected index, broken down by
+     * class, along with the elapsed time.  In parallel mode the range of indices of the test
+     * data is divided and evaluated in the common {@link java.util.concurrent.ForkJoinPool},
+     * with a separate {@link InferenceContext} for each part.
+     *
+     * @param   testData    the set of test data
+     * @param   parallel    {@code true} to evaluate in parallel
+     * @return  the {@link EvaluationResult}
+     * @throws  IllegalArgumentException if the inputs of the test data are not the size expected
+     *                      by the predictor, or a label is out of range
+     */
+    default EvaluationResult evaluate(TrainingDataSource testData, boolean parallel) {
+        return EvaluationResult.evaluate(this, testData, parallel, null);
+    }
+
+    /**
+     * Create an {@link InferenceContext} suitable for use with this {@code Predictor}.
+     *
+     * @return  the new {@link InferenceContext}
+     */
+    default InferenceContext newInferenceContext() {
+        return new InferenceContext(getLayerSizes());
+    }
+
+    /**
+     * Get the number of inputs.
+     *
+     * @return  the number of inputs
+     */
+    default int getInputSize() {
+        return getLayerSizes()[0];
+    }
+
+    /**
+     * Get the number of outputs.
+     *
+     * @return  the number of outputs
+     */
+    default int getOutputSize() {
+        int[] layerSizes = getLayerSizes();
+        return layerSizes[layerSizes.length - 1];
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * @(#) QuantizationReport.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * The result of comparing a {@link QuantizedNetwork} with the network from which it was created
+ * (see {@link QuantizedNetwork#compare(Predictor, TrainingDataSource)}): the evaluation results
+ * of both, the number of items for which the two gave the same class, and the largest
+ * difference in any output.
+ *
+ * @author  Peter Wall
+ */
+public class QuantizationReport {
+
+    private final EvaluationResult referenceResult;
+    private final EvaluationResult quantizedResult;
+    private final int agreed;
+    private final double maxOutputError;
+
+    QuantizationReport(EvaluationResult referenceResult, EvaluationResult quantizedResult,
+            int agreed, double maxOutputError) {
+        this.referenceResult = referenceResult;
+        this.quantizedResult = quantizedResult;
+        this.agreed = agreed;
+        this.maxOutputError = maxOutputError;
+    }
+
+    /**
+     * Get the evaluation result of the reference network.
+     *
+     * @return  the {@link EvaluationResult}
+     */
+    public EvaluationResult getReferenceResult() {
+        return referenceResult;
+    }
+
+    /**
+     * Get the evaluation result of the quantized network.
+     *
+     * @return  the {@link EvaluationResult}
+     */
+    public EvaluationResult getQuantizedResult() {
+        return quantizedResult;
+    }
+
+    /**
+     * Get the change in accuracy caused by quantization (negative if the quantized network is
+     * less accurate).
+     *
+     * @return  the quantized accuracy minus the reference accuracy
+     */
+    public double getAccuracyDifference() {
+        return quantizedResult.getAccuracy() - referenceResult.getAccuracy();
+    }
+
+    /**
+     * Get the number of items for which the two networks gave the same class (whether or not it
+     * was the correct one).
+     *
+     * @return  the number of items
+     */
+    public int getAgreed() {
+        return agreed;
+    }
+
+    /**
+     * Get the largest absolute difference between an output of the quantized network and the
+     * corresponding output of the reference network.
+     *
+     * @return  the largest difference
+     */
+    public double getMaxOutputError() {
+        return maxOutputError;
+    }
+
+    /**
+     * Create a display representation of the report.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        return String.format("Reference %d of %d (%dms), quantized %d of %d (%dms), " +
+                "accuracy difference %+.4f%%, agreed %d, max output error %.6f",
+                referenceResult.getCorrect(), referenceResult.getTotal(),
+                referenceResult.getElapsedNanos() / 1000000, quantizedResult.getCorrect(),
+                quantizedResult.getTotal(), quantizedResult.getElapsedNanos() / 1000000,
+                getAccuracyDifference() * 100.0, agreed, maxOutputError);
+    }
+
+}
@@ -0,0 +1,489 @@
+/*
+ * @(#) QuantizedNetwork.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.function.IntFunction;
+
+/**
+ * A compact {@link Predictor} using 8-bit integer weights, created from a trained network by
+ * post-training quantization.  The weights of each neuron are scaled so that the weight of
+ * largest magnitude maps to &plusmn;127, with a separate scale for each neuron; the inputs to
+ * each layer are quantized in the same way (with a single scale for the whole input vector)
+ * when the layer is processed.  The weighted sum for each neuron is then an integer dot product,
+ * converted to a real value by multiplying by the product of the two scales, and the bias and
+ * the activation function are applied in double precision as before.
+ *
+ * <p>The weights take one eighth of the memory of the original network, so that a model (or
+ * many models) can be held in much less heap or processor cache, and the weights are read with
+ * one eighth of the memory traffic.  For batched inference
+ * ({@link #predictBatch(double[], int, int, BatchInferenceContext)}), the inputs to each layer
+ * are quantized once for the whole batch, and each row of weights is read once for each block
+ * of eight rows of inputs; {@code InferenceBenchmark} in the benchmarks project compares the
+ * throughput with that of a {@link FrozenNetwork}.  The outputs are not identical to those of
+ * the original network, but for a classification network the effect on accuracy is usually
+ * very small; {@link #compare(Predictor, TrainingDataSource)} reports the difference for a set
+ * of test data.  The outputs of batched inference are identical to those of
+ * {@link #predict(double[], InferenceContext)}.</p>
+ *
+ * <p>Like {@link FrozenNetwork}, a {@code QuantizedNetwork} is immutable and may be shared by
+ * any number of threads, as long as each uses its own {@link InferenceContext}.</p>
+ *
+ * @author  Peter Wall
+ */
+public class QuantizedNetwork implements Predictor {
+
+    /** The largest magnitude of a quantized value. */
+    static final int maxQuantized = 127;
+
+    private final int[] layerSizes;
+    private final Activation[] activations;
+    private final byte[][] weights;
+    private final double[][] weightScales;
+    private final double[][] biases;
+    private final ThreadLocal<InferenceContext> threadContext;
+
+    /**
+     * Construct a {@code QuantizedNetwork} by quantizing the weights of a network.
+     *
+     * @param   layerSizes  the layer sizes (including the input layer)
+     * @param   activations a function to get the activation function of a layer (by layer
+     *                      number, 1 for the first layer after the input layer)
+     * @param   biases      a function to get the biases of a layer (by layer number, 1 for the
+     *                      first layer after the input layer)
+     * @param   weights     a function to get the weights of a layer, in the row-major form
+     *                      described in {@link HiddenLayer#getWeightsArray()}
+     */
+    QuantizedNetwork(int[] layerSizes, IntFunction<Activation> activations,
+            IntFunction<double[]> biases, IntFunction<double[]> weights) {
+        int numHiddens = layerSizes.length - 1;
+        this.layerSizes = layerSizes.clone();
+        this.activations = new Activation[numHiddens];
+        this.weights = new byte[numHiddens][];
+        weightScales = new double[numHiddens][];
+        this.biases = new double[numHiddens][];
+        for (int i = 0; i < numHiddens; i++) {
+            int size = layerSizes[i + 1];
+            int inputSize = layerSizes[i];
+            double[] original = weights.apply(i + 1);
+            byte[] quantized = new byte[original.length];
+            double[] scales = new double[size];
+            for (int j = 0; j < size; j++)
+                scales[j] = quantize(original, j * inputSize, inputSize, quantized);
+            this.weights[i] = quantized;
+            weightScales[i] = scales;
+            this.biases[i] = biases.apply(i + 1).clone();
+            this.activations[i] = activations.apply(i + 1);
+        }
+        threadContext = ThreadLocal.withInitial(this::newInferenceContext);
+    }
+
+    /**
+     * Quantize a range of values symmetrically to the range -127 to +127, with the value of
+     * largest magnitude mapping to &plusmn;127.
+     *
+     * @param   values      the array of values
+     * @param   offset      the offset of the first value
+     * @param   length      the number of values
+     * @param   target      the array to hold the quantized values (at the same offset)
+     * @return  the scale (the real value represented by 1), or zero if all the values are zero
+     */
+    static double quantize(double[] values, int offset, int length, byte[] target) {
+        return quantize(values, offset, length, target, offset);
+    }
+
+    /**
+     * Quantize a range of values (see {@link #quantize(double[], int, int, byte[])}), storing
+     * the quantized values at a different offset.
+     *
+     * @param   values          the array of values
+     * @param   offset          the offset of the first value
+     * @param   length          the number of values
+     * @param   target          the array to hold the quantized values
+     * @param   targetOffset    the offset in the target array
+     * @return  the scale (the real value represented by 1), or zero if all the values are zero
+     */
+    static double quantize(double[] values, int offset, int length, byte[] target,
+            int targetOffset) {
+        double max = 0.0;
+        for (int i = offset, n = offset + length; i < n; i++)
+            max = Math.max(max, Math.abs(values[i]));
+        if (max == 0.0) {
+            for (int i = targetOffset, n = targetOffset + length; i < n; i++)
+                target[i] = 0;
+            return 0.0;
+        }
+        double factor = maxQuantized / max;
+        for (int i = offset, j = targetOffset, n = offset + length; i < n; i++, j++)
+            target[j] = (byte)Math.round(values[i] * factor);
+        return max / maxQuantized;
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, using the supplied
+     * {@link InferenceContext} for working storage.
+     *
+     * @param   inputs  the array of inputs
+     * @param   context the {@link InferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size, or the
+     *                  context does not match the layer sizes
+     */
+    @Override
+    public double[] predict(double[] inputs, InferenceContext context) {
+        if (inputs.length != layerSizes[0])
+            throw new IllegalArgumentException("Inputs array wrong size");
+        Object event = FlightRecorderEvents.beginInference();
+        double[][] outputs = context.check(layerSizes).outputs;
+        byte[] quantized = context.quantized;
+        double[] activation = inputs;
+        for (int i = 0, n = weights.length; i < n; i++) {
+            int inputSize = activation.length;
+            double inputScale = quantize(activation, 0, inputSize, quantized);
+            byte[] w = weights[i];
+            double[] scales = weightScales[i];
+            double[] b = biases[i];
+            double[] result = outputs[i];
+            int m = result.length;
+            int j = 0;
+            for (; j + 3 < m; j += 4)
+                dot4(w, j * inputSize, quantized, 0, inputSize, result, j);
+            for (; j < m; j++)
+                result[j] = dot(w, j * inputSize, quantized, 0, inputSize);
+            for (j = 0; j < m; j++)
+                result[j] = result[j] * (scales[j] * inputScale) + b[j];
+            activations[i].forward(result, result, 0, m);
+            activation = result;
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, 1);
+        return activation;
+    }
+
+    /**
+     * Calculate the integer dot product of a row of quantized weights and a quantized input
+     * vector.  The products are at most 127<sup>2</sup>, so the sum can not overflow for any
+     * layer that can be held in an array.
+     *
+     * @param   w           the quantized weights
+     * @param   offset      the offset of the row of weights
+     * @param   x           the quantized inputs
+     * @param   xOffset     the offset of the quantized inputs
+     * @param   length      the number of inputs
+     * @return  the dot product
+     */
+    private static int dot(byte[] w, int offset, byte[] x, int xOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += w[offset + i] * x[xOffset + i];
+        return sum;
+    }
+
+    /**
+     * Calculate the integer dot products of four consecutive rows of quantized weights and a
+     * quantized input vector, so that each input is loaded once for the four rows.
+     *
+     * @param   w           the quantized weights
+     * @param   offset      the offset of the first row of weights
+     * @param   x           the quantized inputs
+     * @param   xOffset     the offset of the quantized inputs
+     * @param   length      the number of inputs
+     * @param   result      the array to hold the four dot products
+     * @param   index       the index in the result array
+     */
+    private static void dot4(byte[] w, int offset, byte[] x, int xOffset, int length,
+            double[] result, int index) {
+        int offset1 = offset + length;
+        int offset2 = offset1 + length;
+        int offset3 = offset2 + length;
+        int sum0 = 0;
+        int sum1 = 0;
+        int sum2 = 0;
+        int sum3 = 0;
+        for (int i = 0; i < length; i++) {
+            int xi = x[xOffset + i];
+            sum0 += w[offset + i] * xi;
+            sum1 += w[offset1 + i] * xi;
+            sum2 += w[offset2 + i] * xi;
+            sum3 += w[offset3 + i] * xi;
+        }
+        result[index] = sum0;
+        result[index + 1] = sum1;
+        result[index + 2] = sum2;
+        result[index + 3] = sum3;
+    }
+
+    /**
+     * Process a batch of inputs packed into an array (see
+     * {@link Predictor#predictBatch(double[], int, int, BatchInferenceContext)}).  For each
+     * layer, the inputs for the whole batch are quantized once (with a separate scale for each
+     * row, so that the results are identical to those of
+     * {@link #predict(double[], InferenceContext)}), and the quantized inputs of each pair of
+     * rows are packed into a single {@code long} array, the first row in the low 32 bits and
+     * the second in the high 32 bits.  A single 64-bit multiplication by a weight then
+     * calculates the products for both rows, and the integer dot products are calculated for
+     * blocks of eight rows, so that each row of weights is read once for each block.
+     *
+     * @param   inputs  the array of packed inputs
+     * @param   offset  the offset of the first row of inputs in the array
+     * @param   count   the number of items
+     * @param   context the {@link BatchInferenceContext}
+     * @return  the outputs (an array belonging to the context)
+     * @throws  IllegalArgumentException if the inputs array is too small, the number of items
+     *                  exceeds the capacity of the context, or the context does not match the
+     *                  layer sizes
+     */
+    @Override
+    public double[] predictBatch(double[] inputs, int offset, int count,
+            BatchInferenceContext context) {
+        double[][] outputs = context.check(layerSizes, count).outputs;
+        context.checkInputs(inputs, offset, count);
+        Object event = FlightRecorderEvents.beginInference();
+        long[] packed = context.quantized;
+        double[] inputScales = context.quantizedScales;
+        byte[] quantized = context.rowContext.quantized;
+        int pairs = (count + 1) >> 1;
+        double[] activation = inputs;
+        int activationOffset = offset;
+        for (int i = 0, n = weights.length; i < n; i++) {
+            int inputSize = layerSizes[i];
+            int size = layerSizes[i + 1];
+            for (int m = 0; m < count; m++) {
+                inputScales[m] = quantize(activation, activationOffset + m * inputSize,
+                        inputSize, quantized, 0);
+                int p = (m >> 1) * inputSize;
+                if ((m & 1) == 0) {
+                    for (int k = 0; k < inputSize; k++)
+                        packed[p + k] = quantized[k];
+                }
+                else {
+                    for (int k = 0; k < inputSize; k++)
+                        packed[p + k] += (long)quantized[k] << 32;
+                }
+            }
+            byte[] w = weights[i];
+            double[] result = outputs[i];
+            int p = 0;
+            for (; p + 3 < pairs; p += 4)
+                for (int j = 0; j < size; j++)
+                    dotPacked4(w, j * inputSize, packed, p * inputSize, inputSize, result,
+                            p * 2 * size + j, size, count - p * 2);
+            for (; p < pairs; p++)
+                for (int j = 0; j < size; j++)
+                    unpack(dotPacked(w, j * inputSize, packed, p * inputSize, inputSize),
+                            result, p * 2 * size + j, size, count - p * 2);
+            double[] scales = weightScales[i];
+            double[] b = biases[i];
+            for (int m = 0; m < count; m++) {
+                double inputScale = inputScales[m];
+                for (int j = 0, k = m * size; j < size; j++, k++)
+                    result[k] = result[k] * (scales[j] * inputScale) + b[j];
+            }
+            Activation f = activations[i];
+            if (f.isElementwise())
+                f.forward(result, result, 0, count * size);
+            else {
+                for (int m = 0; m < count; m++)
+                    f.forward(result, result, m * size, size);
+            }
+            activation = result;
+            activationOffset = 0;
+        }
+        FlightRecorderEvents.endInference(event, this, layerSizes, count);
+        return context.complete(count);
+    }
+
+    /**
+     * Calculate the packed dot products of a row of quantized weights and a row of packed
+     * quantized inputs (two rows of inputs).  Each half of the result is the sum of at most
+     * {@code length} products of magnitude at most 127<sup>2</sup>, so as long as that sum fits
+     * in an {@code int} (as it must for {@link #dot(byte[], int, byte[], int, int)}), the
+     * 64-bit sum is exact and the two halves can be separated by
+     * {@link #unpack(long, double[], int, int, int)}.
+     *
+     * @param   w           the quantized weights
+     * @param   offset      the offset of the row of weights
+     * @param   x           the packed quantized inputs
+     * @param   xOffset     the offset of the row of packed inputs
+     * @param   length      the number of inputs
+     * @return  the packed dot products
+     */
+    private static long dotPacked(byte[] w, int offset, long[] x, int xOffset, int length) {
+        long sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += w[offset + i] * x[xOffset + i];
+        return sum;
+    }
+
+    /**
+     * Calculate the packed dot products of a row of quantized weights and four consecutive rows
+     * of packed quantized inputs (eight rows of inputs), so that each weight is loaded once for
+     * the eight rows, and store the unpacked results.
+     *
+     * @param   w           the quantized weights
+     * @param   offset      the offset of the row of weights
+     * @param   x           the packed quantized inputs
+     * @param   xOffset     the offset of the first row of packed inputs
+     * @param   length      the number of inputs
+     * @param   result      the array to hold the dot products
+     * @param   index       the index in the result array of the first dot product
+     * @param   stride      the distance in the result array between the dot products
+     * @param   remaining   the number of rows remaining in the batch
+     */
+    private static void dotPacked4(byte[] w, int offset, long[] x, int xOffset, int length,
+            double[] result, int index, int stride, int remaining) {
+        int xOffset1 = xOffset + length;
+        int xOffset2 = xOffset1 + length;
+        int xOffset3 = xOffset2 + length;
+        long sum0 = 0;
+        long sum1 = 0;
+        long sum2 = 0;
+        long sum3 = 0;
+        for (int i = 0; i < length; i++) {
+            long wi = w[offset + i];
+            sum0 += x[xOffset + i] * wi;
+            sum1 += x[xOffset1 + i] * wi;
+            sum2 += x[xOffset2 + i] * wi;
+            sum3 += x[xOffset3 + i] * wi;
+        }
+        unpack(sum0, result, index, stride, remaining);
+        unpack(sum1, result, index + stride * 2, stride, remaining - 2);
+        unpack(sum2, result, index + stride * 4, stride, remaining - 4);
+        unpack(sum3, result, index + stride * 6, stride, remaining - 6);
+    }
+
+    /**
+     * Separate a packed pair of dot products and store them in the result array.  The low 32
+     * bits hold the first (as a signed value), and the remainder, shifted right by 32 bits, is
+     * the second.  The second is not stored if it falls beyond the end of the batch.
+     *
+     * @param   sum         the packed dot products
+     * @param   result      the array to hold the dot products
+     * @param   index       the index in the result array of the first dot product
+     * @param   stride      the distance in the result array between the dot products
+     * @param   remaining   the number of rows remaining in the batch
+     */
+    private static void unpack(long sum, double[] result, int index, int stride,
+            int remaining) {
+        int low = (int)sum;
+        result[index] = low;
+        if (remaining > 1)
+            result[index + stride] = (int)((sum - low) >> 32);
+    }
+
+    /**
+     * Process an array of inputs to produce an array of outputs, storing the outputs in the
+     * supplied array and using a per-thread {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @param   outputs the array to hold the outputs
+     * @throws  IllegalArgumentException if either array is of the wrong size
+     */
+    public void predict(double[] inputs, double[] outputs) {
+        predict(inputs, outputs, threadContext.get());
+    }
+
+    /**
+     * Process an array of inputs to get the index of the highest output, using a per-thread
+     * {@link InferenceContext}.
+     *
+     * @param   inputs  the array of inputs
+     * @return  the index of the highest output
+     * @throws  IllegalArgumentException if the inputs array is of the wrong size
+     */
+    public int predictClass(double[] inputs) {
+        return predictClass(inputs, threadContext.get());
+    }
+
+    /**
+     * Compare this {@code QuantizedNetwork} with a reference {@link Predictor} (normally the
+     * network from which it was created) over a set of test data.  Each predictor is evaluated
+     * serially (so that the timings are comparable), and the outputs of the two are then
+     * compared item by item.
+     *
+     * @param   reference   the reference {@link Predictor}
+     * @param   testData    the test data
+     * @return  the {@link QuantizationReport}
+     * @throws  IllegalArgumentException if the reference has different layer sizes
+     */
+    public QuantizationReport compare(Predictor reference, TrainingDataSource testData) {
+        InferenceContext referenceContext = reference.newInferenceContext().check(layerSizes);
+        EvaluationResult referenceResult = reference.evaluate(testData, false);
+        EvaluationResult quantizedResult = evaluate(testData, false);
+        InferenceContext context = newInferenceContext();
+        double[] inputs = context.inputs;
+        int agreed = 0;
+        double maxError = 0.0;
+        for (int i = 0, n = testData.getSize(); i < n; i++) {
+            MiniBatch.checkRowSize(testData.copyInputs(i, inputs, 0), inputs.length);
+            double[] expected = reference.predict(inputs, referenceContext);
+            double[] actual = predict(inputs, context);
+            if (Network.indexOfHighest(expected) == Network.indexOfHighest(actual))
+                agreed++;
+            for (int j = 0, m = actual.length; j < m; j++)
+                maxError = Math.max(maxError, Math.abs(actual[j] - expected[j]));
+        }
+        return new QuantizationReport(referenceResult, quantizedResult, agreed, maxError);
+    }
+
+    /**
+     * Get the number of bytes used to hold the weights and biases (excluding object overheads).
+     *
+     * @return  the number of bytes
+     */
+    public long getParameterBytes() {
+        long result = 0;
+        for (int i = 0, n = weights.length; i < n; i++)
+            result += weights[i].length + (weightScales[i].length + biases[i].length) * 8L;
+        return result;
+    }
+
+    /**
+     * Get the layer sizes (including the input layer).
+     *
+     * @return  a copy of the layer sizes
+     */
+    @Override
+    public int[] getLayerSizes() {
+        return layerSizes.clone();
+    }
+
+    /**
+     * Create a display representation of the network for debug output.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("QuantizedNetwork[");
+        for (int i = 0; i < layerSizes.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(layerSizes[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * @(#) QuantizedTrainingDataSet.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A {@link TrainingDataSource} for classification data holding its inputs in quantized form,
+ * as unsigned bytes, with a scale and offset for the whole data set: the value represented by
+ * a byte {@code b} is {@code b * scale + offset}.  This takes one eighth of the memory of the
+ * same data held as {@code double} (see {@link PackedTrainingDataSet}), so that much larger
+ * data sets can remain in the processor cache or main memory.
+ *
+ * <p>The inputs are dequantized only as they are copied into the caller's array by
+ * {@link #copyInputs(int, double[], int)}, which is how a {@link MiniBatch} is packed, so the
+ * data is never expanded to {@code double} other than in the mini-batch being processed.  The
+ * conversion uses a table of the 256 possible values.  For this reason the packed option of
+ * {@link TrainingDataRandom} (which would hold a {@code double} copy of all the data) is
+ * rejected for this class.</p>
+ *
+ * <p>Where the original data was itself a set of byte values scaled by a power of 2 (for
+ * example, MNIST pixel values divided by 256), a scale of that power of 2 and an offset of zero
+ * will reproduce the original values exactly.</p>
+ *
+ * @author  Peter Wall
+ */
+public class QuantizedTrainingDataSet implements TrainingDataSource {
+
+    private int size;
+    private int inputSize;
+    private int outputSize;
+    private byte[] inputs;
+    private int[] labels;
+    private double scale;
+    private double offset;
+    private double[] values;
+
+    /**
+     * Construct a {@code QuantizedTrainingDataSet} from existing arrays of quantized inputs and
+     * labels.  The arrays are used directly (not copied).
+     *
+     * @param   inputs      the quantized inputs, with one row of {@code inputSize} values per
+     *                      item
+     * @param   inputSize   the number of inputs for each item
+     * @param   labels      the labels, one per item
+     * @param   outputSize  the number of outputs for each item (the number of classes)
+     * @param   scale       the scale
+     * @param   offset      the offset
+     * @throws  IllegalArgumentException if the array sizes are inconsistent, or any label is
+     *                  out of range
+     */
+    public QuantizedTrainingDataSet(byte[] inputs, int inputSize, int[] labels, int outputSize,
+            double scale, double offset) {
+        this.inputs = Objects.requireNonNull(inputs);
+        this.labels = Objects.requireNonNull(labels);
+        init(labels.length, inputSize, outputSize, scale, offset);
+        if ((long)size * inputSize != inputs.length)
+            throw new IllegalArgumentException("Inputs array wrong size (" + inputs.length +
+                    " != " + (long)size * inputSize + ')');
+        for (int i = 0; i < size; i++)
+            checkLabel(labels[i]);
+    }
+
+    /**
+     * Construct a {@code QuantizedTrainingDataSet} from memory-mapped IDX input and label files
+     * (see {@link IDXTrainingDataSource}).  The inputs must be of type
+     * {@link IDXFile.ElementType#UBYTE}; they are copied to the heap without conversion.
+     *
+     * @param   inputs      the {@link IDXFile} holding the inputs
+     * @param   labels      the {@link IDXFile} holding the labels
+     * @param   outputSize  the number of outputs for each item (the number of classes)
+     * @param   scale       the scale
+     * @param   offset      the offset
+     * @throws  IllegalArgumentException if the files are not compatible, the inputs are not of
+     *                  type {@code UBYTE}, or any label is out of range
+     */
+    public QuantizedTrainingDataSet(IDXFile inputs, IDXFile labels, int outputSize,
+            double scale, double offset) {
+        if (inputs.getElementType() != IDXFile.ElementType.UBYTE)
+            throw new IllegalArgumentException("Inputs must be unsigned bytes");
+        if (inputs.getNumRecords() != labels.getNumRecords())
+            throw new IllegalArgumentException("Inputs and labels differ in size (" +
+                    inputs.getNumRecords() + " != " + labels.getNumRecords() + ')');
+        if (labels.getRecordSize() != 1)
+            throw new IllegalArgumentException("Labels must have one element per record");
+        init(inputs.getNumRecords(), inputs.getRecordSize(), outputSize, scale, offset);
+        checkTotalSize();
+        this.inputs = new byte[size * inputSize];
+        this.labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            inputs.copyRecord(i, this.inputs, i * inputSize);
+            this.labels[i] = checkLabel(labels.getInt(i, 0));
+        }
+    }
+
+    /**
+     * Construct a {@code QuantizedTrainingDataSet} by quantizing the data from a
+     * {@link TrainingDataSource}, using the specified scale and offset.  Each value is rounded
+     * to the nearest representable value (so the error is at most half the scale), and values
+     * outside the representable range are clamped.  The label for each item is taken from
+     * {@link TrainingDataSource#getLabel(int)}.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   scale   the scale
+     * @param   offset  the offset
+     * @throws  IllegalArgumentException if the source is empty, or the items are not all of
+     *                  the same dimensions
+     */
+    public QuantizedTrainingDataSet(TrainingDataSource source, double scale, double offset) {
+        double[] row = initFromSource(source);
+        init(size, row.length, outputSize, scale, offset);
+        quantize(source, row);
+    }
+
+    /**
+     * Construct a {@code QuantizedTrainingDataSet} by quantizing the data from a
+     * {@link TrainingDataSource}, choosing the scale and offset to cover the range of the input
+     * values (this requires an additional pass over the data).
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @throws  IllegalArgumentException if the source is empty, or the items are not all of
+     *                  the same dimensions
+     */
+    public QuantizedTrainingDataSet(TrainingDataSource source) {
+        double[] row = initFromSource(source);
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            MiniBatch.checkRowSize(source.copyInputs(i, row, 0), row.length);
+            for (double value : row) {
+                if (value < min)
+                    min = value;
+                if (value > max)
+                    max = value;
+            }
+        }
+        init(size, row.length, outputSize, max > min ? (max - min) / 255 : 1.0, min);
+        quantize(source, row);
+    }
+
+    private double[] initFromSource(TrainingDataSource source) {
+        size = Objects.requireNonNull(source).getSize();
+        if (size <= 0)
+            throw new IllegalArgumentException("Training data must not be empty");
+        TrainingData first = source.getItem(0);
+        outputSize = first.getOutputs().length;
+        return new double[first.getInputs().length];
+    }
+
+    private void quantize(TrainingDataSource source, double[] row) {
+        checkTotalSize();
+        inputs = new byte[size * inputSize];
+        labels = new int[size];
+        for (int i = 0, k = 0; i < size; i++) {
+            MiniBatch.checkRowSize(source.copyInputs(i, row, 0), inputSize);
+            for (int j = 0; j < inputSize; j++) {
+                long q = Math.round((row[j] - offset) / scale);
+                inputs[k++] = (byte)(q < 0 ? 0 : q > 255 ? 255 : q);
+            }
+            labels[i] = checkLabel(source.getLabel(i));
+        }
+    }
+
+    private void init(int size, int inputSize, int outputSize, double scale, double offset) {
+        if (inputSize <= 0 || outputSize <= 0)
+            throw new IllegalArgumentException("Input and output sizes must be > 0");
+        if (!(scale > 0.0) || Double.isInfinite(scale) || Double.isNaN(offset) ||
+                Double.isInfinite(offset))
+            throw new IllegalArgumentException("Invalid scale or offset");
+        this.size = size;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.scale = scale;
+        this.offset = offset;
+        values = new double[256];
+        for (int i = 0; i < 256; i++)
+            values[i] = i * scale + offset;
+    }
+
+    private void checkTotalSize() {
+        if ((long)size * inputSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Training data too large: " + size);
+    }
+
+    private int checkLabel(int label) {
+        if (label < 0 || label >= outputSize)
+            throw new IllegalArgumentException("Label out of range: " + label);
+        return label;
+    }
+
+    /**
+     * Get a {@link TrainingData} item.  The item is a view of the quantized data; the arrays
+     * returned by the item are created on each call.
+     *
+     * @param   index   the index of the item
+     * @return  the {@link TrainingData} item
+     */
+    @Override
+    public TrainingData getItem(int index) {
+        checkIndex(index);
+        return new TrainingData() {
+            @Override
+            public double[] getInputs() {
+                double[] result = new double[inputSize];
+                copyInputs(index, result, 0);
+                return result;
+            }
+            @Override
+            public double[] getOutputs() {
+                double[] result = new double[outputSize];
+                result[labels[index]] = 1.0;
+                return result;
+            }
+            @Override
+            public int getHighestOutputIndex() {
+                return labels[index];
+            }
+        };
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Copy the inputs of an item into an array, converting the quantized values to
+     * {@code double}.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @return          the number of values copied
+     */
+    @Override
+    public int copyInputs(int index, double[] target, int offset) {
+        checkIndex(index);
+        double[] values = this.values;
+        byte[] inputs = this.inputs;
+        for (int j = 0, k = index * inputSize; j < inputSize; j++)
+            target[offset + j] = values[inputs[k++] & 0xFF];
+        return inputSize;
+    }
+
+    @Override
+    public int copyOutputs(int index, double[] target, int offset) {
+        checkIndex(index);
+        Arrays.fill(target, offset, offset + outputSize, 0.0);
+        target[offset + labels[index]] = 1.0;
+        return outputSize;
+    }
+
+    @Override
+    public int getLabel(int index) {
+        checkIndex(index);
+        return labels[index];
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return true;
+    }
+
+    /**
+     * Get the number of inputs for each item.
+     *
+     * @return  the number of inputs
+     */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the number of outputs for each item (the number of classes).
+     *
+     * @return  the number of outputs
+     */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Get the scale (the difference between successive quantized values).
+     *
+     * @return  the scale
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Get the offset (the value represented by a quantized value of zero).
+     *
+     * @return  the offset
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IllegalArgumentException("index is not in range: " + index);
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * @(#) ShardedTrainingDataStream.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A {@link TrainingDataStream} made up of a number of shards, each of which is a
+ * {@link TrainingDataSource} of a size that may conveniently be opened (for example, by
+ * memory-mapping a pair of IDX files; see {@link Shard#idx(Path, Path, int, double)}).  On each
+ * pass the shards are read in a random order, one at a time, with the items of each shard read
+ * sequentially, so that only one shard is open at any time and the total number of items is not
+ * limited to the range of an {@code int}.  A shard is opened when it is reached, and released
+ * (closed, if it implements {@link Closeable}) when all its items have been read.
+ *
+ * <p>The items within a shard are always read in the same order; to randomise the order of
+ * items across shard boundaries, wrap the stream in a {@link ShuffledTrainingDataStream}.</p>
+ *
+ * @author  Peter Wall
+ */
+public class ShardedTrainingDataStream implements TrainingDataStream {
+
+    private final List<Shard> shards;
+    private final int inputSize;
+    private final int outputSize;
+    private final boolean labelled;
+
+    /**
+     * Construct a {@code ShardedTrainingDataStream}.
+     *
+     * @param   shards      the list of {@link Shard}s
+     * @param   inputSize   the number of inputs for each item
+     * @param   outputSize  the number of outputs for each item
+     * @param   labelled    {@code true} if the expected outputs are to be obtained as labels
+     * @throws  IllegalArgumentException if the list of shards is empty, or the sizes are not
+     *                  valid
+     */
+    public ShardedTrainingDataStream(List<Shard> shards, int inputSize, int outputSize,
+            boolean labelled) {
+        this.shards = new ArrayList<>(Objects.requireNonNull(shards));
+        if (this.shards.isEmpty())
+            throw new IllegalArgumentException("Must have at least one shard");
+        if (inputSize <= 0 || outputSize <= 0)
+            throw new IllegalArgumentException("Input and output sizes must be > 0");
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.labelled = labelled;
+    }
+
+    @Override
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return labelled;
+    }
+
+    /**
+     * Get the number of shards.
+     *
+     * @return  the number of shards
+     */
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    /**
+     * Open a {@link TrainingDataStream.Reader} to make a single pass through the shards, in an
+     * order determined by the supplied {@link Random}.
+     *
+     * @param   random  the {@link Random} used to shuffle the order of the shards, or
+     *                  {@code null} to read them in the order supplied
+     * @return  the {@link TrainingDataStream.Reader}
+     */
+    @Override
+    public Reader open(Random random) {
+        int[] order = new int[shards.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        if (random != null)
+            TrainingDataRandom.shuffle(order, random);
+        return new ShardReader(order);
+    }
+
+    /**
+     * A shard of a {@link ShardedTrainingDataStream}.
+     */
+    @FunctionalInterface
+    public interface Shard {
+
+        /**
+         * Open the shard.
+         *
+         * @return  the {@link TrainingDataSource} giving access to the items of the shard
+         * @throws  IOException if the shard can not be opened
+         */
+        TrainingDataSource open() throws IOException;
+
+        /**
+         * Create a {@code Shard} consisting of a pair of IDX files (see
+         * {@link IDXTrainingDataSource}).  The files are memory-mapped when the shard is
+         * opened.
+         *
+         * @param   inputs      the {@link Path} of the IDX file holding the inputs
+         * @param   labels      the {@link Path} of the IDX file holding the labels
+         * @param   outputSize  the number of outputs for each item (the number of classes)
+         * @param   scale       the scale factor to be applied to each input value
+         * @return  the {@code Shard}
+         */
+        static Shard idx(Path inputs, Path labels, int outputSize, double scale) {
+            Objects.requireNonNull(inputs);
+            Objects.requireNonNull(labels);
+            return () -> new IDXTrainingDataSource(new IDXFile(inputs), new IDXFile(labels),
+                    outputSize, scale);
+        }
+
+    }
+
+    private class ShardReader implements Reader {
+
+        private final int[] order;
+        private int nextShard;
+        private TrainingDataSource current;
+        private int index;
+
+        ShardReader(int[] order) {
+            this.order = order;
+            nextShard = 0;
+            current = null;
+            index = -1;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (current == null || index + 1 >= current.getSize()) {
+                release();
+                if (nextShard >= order.length)
+                    return false;
+                current = shards.get(order[nextShard++]).open();
+                index = -1;
+            }
+            index++;
+            return true;
+        }
+
+        @Override
+        public int copyInputs(double[] target, int offset) {
+            return current.copyInputs(index, target, offset);
+        }
+
+        @Override
+        public int copyOutputs(double[] target, int offset) {
+            return current.copyOutputs(index, target, offset);
+        }
+
+        @Override
+        public int getLabel() {
+            return current.getLabel(index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            nextShard = order.length;
+            release();
+        }
+
+        private void release() throws IOException {
+            TrainingDataSource shard = current;
+            current = null;
+            if (shard instanceof Closeable)
+                ((Closeable)shard).close();
+        }
+
+    }
+
+}
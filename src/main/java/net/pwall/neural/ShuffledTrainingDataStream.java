@@ -0,0 +1,224 @@
+/*
+ * @(#) ShuffledTrainingDataStream.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A {@link TrainingDataStream} that randomises the order of the items of another stream
+ * approximately, using a bounded shuffle buffer.  The buffer is first filled with items from
+ * the underlying stream; each item is then taken from a random position in the buffer, and
+ * replaced by the next item from the underlying stream.  An item can therefore be moved
+ * earlier by at most the size of the buffer, but it may be moved any distance later.  The
+ * larger the buffer, the closer the result is to a full shuffle; a buffer at least as large
+ * as a shard of a {@link ShardedTrainingDataStream} mixes the items of adjacent shards.
+ *
+ * <p>The buffer holds the data in packed arrays, allocated when each pass is opened and
+ * released when it is closed, so it occupies {@code bufferSize * inputSize} {@code double}
+ * values (plus the outputs or labels) while a pass is in progress.</p>
+ *
+ * @author  Peter Wall
+ */
+public class ShuffledTrainingDataStream implements TrainingDataStream {
+
+    private final TrainingDataStream source;
+    private final int bufferSize;
+
+    /**
+     * Construct a {@code ShuffledTrainingDataStream}.
+     *
+     * @param   source      the underlying {@link TrainingDataStream}
+     * @param   bufferSize  the number of items in the shuffle buffer
+     * @throws  IllegalArgumentException if the buffer size is less than 1, or the buffer would
+     *                  be too large
+     */
+    public ShuffledTrainingDataStream(TrainingDataStream source, int bufferSize) {
+        this.source = Objects.requireNonNull(source);
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be >= 1");
+        int rowSize = source.isLabelled() ? source.getInputSize() :
+                Math.max(source.getInputSize(), source.getOutputSize());
+        if ((long)bufferSize * rowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Buffer size too large: " + bufferSize);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public int getInputSize() {
+        return source.getInputSize();
+    }
+
+    @Override
+    public int getOutputSize() {
+        return source.getOutputSize();
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return source.isLabelled();
+    }
+
+    /**
+     * Get the number of items in the shuffle buffer.
+     *
+     * @return  the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Open a {@link TrainingDataStream.Reader} to make a single pass through the data.  The
+     * {@link Random} is used to select items from the buffer, and it is also passed to the
+     * underlying stream.
+     *
+     * @param   random  the {@link Random}
+     * @return  the {@link TrainingDataStream.Reader}
+     * @throws  IOException if the underlying stream can not be opened
+     */
+    @Override
+    public Reader open(Random random) throws IOException {
+        return new ShuffleReader(source.open(random), random != null ? random : new Random());
+    }
+
+    private class ShuffleReader implements Reader {
+
+        private final Reader reader;
+        private final Random random;
+        private final int inputSize;
+        private final int outputSize;
+        private final boolean labelled;
+        private double[] inputs;
+        private double[] outputs;
+        private int[] labels;
+        private int count;
+        private int current;
+        private boolean exhausted;
+
+        ShuffleReader(Reader reader, Random random) {
+            this.reader = reader;
+            this.random = random;
+            inputSize = source.getInputSize();
+            outputSize = source.getOutputSize();
+            labelled = source.isLabelled();
+            inputs = new double[bufferSize * inputSize];
+            if (labelled)
+                labels = new int[bufferSize];
+            else
+                outputs = new double[bufferSize * outputSize];
+            count = 0;
+            current = -1;
+            exhausted = false;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (current >= 0) {
+                // replace the item just consumed, or remove it if the source is exhausted
+                if (!load(current)) {
+                    int last = --count;
+                    if (current != last)
+                        move(last, current);
+                }
+            }
+            else {
+                while (count < bufferSize && load(count))
+                    count++;
+            }
+            if (count == 0) {
+                current = -1;
+                return false;
+            }
+            current = random.nextInt(count);
+            return true;
+        }
+
+        private boolean load(int slot) throws IOException {
+            if (exhausted || !reader.next()) {
+                exhausted = true;
+                return false;
+            }
+            MiniBatch.checkRowSize(reader.copyInputs(inputs, slot * inputSize), inputSize);
+            if (labelled)
+                labels[slot] = reader.getLabel();
+            else
+                MiniBatch.checkRowSize(reader.copyOutputs(outputs, slot * outputSize),
+                        outputSize);
+            return true;
+        }
+
+        private void move(int from, int to) {
+            System.arraycopy(inputs, from * inputSize, inputs, to * inputSize, inputSize);
+            if (labelled)
+                labels[to] = labels[from];
+            else
+                System.arraycopy(outputs, from * outputSize, outputs, to * outputSize,
+                        outputSize);
+        }
+
+        @Override
+        public int copyInputs(double[] target, int offset) {
+            System.arraycopy(inputs, current * inputSize, target, offset, inputSize);
+            return inputSize;
+        }
+
+        @Override
+        public int copyOutputs(double[] target, int offset) {
+            if (labelled) {
+                for (int i = 0; i < outputSize; i++)
+                    target[offset + i] = i == labels[current] ? 1.0 : 0.0;
+            }
+            else
+                System.arraycopy(outputs, current * outputSize, target, offset, outputSize);
+            return outputSize;
+        }
+
+        @Override
+        public int getLabel() {
+            if (labelled)
+                return labels[current];
+            int offset = current * outputSize;
+            int result = 0;
+            for (int i = 1; i < outputSize; i++) {
+                if (outputs[offset + i] > outputs[offset + result])
+                    result = i;
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputs = null;
+            outputs = null;
+            labels = null;
+            reader.close();
+        }
+
+    }
+
+}
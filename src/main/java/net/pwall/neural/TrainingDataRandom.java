@@ -29,7 +29,17 @@ import java.util.Objects;
 import java.util.Random;
 
 /**
- * Default comment for {@code TrainingDataRandom}.
+ * A view of a {@link TrainingDataSource} in which the items may be re-ordered randomly (for
+ * example, at the start of each epoch of Stochastic Gradient Descent).
+ *
+ * <p>Optionally, a packed copy of the data may be held, with the inputs of all items in a
+ * contiguous array, and the expected outputs either in a second contiguous array or, if the
+ * source is labelled (see {@link TrainingDataSource#isLabelled()}), as an array of labels.  The
+ * rows of the packed copy are permuted in place along with the index, so that a range of
+ * consecutive items (a mini-batch) occupies a contiguous range of memory, and may be copied to a
+ * {@link MiniBatch} without going through {@link TrainingDataSource#getItem(int)} for each
+ * item.  This uses additional memory equal to the size of the data set, but the cost of the
+ * permutation is repaid in the packing of every mini-batch.</p>
  *
  * @author  Peter Wall
  */
@@ -37,6 +47,11 @@ public class TrainingDataRandom implements TrainingDataSource {
 
     private TrainingDataSource source;
     private int[] index;
+    private int inputSize;
+    private int outputSize;
+    private double[] packedInputs;
+    private double[] packedOutputs;
+    private int[] packedLabels;
 
     /**
      * Construct a {@code TrainingDataRandom} from an original {@link TrainingDataSource}.
@@ -44,28 +59,167 @@ public class TrainingDataRandom implements TrainingDataSource {
      * @param   source  the {@link TrainingDataSource}
      */
     public TrainingDataRandom(TrainingDataSource source) {
+        this(source, false);
+    }
+
+    /**
+     * Construct a {@code TrainingDataRandom} from an original {@link TrainingDataSource},
+     * optionally holding a packed copy of the data.
+     *
+     * @param   source  the {@link TrainingDataSource}
+     * @param   packed  if {@code true}, hold a packed copy of the data
+     * @throws  IllegalArgumentException if a packed copy is requested and the items are not all
+     *                  of the same size, the data is too large to be held in an array, or the
+     *                  source is a {@link QuantizedTrainingDataSet}
+     */
+    public TrainingDataRandom(TrainingDataSource source, boolean packed) {
         this.source = Objects.requireNonNull(source);
+        // a packed copy would expand the quantized inputs to eight times their size
+        if (packed && source instanceof QuantizedTrainingDataSet)
+            throw new IllegalArgumentException("Quantized training data can not be packed");
         int length = source.getSize();
         index = new int[length];
         for (int i = 0; i < length; i++)
             index[i] = i;
+        if (packed && length > 0)
+            pack();
+    }
+
+    private void pack() {
+        int length = index.length;
+        TrainingData first = source.getItem(0);
+        inputSize = first.getInputs().length;
+        outputSize = first.getOutputs().length;
+        if ((long)length * inputSize > Integer.MAX_VALUE ||
+                (long)length * outputSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Training data too large to pack: " + length);
+        packedInputs = new double[length * inputSize];
+        for (int i = 0; i < length; i++)
+            MiniBatch.checkRowSize(source.copyInputs(i, packedInputs, i * inputSize),
+                    inputSize);
+        if (source.isLabelled()) {
+            packedLabels = new int[length];
+            for (int i = 0; i < length; i++) {
+                int label = source.getLabel(i);
+                if (label < 0 || label >= outputSize)
+                    throw new IllegalArgumentException("Label out of range: " + label);
+                packedLabels[i] = label;
+            }
+        }
+        else {
+            packedOutputs = new double[length * outputSize];
+            for (int i = 0; i < length; i++)
+                MiniBatch.checkRowSize(source.copyOutputs(i, packedOutputs, i * outputSize),
+                        outputSize);
+        }
     }
 
     /**
-     * Randomise the index - is there a better way of doing this?
+     * Randomise the index (and the packed copy of the data, if present), using the
+     * Fisher-Yates shuffle.  The rows of the packed copy are swapped in place, so no storage is
+     * allocated.
      *
      * @param   r       a {@link Random}
      */
     public void randomise(Random r) {
-        int i = getSize();
-        while (i > 1) {
-            int x = r.nextInt(i);
-            int previous = index[x];
-            System.arraycopy(index, x + 1, index, x, i - x - 1);
-            index[--i] = previous;
+        if (packedInputs == null)
+            shuffle(index, r);
+        else {
+            for (int i = index.length - 1; i > 0; i--) {
+                int x = r.nextInt(i + 1);
+                if (x != i) {
+                    swap(index, i, x);
+                    swapRows(packedInputs, i, x, inputSize);
+                    if (packedLabels != null)
+                        swap(packedLabels, i, x);
+                    else
+                        swapRows(packedOutputs, i, x, outputSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Randomise an array of indices in place, using the Fisher-Yates shuffle (linear in the size
+     * of the array).  This is also used by {@link FloatNetwork}, so that training with the same
+     * {@link Random} visits the items in the same order.
+     *
+     * @param   index   the array of indices
+     * @param   r       a {@link Random}
+     */
+    static void shuffle(int[] index, Random r) {
+        for (int i = index.length - 1; i > 0; i--)
+            swap(index, i, r.nextInt(i + 1));
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    private static void swapRows(double[] array, int i, int j, int rowSize) {
+        for (int p = i * rowSize, q = j * rowSize, end = p + rowSize; p < end; p++, q++) {
+            double temp = array[p];
+            array[p] = array[q];
+            array[q] = temp;
         }
     }
 
+    /**
+     * Test whether this {@code TrainingDataRandom} holds a packed copy of the data.
+     *
+     * @return  {@code true} if the data is packed
+     */
+    public boolean isPacked() {
+        return packedInputs != null;
+    }
+
+    /**
+     * Copy a range of items from the packed copy of the data, in the current order, to packed
+     * arrays of inputs and either expected outputs or labels (if the data is labelled, the
+     * labels have already been checked against the number of outputs).  Because the items are
+     * held in the current order, each of the two copies is a single contiguous block.
+     *
+     * @param   start       the index of the first item
+     * @param   count       the number of items
+     * @param   inputs      the array to receive the inputs
+     * @param   outputs     the array to receive the expected outputs (if not labelled)
+     * @param   labels      the array to receive the labels (if labelled)
+     * @param   row         the first row to be filled in the target arrays
+     * @throws  IllegalStateException if the data is not packed
+     */
+    void copyPacked(int start, int count, double[] inputs, double[] outputs, int[] labels,
+            int row) {
+        if (packedInputs == null)
+            throw new IllegalStateException("Training data is not packed");
+        System.arraycopy(packedInputs, start * inputSize, inputs, row * inputSize,
+                count * inputSize);
+        if (packedLabels != null)
+            System.arraycopy(packedLabels, start, labels, row, count);
+        else
+            System.arraycopy(packedOutputs, start * outputSize, outputs, row * outputSize,
+                    count * outputSize);
+    }
+
+    /**
+     * Get the number of inputs in each item of the packed copy of the data.
+     *
+     * @return  the number of inputs (zero if the data is not packed)
+     */
+    int getPackedInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Get the number of expected outputs in each item of the packed copy of the data.
+     *
+     * @return  the number of outputs (zero if the data is not packed)
+     */
+    int getPackedOutputSize() {
+        return outputSize;
+    }
+
     @Override
     public TrainingData getItem(int i) {
         return source.getItem(index[i]);
@@ -76,4 +230,30 @@ public class TrainingDataRandom implements TrainingDataSource {
         return index.length;
     }
 
+    @Override
+    public int copyInputs(int i, double[] target, int offset) {
+        if (packedInputs == null)
+            return source.copyInputs(index[i], target, offset);
+        System.arraycopy(packedInputs, i * inputSize, target, offset, inputSize);
+        return inputSize;
+    }
+
+    @Override
+    public int copyOutputs(int i, double[] target, int offset) {
+        if (packedOutputs == null)
+            return source.copyOutputs(index[i], target, offset);
+        System.arraycopy(packedOutputs, i * outputSize, target, offset, outputSize);
+        return outputSize;
+    }
+
+    @Override
+    public int getLabel(int i) {
+        return packedLabels != null ? packedLabels[i] : source.getLabel(index[i]);
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return source.isLabelled();
+    }
+
 }
@@ -56,6 +56,62 @@ public interface TrainingDataSource extends Iterable<TrainingData> {
      */
     int getSize();
 
+    /**
+     * Copy the inputs of an item into an array.  The default implementation copies the array
+     * returned by the {@link TrainingData} item; implementations that hold their data in packed
+     * form should override this to copy the data directly, without creating any intermediate
+     * objects.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @return          the number of values copied
+     */
+    default int copyInputs(int index, double[] target, int offset) {
+        double[] inputs = getItem(index).getInputs();
+        System.arraycopy(inputs, 0, target, offset, inputs.length);
+        return inputs.length;
+    }
+
+    /**
+     * Copy the expected outputs of an item into an array.  The default implementation copies
+     * the array returned by the {@link TrainingData} item; implementations that hold their data
+     * in packed form should override this to copy the data directly, without creating any
+     * intermediate objects.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @return          the number of values copied
+     */
+    default int copyOutputs(int index, double[] target, int offset) {
+        double[] outputs = getItem(index).getOutputs();
+        System.arraycopy(outputs, 0, target, offset, outputs.length);
+        return outputs.length;
+    }
+
+    /**
+     * Get the expected output of an item as an integer index (the index of the highest value in
+     * the expected outputs).
+     *
+     * @param   index   the index of the item
+     * @return          the expected output integer
+     */
+    default int getLabel(int index) {
+        return getItem(index).getHighestOutputIndex();
+    }
+
+    /**
+     * Test whether the expected outputs of every item are known to consist of a single value
+     * of 1.0 (at the index returned by {@link #getLabel(int)}), with all other values 0.0.
+     * Where this is the case, the expected outputs need not be examined individually.
+     *
+     * @return  {@code true} if the data is labelled in this way
+     */
+    default boolean isLabelled() {
+        return false;
+    }
+
     /**
      * Get an {@link Iterator} for this {@code TrainingDataSource}.
      *
@@ -0,0 +1,126 @@
+/*
+ * @(#) TrainingDataStream.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A source of training data that is read sequentially, one pass at a time, for data sets that
+ * are too large to be held in memory or to be indexed by an {@code int} (unlike
+ * {@link TrainingDataSource}, which requires random access to every item).  Each pass is made
+ * using a {@link Reader} obtained from {@link #open(Random)}; the number of items need not be
+ * known in advance.
+ *
+ * <p>The order of the items is determined by the implementation.  A stream made up of a number
+ * of separate shards may be read in a different order of shards on each pass (see
+ * {@link ShardedTrainingDataStream}), and a bounded shuffle buffer may be added to any stream
+ * to randomise the order of the items approximately (see {@link ShuffledTrainingDataStream}).
+ * </p>
+ *
+ * @author  Peter Wall
+ */
+public interface TrainingDataStream {
+
+    /**
+     * Get the number of inputs for each item.
+     *
+     * @return  the number of inputs
+     */
+    int getInputSize();
+
+    /**
+     * Get the number of outputs for each item.
+     *
+     * @return  the number of outputs
+     */
+    int getOutputSize();
+
+    /**
+     * Report whether the expected outputs are better obtained as labels (see
+     * {@link TrainingDataSource#isLabelled()}).
+     *
+     * @return  {@code true} if the data is labelled
+     */
+    default boolean isLabelled() {
+        return false;
+    }
+
+    /**
+     * Open a {@link Reader} to make a single pass through the data.
+     *
+     * @param   random  a {@link Random}, for use by implementations that vary the order of the
+     *                  items from one pass to the next
+     * @return  the {@link Reader}
+     * @throws  IOException if the data can not be opened
+     */
+    Reader open(Random random) throws IOException;
+
+    /**
+     * A reader making a single pass through a {@link TrainingDataStream}.  The reader is
+     * positioned before the first item; each call to {@link #next()} advances to the next item,
+     * and the data for the current item is copied into the caller's arrays in the same manner
+     * as by the corresponding functions of {@link TrainingDataSource}.
+     */
+    interface Reader extends Closeable {
+
+        /**
+         * Advance to the next item.
+         *
+         * @return  {@code true} if there is a next item, {@code false} at the end of the data
+         * @throws  IOException if the data can not be read
+         */
+        boolean next() throws IOException;
+
+        /**
+         * Copy the inputs of the current item into a target array.
+         *
+         * @param   target  the target array
+         * @param   offset  the offset in the target array
+         * @return  the number of inputs copied
+         */
+        int copyInputs(double[] target, int offset);
+
+        /**
+         * Copy the expected outputs of the current item into a target array.
+         *
+         * @param   target  the target array
+         * @param   offset  the offset in the target array
+         * @return  the number of outputs copied
+         */
+        int copyOutputs(double[] target, int offset);
+
+        /**
+         * Get the label of the current item (the index of the highest expected output).
+         *
+         * @return  the label
+         */
+        int getLabel();
+
+    }
+
+}
@@ -53,9 +53,7 @@ public class TrainingDataSubset implements TrainingDataSource {
 
     @Override
     public TrainingData getItem(int i) {
-        if (i < 0 || i >= length)
-            throw new IllegalArgumentException("index is not in range: " + i);
-        return source.getItem(start + i);
+        return source.getItem(sourceIndex(i));
     }
 
     @Override
@@ -63,4 +61,30 @@ public class TrainingDataSubset implements TrainingDataSource {
         return length;
     }
 
+    @Override
+    public int copyInputs(int i, double[] target, int offset) {
+        return source.copyInputs(sourceIndex(i), target, offset);
+    }
+
+    @Override
+    public int copyOutputs(int i, double[] target, int offset) {
+        return source.copyOutputs(sourceIndex(i), target, offset);
+    }
+
+    @Override
+    public int getLabel(int i) {
+        return source.getLabel(sourceIndex(i));
+    }
+
+    @Override
+    public boolean isLabelled() {
+        return source.isLabelled();
+    }
+
+    private int sourceIndex(int i) {
+        if (i < 0 || i >= length)
+            throw new IllegalArgumentException("index is not in range: " + i);
+        return start + i;
+    }
+
 }
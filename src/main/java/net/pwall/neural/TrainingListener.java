@@ -0,0 +1,95 @@
+/*
+ * @(#) TrainingListener.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * A listener to receive progress reports during training (see
+ * {@link Network.Trainer#listener(TrainingListener)} and
+ * {@link FloatNetwork.Trainer#listener(TrainingListener)}).  A {@link TrainingMetrics} object is
+ * supplied at the end of each mini-batch and each epoch, giving the throughput, the time spent
+ * in the forward pass, the backward pass and the weight update, the bytes allocated by the
+ * training thread and (at the end of an epoch, if test data was supplied) the result of
+ * evaluating the network against the test data.
+ *
+ * <p>All methods have default implementations that do nothing, so an implementation need
+ * override only those it requires.  The methods are called in the thread that started the
+ * training operation.</p>
+ *
+ * @author  Peter Wall
+ */
+public interface TrainingListener {
+
+    /**
+     * Called at the start of a training operation.
+     *
+     * @param   network     the network being trained (a {@link Network} or a
+     *                      {@link FloatNetwork})
+     * @param   epochs      the number of epochs
+     */
+    default void trainingStarted(Predictor network, int epochs) {
+    }
+
+    /**
+     * Called at the end of each mini-batch, after the weights and biases have been updated.
+     * The {@link TrainingMetrics} object is re-used for each mini-batch, so any values needed
+     * after the method returns must be copied.
+     *
+     * @param   metrics     the {@link TrainingMetrics} for the mini-batch
+     */
+    default void miniBatchCompleted(TrainingMetrics metrics) {
+    }
+
+    /**
+     * Called at the end of each epoch.  The {@link TrainingMetrics} object gives the totals
+     * for the epoch, along with the result of evaluating the network against the test data,
+     * if any.  As with {@link #miniBatchCompleted(TrainingMetrics)}, the object is re-used.
+     *
+     * @param   metrics     the {@link TrainingMetrics} for the epoch
+     */
+    default void epochCompleted(TrainingMetrics metrics) {
+    }
+
+    /**
+     * Called at the end of a training operation (including one that ended with an exception).
+     *
+     * @param   network     the network being trained (a {@link Network} or a
+     *                      {@link FloatNetwork})
+     */
+    default void trainingCompleted(Predictor network) {
+    }
+
+    /**
+     * Report whether this listener requires mini-batch events.  If no listener requires them,
+     * {@link #miniBatchCompleted(TrainingMetrics)} is not called, and the allocation count is
+     * read only at the end of each epoch.
+     *
+     * @return  {@code true} if the listener requires mini-batch events (the default)
+     */
+    default boolean isMiniBatchListener() {
+        return true;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * @(#) TrainingMetrics.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Metrics for a mini-batch or an epoch of training, supplied to a {@link TrainingListener}.
+ *
+ * <p>The times for the forward pass, the backward pass (including the output error) and the
+ * weight update are measured around each phase, so the elapsed time also includes the time
+ * taken to shuffle the training data and pack the mini-batches.  When the mini-batches are
+ * supplied by a prefetching thread or read from a {@link TrainingDataStream}, the elapsed time
+ * of a mini-batch starts once it has been obtained, so the time spent waiting for it or reading
+ * it is included only in the time for the epoch.  In parallel training the forward and backward
+ * times are the totals over all the partitions of the mini-batch, so they may exceed the
+ * elapsed time.  The allocation count is the number of bytes allocated by
+ * the training thread (not by the worker threads of parallel training, or by a prefetching
+ * thread), as reported by {@code com.sun.management.ThreadMXBean}; it is -1 where that is not
+ * available.</p>
+ *
+ * <p>A {@code TrainingMetrics} object is re-used from one event to the next, and must not be
+ * retained by a listener.</p>
+ *
+ * @author  Peter Wall
+ */
+public class TrainingMetrics {
+
+    private final int epochs;
+    boolean endOfEpoch;
+    int epoch;
+    int miniBatch;
+    double learningRate;
+    long samples;
+    long elapsedNanos;
+    long forwardNanos;
+    long backwardNanos;
+    long updateNanos;
+    long allocatedBytes;
+    EvaluationResult evaluation;
+
+    TrainingMetrics(int epochs) {
+        this.epochs = epochs;
+    }
+
+    /**
+     * Get the total number of epochs in the training operation.
+     *
+     * @return  the number of epochs
+     */
+    public int getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * Report whether these are the metrics for a complete epoch (rather than a mini-batch).
+     *
+     * @return  {@code true} for an epoch
+     */
+    public boolean isEpoch() {
+        return endOfEpoch;
+    }
+
+    /**
+     * Get the epoch number (starting from 1).
+     *
+     * @return  the epoch number
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Get the mini-batch number within the epoch (starting from 1).  For the metrics for an
+     * epoch, this is the number of mini-batches in the epoch.
+     *
+     * @return  the mini-batch number
+     */
+    public int getMiniBatch() {
+        return miniBatch;
+    }
+
+    /**
+     * Get the learning rate used for the epoch (see {@link LearningRateSchedule}).
+     *
+     * @return  the learning rate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Get the number of training data items processed.
+     *
+     * @return  the number of items
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the elapsed time.
+     *
+     * @return  the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the number of training data items processed per second.
+     *
+     * @return  the throughput
+     */
+    public double getSamplesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : samples * 1.0e9 / elapsedNanos;
+    }
+
+    /**
+     * Get the time spent in the forward pass.
+     *
+     * @return  the time in nanoseconds
+     */
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    /**
+     * Get the time spent in the backward pass.
+     *
+     * @return  the time in nanoseconds
+     */
+    public long getBackwardNanos() {
+        return backwardNanos;
+    }
+
+    /**
+     * Get the time spent updating the weights and biases.
+     *
+     * @return  the time in nanoseconds
+     */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    /**
+     * Get the number of bytes allocated by the training thread.
+     *
+     * @return  the number of bytes, or -1 if not available
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Get the result of evaluating the network against the test data at the end of an epoch.
+     *
+     * @return  the {@link EvaluationResult}, or {@code null} for a mini-batch, or if there is
+     *          no test data
+     */
+    public EvaluationResult getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Get the accuracy from the evaluation against the test data at the end of an epoch.
+     *
+     * @return  the accuracy (0.0 to 1.0), or {@code NaN} if there is no evaluation
+     */
+    public double getAccuracy() {
+        return evaluation == null ? Double.NaN : evaluation.getAccuracy();
+    }
+
+    /**
+     * Create a display representation of the metrics.
+     *
+     * @return  the display form
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Epoch ").append(epoch).append('/').append(epochs);
+        if (!endOfEpoch)
+            sb.append(" mini-batch ").append(miniBatch);
+        sb.append(": ").append(samples).append(" samples in ").append(millis(elapsedNanos)).
+                append(" (").append(Math.round(getSamplesPerSecond())).append("/s); forward ").
+                append(millis(forwardNanos)).append(", backward ").append(millis(backwardNanos)).
+                append(", update ").append(millis(updateNanos));
+        if (allocatedBytes >= 0)
+            sb.append("; allocated ").append(allocatedBytes).append(" bytes");
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1.0e6);
+    }
+
+}
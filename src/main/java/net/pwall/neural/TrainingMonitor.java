@@ -0,0 +1,199 @@
+/*
+ * @(#) TrainingMonitor.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Collection of {@link TrainingMetrics} during a training operation, and delivery of the
+ * metrics to the {@link TrainingListener}s.  A monitor is created only if there are listeners,
+ * so training without listeners does not read the clock or the allocation counter at all.
+ *
+ * @author  Peter Wall
+ */
+class TrainingMonitor {
+
+    private static final ThreadMXBean threadBean = findThreadBean();
+
+    private final Predictor network;
+    private final TrainingListener[] listeners;
+    private final TrainingListener[] miniBatchListeners;
+    private final TrainingMetrics batchMetrics;
+    private final TrainingMetrics epochMetrics;
+    private long epochStart;
+    private long epochAllocated;
+    private long batchStart;
+    private long batchAllocated;
+    private long updateStart;
+
+    /**
+     * Construct a {@code TrainingMonitor}.
+     *
+     * @param   network     the network being trained (a {@link Network} or a
+     *                      {@link FloatNetwork})
+     * @param   epochs      the number of epochs
+     * @param   listeners   the {@link TrainingListener}s
+     */
+    TrainingMonitor(Predictor network, int epochs, List<TrainingListener> listeners) {
+        this.network = network;
+        this.listeners = listeners.toArray(new TrainingListener[0]);
+        miniBatchListeners = listeners.stream().filter(TrainingListener::isMiniBatchListener).
+                toArray(TrainingListener[]::new);
+        batchMetrics = new TrainingMetrics(epochs);
+        epochMetrics = new TrainingMetrics(epochs);
+        epochMetrics.endOfEpoch = true;
+    }
+
+    void trainingStarted() {
+        for (TrainingListener listener : listeners)
+            listener.trainingStarted(network, epochMetrics.getEpochs());
+    }
+
+    void trainingCompleted() {
+        for (TrainingListener listener : listeners)
+            listener.trainingCompleted(network);
+    }
+
+    /**
+     * Start an epoch.
+     *
+     * @param   epoch   the epoch number (starting from 0)
+     * @param   rate    the learning rate for the epoch
+     */
+    void beginEpoch(int epoch, double rate) {
+        TrainingMetrics metrics = epochMetrics;
+        metrics.epoch = epoch + 1;
+        metrics.miniBatch = 0;
+        metrics.learningRate = rate;
+        metrics.samples = 0;
+        metrics.forwardNanos = 0;
+        metrics.backwardNanos = 0;
+        metrics.updateNanos = 0;
+        batchMetrics.epoch = epoch + 1;
+        batchMetrics.learningRate = rate;
+        epochAllocated = currentThreadAllocatedBytes();
+        epochStart = System.nanoTime();
+    }
+
+    /**
+     * Start a mini-batch (after a prefetched mini-batch has been obtained or a mini-batch has
+     * been read from a stream, but before a mini-batch is packed from the training data).
+     */
+    void beginMiniBatch() {
+        if (miniBatchListeners.length > 0)
+            batchAllocated = currentThreadAllocatedBytes();
+        batchStart = System.nanoTime();
+    }
+
+    /**
+     * Start the weight update for a mini-batch.
+     */
+    void beginUpdate() {
+        updateStart = System.nanoTime();
+    }
+
+    /**
+     * Complete a mini-batch.
+     *
+     * @param   samples         the number of items in the mini-batch
+     * @param   forwardNanos    the time spent in the forward pass
+     * @param   backwardNanos   the time spent in the backward pass
+     */
+    void endMiniBatch(int samples, long forwardNanos, long backwardNanos) {
+        long now = System.nanoTime();
+        long updateNanos = now - updateStart;
+        TrainingMetrics metrics = epochMetrics;
+        metrics.miniBatch++;
+        metrics.samples += samples;
+        metrics.forwardNanos += forwardNanos;
+        metrics.backwardNanos += backwardNanos;
+        metrics.updateNanos += updateNanos;
+        if (miniBatchListeners.length > 0) {
+            metrics = batchMetrics;
+            metrics.miniBatch = epochMetrics.miniBatch;
+            metrics.samples = samples;
+            metrics.elapsedNanos = now - batchStart;
+            metrics.forwardNanos = forwardNanos;
+            metrics.backwardNanos = backwardNanos;
+            metrics.updateNanos = updateNanos;
+            metrics.allocatedBytes = allocatedSince(batchAllocated);
+            for (TrainingListener listener : miniBatchListeners)
+                listener.miniBatchCompleted(metrics);
+        }
+    }
+
+    /**
+     * Complete an epoch, evaluating the network against the test data (if any).  The time
+     * taken by the evaluation is not included in the elapsed time for the epoch.
+     *
+     * @param   testData    the test data, or {@code null}
+     * @param   pool        the {@link ForkJoinPool} to use for parallel evaluation, or
+     *                      {@code null} for serial evaluation
+     * @return  the {@link EvaluationResult}, or {@code null} if there is no test data
+     */
+    EvaluationResult endEpoch(TrainingDataSource testData, ForkJoinPool pool) {
+        TrainingMetrics metrics = epochMetrics;
+        metrics.elapsedNanos = System.nanoTime() - epochStart;
+        metrics.allocatedBytes = allocatedSince(epochAllocated);
+        metrics.evaluation = testData == null ? null :
+                EvaluationResult.evaluate(network, testData, pool != null, pool);
+        for (TrainingListener listener : listeners)
+            listener.epochCompleted(metrics);
+        return metrics.evaluation;
+    }
+
+    private static long allocatedSince(long start) {
+        return start < 0 ? -1L : currentThreadAllocatedBytes() - start;
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread, using the HotSpot extension to
+     * {@link ThreadMXBean}.
+     *
+     * @return  the number of bytes, or -1 if not available
+     */
+    static long currentThreadAllocatedBytes() {
+        return threadBean == null ? -1L : ((com.sun.management.ThreadMXBean)threadBean).
+                getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static ThreadMXBean findThreadBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean &&
+                    ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemoryEnabled())
+                return bean;
+        }
+        catch (LinkageError | UnsupportedOperationException e) {
+            // the extension is not available in this JVM
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * @(#) TrainingWorkspace.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+/**
+ * Preallocated working storage for back-propagation of a single item at a time.  In addition to
+ * the gradient accumulators inherited from {@link GradientWorkspace}, a {@code TrainingWorkspace}
+ * holds the intermediate arrays (weighted inputs, activations and errors for each layer) and
+ * buffers to hold the inputs and expected outputs of a single item, all sized from the layer
+ * sizes of the network, so that once it has been created training does not need to allocate any
+ * further storage.
+ *
+ * <p>A workspace is not thread-safe; each thread performing back-propagation must use its own
+ * workspace.</p>
+ *
+ * @author  Peter Wall
+ */
+class TrainingWorkspace extends GradientWorkspace {
+
+    final double[][] activations;
+    final double[][] zs;
+    final double[][] deltas;
+    final double[] inputs;
+    final double[] expected;
+
+    /**
+     * Construct a {@code TrainingWorkspace} for a network with the supplied layer sizes.
+     *
+     * @param   layerSizes      the layer sizes (including the input layer)
+     */
+    TrainingWorkspace(int ... layerSizes) {
+        super(layerSizes);
+        int numHiddens = layerSizes.length - 1;
+        activations = new double[numHiddens + 1][];
+        zs = new double[numHiddens][];
+        deltas = new double[numHiddens][];
+        for (int i = 0; i < numHiddens; i++) {
+            int size = layerSizes[i + 1];
+            activations[i + 1] = new double[size];
+            zs[i] = new double[size];
+            deltas[i] = new double[size];
+        }
+        inputs = new double[layerSizes[0]];
+        expected = new double[layerSizes[numHiddens]];
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * @(#) FlightRecorderEvents.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Events for the JDK Flight Recorder.  Each {@code begin} function returns an object
+ * representing the event (or {@code null} if the event is not enabled), which is passed to the
+ * corresponding {@code end} function along with the details to be recorded.  Each event
+ * records the layer sizes of the network, the batch size and the number of samples processed.
+ *
+ * <p>This is the Java 11 form of the class, included in the multi-release jar.  Whether an
+ * event is enabled is checked on a single shared instance of the event class, so no event
+ * object is created when the event is not being recorded.  The back-propagation and inference
+ * events can occur for every item, so they are not enabled by default; they may be enabled in
+ * the recording settings (for example, {@code net.pwall.neural.Inference#enabled=true}).</p>
+ *
+ * @author  Peter Wall
+ */
+final class FlightRecorderEvents {
+
+    private static final EpochEvent epochProbe = new EpochEvent();
+    private static final MiniBatchEvent miniBatchProbe = new MiniBatchEvent();
+    private static final BackPropEvent backPropProbe = new BackPropEvent();
+    private static final EvaluateEvent evaluateProbe = new EvaluateEvent();
+    private static final InferenceEvent inferenceProbe = new InferenceEvent();
+
+    private FlightRecorderEvents() {
+    }
+
+    static Object beginEpoch() {
+        if (!epochProbe.isEnabled())
+            return null;
+        EpochEvent event = new EpochEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endEpoch(Object event, int[] layerSizes, int epoch, int batchSize,
+            long samples) {
+        if (event != null) {
+            EpochEvent epochEvent = (EpochEvent)event;
+            epochEvent.end();
+            if (epochEvent.shouldCommit()) {
+                epochEvent.set(layerSizes, batchSize, samples);
+                epochEvent.epoch = epoch;
+                epochEvent.commit();
+            }
+        }
+    }
+
+    static Object beginMiniBatch() {
+        if (!miniBatchProbe.isEnabled())
+            return null;
+        MiniBatchEvent event = new MiniBatchEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endMiniBatch(Object event, int[] layerSizes, int epoch, int samples) {
+        if (event != null) {
+            MiniBatchEvent miniBatchEvent = (MiniBatchEvent)event;
+            miniBatchEvent.end();
+            if (miniBatchEvent.shouldCommit()) {
+                miniBatchEvent.set(layerSizes, samples, samples);
+                miniBatchEvent.epoch = epoch;
+                miniBatchEvent.commit();
+            }
+        }
+    }
+
+    static Object beginBackProp() {
+        if (!backPropProbe.isEnabled())
+            return null;
+        BackPropEvent event = new BackPropEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endBackProp(Object event, int[] layerSizes, int samples) {
+        if (event != null) {
+            BackPropEvent backPropEvent = (BackPropEvent)event;
+            backPropEvent.end();
+            if (backPropEvent.shouldCommit()) {
+                backPropEvent.set(layerSizes, samples, samples);
+                backPropEvent.commit();
+            }
+        }
+    }
+
+    static Object beginEvaluate() {
+        if (!evaluateProbe.isEnabled())
+            return null;
+        EvaluateEvent event = new EvaluateEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endEvaluate(Object event, Predictor predictor, int samples, int correct) {
+        if (event != null) {
+            EvaluateEvent evaluateEvent = (EvaluateEvent)event;
+            evaluateEvent.end();
+            if (evaluateEvent.shouldCommit()) {
+                evaluateEvent.set(predictor.getLayerSizes(), 1, samples);
+                evaluateEvent.correct = correct;
+                evaluateEvent.commit();
+            }
+        }
+    }
+
+    static Object beginInference() {
+        if (!inferenceProbe.isEnabled())
+            return null;
+        InferenceEvent event = new InferenceEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endInference(Object event, Predictor predictor, int[] layerSizes,
+            int batchSize) {
+        if (event != null) {
+            InferenceEvent inferenceEvent = (InferenceEvent)event;
+            inferenceEvent.end();
+            if (inferenceEvent.shouldCommit()) {
+                inferenceEvent.set(layerSizes, batchSize, batchSize);
+                inferenceEvent.predictor = predictor.getClass();
+                inferenceEvent.commit();
+            }
+        }
+    }
+
+    @Category({ "Neural Network" })
+    @StackTrace(false)
+    abstract static class NetworkEvent extends Event {
+
+        @Label("Layer Sizes")
+        @Description("The sizes of the layers of the network, including the input layer")
+        String layerSizes;
+
+        @Label("Batch Size")
+        int batchSize;
+
+        @Label("Samples")
+        @Description("The number of items processed")
+        long samples;
+
+        void set(int[] layerSizes, int batchSize, long samples) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < layerSizes.length; i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append(layerSizes[i]);
+            }
+            this.layerSizes = sb.toString();
+            this.batchSize = batchSize;
+            this.samples = samples;
+        }
+
+    }
+
+    @Name("net.pwall.neural.Epoch")
+    @Label("Training Epoch")
+    static class EpochEvent extends NetworkEvent {
+
+        @Label("Epoch")
+        int epoch;
+
+    }
+
+    @Name("net.pwall.neural.MiniBatch")
+    @Label("Training Mini-Batch")
+    @Description("Back-propagation and weight update for a mini-batch")
+    static class MiniBatchEvent extends NetworkEvent {
+
+        @Label("Epoch")
+        int epoch;
+
+    }
+
+    @Name("net.pwall.neural.BackProp")
+    @Label("Back-Propagation")
+    @Enabled(false)
+    static class BackPropEvent extends NetworkEvent {
+    }
+
+    @Name("net.pwall.neural.Evaluate")
+    @Label("Evaluation")
+    static class EvaluateEvent extends NetworkEvent {
+
+        @Label("Correct")
+        @Description("The number of items for which the network gave the expected class")
+        int correct;
+
+    }
+
+    @Name("net.pwall.neural.Inference")
+    @Label("Inference")
+    @Enabled(false)
+    static class InferenceEvent extends NetworkEvent {
+
+        @Label("Predictor")
+        Class<?> predictor;
+
+    }
+
+}
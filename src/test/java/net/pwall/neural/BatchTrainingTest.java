@@ -0,0 +1,89 @@
+/*
+ * @(#) BatchTrainingTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static net.pwall.neural.SyntheticData.assertParametersEqual;
+
+/**
+ * Tests that batched back-propagation (matrix-matrix products over a packed mini-batch) gives
+ * the same results as back-propagation of one item at a time.
+ *
+ * @author  Peter Wall
+ */
+public class BatchTrainingTest {
+
+    private static final int[] layerSizes = { 6, 12, 8, 4 };
+    private static final int miniBatchSize = 10;
+    private static final double delta = 1e-9;
+
+    @Test
+    public void shouldMatchPerSampleUpdateForUnlabelledData() {
+        TrainingDataSource data = SyntheticData.unlabelled(11, 95, layerSizes[0],
+                layerSizes[layerSizes.length - 1]);
+        Network perSample = SyntheticData.network(1, layerSizes);
+        Network batched = SyntheticData.network(1, layerSizes);
+        MiniBatch miniBatch = new MiniBatch(miniBatchSize, layerSizes[0],
+                layerSizes[layerSizes.length - 1]);
+        BatchWorkspace ws = new BatchWorkspace(miniBatchSize, layerSizes);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            for (int k = 0; k < data.getSize(); k += miniBatchSize) {
+                int n = Math.min(miniBatchSize, data.getSize() - k);
+                perSample.updateMiniBatch(new TrainingDataSubset(data, k, n), 0.5);
+                miniBatch.fill(data, k, n);
+                batched.updateMiniBatch(miniBatch, ws, 0.5);
+            }
+        }
+        assertParametersEqual(perSample, batched, layerSizes.length, delta);
+    }
+
+    @Test
+    public void shouldMatchPerSampleTrainingForLabelledData() {
+        PackedTrainingDataSet data = SyntheticData.labelled(12, 203, layerSizes[0],
+                layerSizes[layerSizes.length - 1]);
+        Network perSample = labelledNetwork();
+        Network batched = labelledNetwork();
+        perSample.train(data).epochs(4).miniBatchSize(miniBatchSize).eta(0.1).
+                random(new Random(5)).optimizer(new Optimizer.Momentum(0.9)).logging(false).go();
+        batched.train(data).epochs(4).miniBatchSize(miniBatchSize).eta(0.1).
+                random(new Random(5)).optimizer(new Optimizer.Momentum(0.9)).batched(true).
+                logging(false).go();
+        assertParametersEqual(perSample, batched, layerSizes.length, delta);
+    }
+
+    private static Network labelledNetwork() {
+        Network network = SyntheticData.network(2, layerSizes);
+        network.setActivation(1, Activation.RELU);
+        network.setActivation(2, Activation.TANH);
+        network.setActivation(3, Activation.SOFTMAX);
+        network.setCost(Cost.LOG_LIKELIHOOD);
+        return network;
+    }
+
+}
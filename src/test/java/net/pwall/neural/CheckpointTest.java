@@ -0,0 +1,106 @@
+/*
+ * @(#) CheckpointTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the early stopping state saved in a {@link Checkpoint}, and resumption from it.
+ *
+ * @author  Peter Wall
+ */
+public class CheckpointTest {
+
+    private static final int[] layerSizes = { 6, 10, 3 };
+
+    @Test
+    public void shouldSaveBestNetworkWithoutRestoreBest() throws IOException {
+        Path path = Files.createTempFile("checkpoint", ".nncp");
+        try {
+            PackedTrainingDataSet data = SyntheticData.labelled(11, 120, 6, 3);
+            PackedTrainingDataSet testData = SyntheticData.labelled(12, 30, 6, 3);
+            Network network = SyntheticData.network(7, layerSizes);
+            // a constant score, so the first epoch remains the best
+            Network.Trainer trainer = network.train(data).testData(testData).epochs(3).
+                    miniBatchSize(10).eta(0.5).random(new Random(1)).
+                    earlyStopping(10, result -> 0.0).restoreBest(false).checkpoint(path, 1);
+            trainer.go();
+            assertEquals(1, trainer.getBestEpoch());
+            Checkpoint checkpoint = Checkpoint.load(path);
+            assertEquals(3, checkpoint.getEpoch());
+            assertEquals(1, checkpoint.getBestEpoch());
+            FrozenNetwork best = checkpoint.getBest();
+            assertNotNull(best);
+            Network resumed = SyntheticData.network(8, layerSizes);
+            resumed.train(data).testData(testData).epochs(5).miniBatchSize(10).eta(0.5).
+                    random(new Random(2)).earlyStopping(10, result -> 0.0).resume(checkpoint).
+                    go();
+            for (int i = 1; i < layerSizes.length; i++) {
+                HiddenLayer layer = (HiddenLayer)resumed.getLayer(i);
+                assertArrayEquals(best.getBiases(i), layer.getBiases(), 0.0);
+                assertArrayEquals(best.getWeights(i), layer.getWeightsArray(), 0.0);
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRejectResumeWithOptimizerState() throws IOException {
+        Path path = Files.createTempFile("checkpoint", ".nncp");
+        try {
+            PackedTrainingDataSet data = SyntheticData.labelled(13, 60, 6, 3);
+            Network network = SyntheticData.network(9, layerSizes);
+            network.train(data).epochs(1).miniBatchSize(10).eta(0.5).random(new Random(3)).
+                    checkpoint(path, 1).go();
+            Checkpoint checkpoint = Checkpoint.load(path);
+            Network resumed = SyntheticData.network(9, layerSizes);
+            try {
+                resumed.train(data).epochs(2).optimizer(new Optimizer.Momentum(0.9)).
+                        resume(checkpoint).go();
+                fail("IllegalArgumentException expected");
+            }
+            catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+}
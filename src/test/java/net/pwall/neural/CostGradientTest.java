@@ -0,0 +1,126 @@
+/*
+ * @(#) CostGradientTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the output error calculated by each {@link Cost} with each {@link Activation} against a
+ * finite-difference approximation of the gradient of the cost with respect to the weighted
+ * inputs.
+ *
+ * @author  Peter Wall
+ */
+public class CostGradientTest {
+
+    private static final int length = 4;
+    private static final int offset = 3;
+    private static final double[] weightedInputs = { 0.15, 0.8, 0.35, 0.6 };
+    private static final double[] expected = { 0.0, 0.1, 0.6, 0.3, 0.0 };
+    private static final int yOffset = 1;
+    private static final int label = 1;
+    private static final double h = 1.0e-6;
+
+    @Test
+    public void shouldMatchFiniteDifferences() {
+        for (Cost cost : Cost.values()) {
+            for (Activation activation : Activation.values()) {
+                // the table-based approximations are piecewise linear, so their derivatives
+                // are only approximately those of the functions they approximate
+                double tolerance = activation == Activation.FAST_SIGMOID ||
+                        activation == Activation.FAST_TANH ? 1.0e-2 : 1.0e-6;
+                checkGradient(cost, activation, false, tolerance);
+                checkGradient(cost, activation, true, tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void shouldGiveFiniteGradientWhenSaturated() {
+        double[][] saturated = { { 800.0, 0.0, 0.0, 0.0 }, { -800.0, 0.0, 800.0, -1.0 },
+                { 40.0, -40.0, 0.0, -800.0 } };
+        for (Cost cost : Cost.values()) {
+            for (Activation activation : Activation.values()) {
+                for (double[] zs : saturated) {
+                    double[] z = place(zs);
+                    double[] a = new double[offset + length];
+                    activation.forward(z, a, offset, length);
+                    double[] delta = new double[offset + length];
+                    cost.outputError(activation, z, a, expected, yOffset, delta, offset, length);
+                    assertFinite(cost, activation, delta);
+                    cost.outputError(activation, z, a, label, delta, offset, length);
+                    assertFinite(cost, activation, delta);
+                }
+            }
+        }
+    }
+
+    private static void checkGradient(Cost cost, Activation activation, boolean labelled,
+            double tolerance) {
+        double[] z = place(weightedInputs);
+        double[] a = new double[offset + length];
+        activation.forward(z, a, offset, length);
+        double[] delta = new double[offset + length];
+        if (labelled)
+            cost.outputError(activation, z, a, label, delta, offset, length);
+        else
+            cost.outputError(activation, z, a, expected, yOffset, delta, offset, length);
+        for (int i = 0; i < length; i++) {
+            double saved = z[offset + i];
+            z[offset + i] = saved + h;
+            double plus = cost(cost, activation, z, labelled);
+            z[offset + i] = saved - h;
+            double minus = cost(cost, activation, z, labelled);
+            z[offset + i] = saved;
+            double numeric = (plus - minus) / (2.0 * h);
+            assertEquals(cost + " " + activation + (labelled ? " labelled" : "") + " [" + i + "]",
+                    numeric, delta[offset + i], tolerance * Math.max(1.0, Math.abs(numeric)));
+        }
+    }
+
+    private static double cost(Cost cost, Activation activation, double[] z, boolean labelled) {
+        double[] a = new double[offset + length];
+        activation.forward(z, a, offset, length);
+        return labelled ? cost.cost(a, offset, label, length) :
+                cost.cost(a, offset, expected, yOffset, length);
+    }
+
+    private static double[] place(double[] values) {
+        double[] result = new double[offset + length];
+        System.arraycopy(values, 0, result, offset, length);
+        return result;
+    }
+
+    private static void assertFinite(Cost cost, Activation activation, double[] delta) {
+        for (int i = 0; i < length; i++)
+            assertTrue(cost + " " + activation + " [" + i + "]",
+                    Double.isFinite(delta[offset + i]));
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * @(#) FloatNetworkTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a {@link FloatNetwork} converted from a {@link Network} gives the same outputs as
+ * the original, and is trained in the same way, to single precision.
+ *
+ * @author  Peter Wall
+ */
+public class FloatNetworkTest {
+
+    private static final int[] layerSizes = { 20, 16, 7, 5 };
+    private static final int count = 9;
+
+    @Test
+    public void shouldGiveSameOutputsAsConvertedNetwork() {
+        Network network = SyntheticData.network(17, layerSizes);
+        network.setActivation(1, Activation.RELU);
+        network.setActivation(2, Activation.TANH);
+        network.setActivation(3, Activation.SOFTMAX);
+        FloatNetwork floatNetwork = new FloatNetwork(network);
+        for (int i = 1; i < layerSizes.length; i++)
+            assertSame(((HiddenLayer)network.getLayer(i)).getActivation(),
+                    floatNetwork.getLayer(i).getActivation());
+        double[] inputs = randomInputs(new Random(18));
+        int outputSize = layerSizes[layerSizes.length - 1];
+        double[] batchOutputs = floatNetwork.predictBatch(inputs, 0, count,
+                floatNetwork.newBatchInferenceContext(count)).clone();
+        InferenceContext context = network.newInferenceContext();
+        InferenceContext floatContext = floatNetwork.newInferenceContext();
+        for (int m = 0; m < count; m++) {
+            double[] row = new double[layerSizes[0]];
+            System.arraycopy(inputs, m * row.length, row, 0, row.length);
+            double[] expected = network.predict(row, context);
+            assertArrayEquals(expected, floatNetwork.predict(row, floatContext), 1.0e-5);
+            double[] actual = new double[outputSize];
+            System.arraycopy(batchOutputs, m * outputSize, actual, 0, outputSize);
+            assertArrayEquals(expected, actual, 1.0e-5);
+        }
+    }
+
+    @Test
+    public void shouldTrainLikeNetworkWithSameConfiguration() {
+        int[] sizes = { 6, 12, 4 };
+        PackedTrainingDataSet data = SyntheticData.labelled(23, 150, sizes[0], sizes[2]);
+        Network network = SyntheticData.network(24, sizes);
+        network.setActivation(1, Activation.RELU);
+        network.setActivation(2, Activation.SOFTMAX);
+        FloatNetwork floatNetwork = new FloatNetwork(network);
+        network.train(data).epochs(3).miniBatchSize(10).eta(0.1).random(new Random(25)).
+                batched(true).parallelism(2).deterministic(true).cost(Cost.LOG_LIKELIHOOD).
+                optimizer(new Optimizer.Momentum(0.9)).go();
+        floatNetwork.train(data).epochs(3).miniBatchSize(10).eta(0.1).random(new Random(25)).
+                parallelism(2).deterministic(true).cost(Cost.LOG_LIKELIHOOD).
+                optimizer(new Optimizer.Momentum(0.9)).go();
+        for (int i = 1; i < sizes.length; i++) {
+            HiddenLayer expected = (HiddenLayer)network.getLayer(i);
+            FloatHiddenLayer actual = floatNetwork.getLayer(i);
+            assertArrayEquals(expected.getBiases(), toDouble(actual.getBiases()), 1.0e-4);
+            assertArrayEquals(expected.getWeightsArray(), toDouble(actual.getWeightsArray()),
+                    1.0e-4);
+        }
+    }
+
+    @Test
+    public void shouldGiveSameResultWithAnyParallelism() {
+        int[] sizes = { 8, 10, 3 };
+        PackedTrainingDataSet data = SyntheticData.labelled(27, 120, sizes[0], sizes[2]);
+        FloatNetwork expected = new FloatNetwork(SyntheticData.network(28, sizes));
+        expected.train(data).epochs(2).miniBatchSize(16).eta(0.5).random(new Random(29)).
+                deterministic(true).go();
+        FloatNetwork actual = new FloatNetwork(SyntheticData.network(28, sizes));
+        actual.train(data).epochs(2).miniBatchSize(16).eta(0.5).random(new Random(29)).
+                deterministic(true).parallelism(3).go();
+        for (int i = 1; i < sizes.length; i++) {
+            assertArrayEquals(expected.getLayer(i).getBiases(), actual.getLayer(i).getBiases(),
+                    0.0f);
+            assertArrayEquals(expected.getLayer(i).getWeightsArray(),
+                    actual.getLayer(i).getWeightsArray(), 0.0f);
+        }
+    }
+
+    @Test
+    public void shouldRejectTrainingDataOfWrongSize() {
+        FloatNetwork floatNetwork = new FloatNetwork(SyntheticData.network(30, 6, 8, 3));
+        FloatTrainingDataSet data = new FloatTrainingDataSet(SyntheticData.labelled(31, 20, 5,
+                3));
+        try {
+            floatNetwork.train(data).epochs(1).go();
+            fail("IllegalArgumentException expected");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldReportEachEpochToListener() {
+        int[] sizes = { 4, 5, 2 };
+        PackedTrainingDataSet data = SyntheticData.labelled(33, 12, sizes[0], sizes[2]);
+        FloatNetwork floatNetwork = new FloatNetwork(SyntheticData.network(34, sizes));
+        int[] counts = new int[3];
+        // more than the 200 epochs previously allowed
+        floatNetwork.train(data).testData(data).epochs(201).miniBatchSize(5).
+                random(new Random(35)).logging(false).listener(new TrainingListener() {
+                    @Override
+                    public void trainingStarted(Predictor network, int epochs) {
+                        assertSame(floatNetwork, network);
+                        assertEquals(201, epochs);
+                        counts[0]++;
+                    }
+                    @Override
+                    public void miniBatchCompleted(TrainingMetrics metrics) {
+                        counts[1]++;
+                    }
+                    @Override
+                    public void epochCompleted(TrainingMetrics metrics) {
+                        assertEquals(++counts[2], metrics.getEpoch());
+                        assertEquals(12, metrics.getSamples());
+                        assertNotNull(metrics.getEvaluation());
+                    }
+                }).go();
+        assertEquals(1, counts[0]);
+        assertEquals(201 * 3, counts[1]);
+        assertEquals(201, counts[2]);
+    }
+
+    private static double[] toDouble(float[] array) {
+        double[] result = new double[array.length];
+        for (int i = 0; i < array.length; i++)
+            result[i] = array[i];
+        return result;
+    }
+
+    private static double[] randomInputs(Random r) {
+        double[] inputs = new double[count * layerSizes[0]];
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = r.nextDouble();
+        return inputs;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * @(#) HiddenLayerTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that an override of the deprecated {@link HiddenLayer#activation(double)} is still used
+ * by the forward pass of the layer.
+ *
+ * @author  Peter Wall
+ */
+public class HiddenLayerTest {
+
+    private static final double[] inputs = { 0.5, -1.0, 2.0, 0.25, -0.75, 1.5 };
+
+    @Test
+    public void shouldUseActivationOverride() {
+        HiddenLayer original = new HiddenLayer(new InputLayer(3), 2);
+        original.init(new Random(5));
+        HiddenLayer custom = new HiddenLayer(new InputLayer(3), original) {
+            @Override
+            @SuppressWarnings("deprecation")
+            public double activation(double d) {
+                return 2.0 * d;
+            }
+        };
+        double[] outputs = new double[2];
+        custom.forward(inputs, outputs);
+        double[] batchOutputs = new double[4];
+        custom.forwardBatch(inputs, 0, 2, batchOutputs);
+        for (int m = 0; m < 2; m++)
+            for (int i = 0; i < 2; i++)
+                assertEquals(2.0 * weightedInput(original, m * 3, i), batchOutputs[m * 2 + i],
+                        1e-12);
+        assertEquals(batchOutputs[0], outputs[0], 1e-12);
+        assertEquals(batchOutputs[1], outputs[1], 1e-12);
+    }
+
+    @Test
+    public void shouldUseActivationFunctionWithoutOverride() {
+        HiddenLayer layer = new HiddenLayer(new InputLayer(3), 2);
+        layer.init(new Random(5));
+        layer.setActivation(Activation.TANH);
+        double[] outputs = new double[2];
+        layer.forward(inputs, outputs);
+        for (int i = 0; i < 2; i++)
+            assertEquals(Math.tanh(weightedInput(layer, 0, i)), outputs[i], 1e-12);
+    }
+
+    private static double weightedInput(HiddenLayer layer, int offset, int neuron) {
+        double[] weights = layer.getWeightsArray();
+        double z = layer.getBiases()[neuron];
+        for (int j = 0; j < 3; j++)
+            z += weights[neuron * 3 + j] * inputs[offset + j];
+        return z;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * @(#) IDXFileTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link IDXFile}, using small generated files of each element type.
+ *
+ * @author  Peter Wall
+ */
+public class IDXFileTest {
+
+    private static final int numRecords = 7;
+    private static final int rows = 3;
+    private static final int cols = 5;
+
+    private final Random random = new Random(41);
+
+    @Test
+    public void shouldReadEachElementType() throws IOException {
+        for (IDXFile.ElementType type : IDXFile.ElementType.values()) {
+            double[] values = values(type, numRecords * rows * cols);
+            Path path = write(type, values, numRecords, rows, cols);
+            try {
+                // the default chunk size, and chunks smaller than a record and than the file
+                check(new IDXFile(path), type, values);
+                check(new IDXFile(path, 1), type, values);
+                check(new IDXFile(path, 2 * rows * cols * type.getSize()), type, values);
+            }
+            finally {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectIncorrectMagicNumber() throws IOException {
+        Path path = write(IDXFile.ElementType.UBYTE, new double[4], 4);
+        try {
+            byte[] data = Files.readAllBytes(path);
+            data[0] = 1;
+            Files.write(path, data);
+            expectIOException(path);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRejectFileTooShort() throws IOException {
+        Path path = write(IDXFile.ElementType.INT, new double[6], 2, 3);
+        try {
+            byte[] data = Files.readAllBytes(path);
+            byte[] truncated = new byte[data.length - 1];
+            System.arraycopy(data, 0, truncated, 0, truncated.length);
+            Files.write(path, truncated);
+            expectIOException(path);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    private void check(IDXFile file, IDXFile.ElementType type, double[] values) {
+        int recordSize = rows * cols;
+        assertSame(type, file.getElementType());
+        assertArrayEquals(new int[] { numRecords, rows, cols }, file.getDimensions());
+        assertEquals(numRecords, file.getNumRecords());
+        assertEquals(recordSize, file.getRecordSize());
+        double[] record = new double[recordSize + 1];
+        byte[] bytes = new byte[recordSize];
+        for (int i = 0; i < numRecords; i++) {
+            assertEquals(recordSize, file.copyRecord(i, record, 1, 0.5));
+            for (int j = 0; j < recordSize; j++) {
+                double expected = values[i * recordSize + j];
+                assertEquals(expected, file.getValue(i, j), 0.0);
+                assertEquals((int)expected, file.getInt(i, j));
+                assertEquals(expected * 0.5, record[1 + j], 0.0);
+            }
+            if (type == IDXFile.ElementType.UBYTE || type == IDXFile.ElementType.BYTE) {
+                assertEquals(recordSize, file.copyRecord(i, bytes, 0));
+                for (int j = 0; j < recordSize; j++)
+                    assertEquals((int)values[i * recordSize + j],
+                            type == IDXFile.ElementType.UBYTE ? bytes[j] & 0xFF : bytes[j]);
+            }
+        }
+    }
+
+    private double[] values(IDXFile.ElementType type, int n) {
+        double[] result = new double[n];
+        for (int i = 0; i < n; i++) {
+            switch (type) {
+            case UBYTE:
+                result[i] = random.nextInt(256);
+                break;
+            case BYTE:
+                result[i] = random.nextInt(256) - 128;
+                break;
+            case SHORT:
+                result[i] = random.nextInt(65536) - 32768;
+                break;
+            case INT:
+                result[i] = random.nextInt();
+                break;
+            case FLOAT:
+                result[i] = (float)(random.nextGaussian() * 1000.0);
+                break;
+            case DOUBLE:
+                result[i] = random.nextGaussian() * 1000.0;
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static Path write(IDXFile.ElementType type, double[] values, int ... dimensions)
+            throws IOException {
+        Path path = Files.createTempFile("idx", ".idx");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeShort(0);
+            out.writeByte(type.getCode());
+            out.writeByte(dimensions.length);
+            for (int dimension : dimensions)
+                out.writeInt(dimension);
+            for (double value : values) {
+                switch (type) {
+                case UBYTE:
+                case BYTE:
+                    out.writeByte((int)value);
+                    break;
+                case SHORT:
+                    out.writeShort((int)value);
+                    break;
+                case INT:
+                    out.writeInt((int)value);
+                    break;
+                case FLOAT:
+                    out.writeFloat((float)value);
+                    break;
+                case DOUBLE:
+                    out.writeDouble(value);
+                    break;
+                }
+            }
+        }
+        return path;
+    }
+
+    private static void expectIOException(Path path) {
+        try {
+            new IDXFile(path);
+            fail("IOException expected");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+}
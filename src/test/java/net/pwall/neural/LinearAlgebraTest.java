@@ -0,0 +1,167 @@
+/*
+ * @(#) LinearAlgebraTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests of the blocked and tiled {@link LinearAlgebra} kernels against the simple "triple loop"
+ * forms, with dimensions chosen to exercise the edges of the blocks and tiles.
+ *
+ * @author  Peter Wall
+ */
+public class LinearAlgebraTest {
+
+    private static final int[][] dimensions = {
+            { 1, 1, 1 }, { 1, 7, 3 }, { 2, 4, 5 }, { 3, 5, 300 }, { 7, 67, 260 },
+            { 5, 513, 129 }, { 4, 3, 0 }
+    };
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void shouldCalculateGemmNT() {
+        for (int[] d : dimensions) {
+            int m = d[0], n = d[1], k = d[2];
+            double[] a = random(m * k + 1);
+            // the second operand is rounded to float precision so that both forms can be checked
+            double[] b = roundToFloat(random(n * k + 2));
+            double[] expected = random(m * n + 3);
+            double[] c = expected.clone();
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    double sum = 0.0;
+                    for (int p = 0; p < k; p++)
+                        sum += a[1 + i * k + p] * b[2 + j * k + p];
+                    expected[3 + i * n + j] = sum;
+                }
+            }
+            LinearAlgebra.gemmNT(m, n, k, a, 1, b, 2, c, 3);
+            assertArrayEquals(expected, c, 0.0);
+            LinearAlgebra.gemmNT(m, n, k, a, 1, toFloat(b), 2, c, 3);
+            assertArrayEquals(expected, c, 0.0);
+        }
+    }
+
+    @Test
+    public void shouldCalculateGemmNN() {
+        for (int[] d : dimensions) {
+            int m = d[0], n = d[1], k = d[2];
+            double[] a = random(m * k + 1);
+            double[] b = roundToFloat(random(k * n + 2));
+            double[] expected = random(m * n + 3);
+            double[] c = expected.clone();
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    double sum = 0.0;
+                    for (int p = 0; p < k; p++)
+                        sum += a[1 + i * k + p] * b[2 + p * n + j];
+                    expected[3 + i * n + j] = sum;
+                }
+            }
+            LinearAlgebra.gemmNN(m, n, k, a, 1, b, 2, c, 3);
+            assertArrayEquals(expected, c, 0.0);
+            LinearAlgebra.gemmNN(m, n, k, a, 1, toFloat(b), 2, c, 3);
+            assertArrayEquals(expected, c, 0.0);
+        }
+    }
+
+    @Test
+    public void shouldCalculateGemmTNAdd() {
+        for (int[] d : dimensions) {
+            int m = d[0], n = d[1], k = d[2];
+            double[] a = random(k * m);
+            double[] b = random(k * n);
+            double[] expected = random(m * n);
+            double[] c = expected.clone();
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    double sum = expected[i * n + j];
+                    for (int p = 0; p < k; p++)
+                        sum += a[p * m + i] * b[p * n + j];
+                    expected[i * n + j] = sum;
+                }
+            }
+            LinearAlgebra.gemmTNAdd(m, n, k, a, b, c);
+            assertArrayEquals(expected, c, 0.0);
+        }
+    }
+
+    @Test
+    public void shouldCalculateGemvAndGer() {
+        for (int[] d : dimensions) {
+            int m = d[1], n = d[2];
+            double[] a = random(m * n);
+            double[] x = random(n);
+            double[] y = new double[m];
+            double[] expected = new double[m];
+            for (int i = 0; i < m; i++)
+                for (int j = 0; j < n; j++)
+                    expected[i] += a[i * n + j] * x[j];
+            LinearAlgebra.gemv(m, n, a, 0, x, 0, y, 0);
+            assertArrayEquals(expected, y, 0.0);
+            double[] u = random(m);
+            double[] updated = a.clone();
+            double[] expectedUpdate = a.clone();
+            for (int i = 0; i < m; i++)
+                for (int j = 0; j < n; j++)
+                    expectedUpdate[i * n + j] += u[i] * x[j];
+            LinearAlgebra.ger(m, n, u, 0, x, 0, updated, 0);
+            assertArrayEquals(expectedUpdate, updated, 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectArrayTooSmall() {
+        LinearAlgebra.gemmNT(2, 3, 4, new double[8], new double[11], new double[6]);
+    }
+
+    private double[] random(int length) {
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++)
+            result[i] = random.nextDouble() - 0.5;
+        return result;
+    }
+
+    private static double[] roundToFloat(double[] array) {
+        for (int i = 0; i < array.length; i++)
+            array[i] = (float)array[i];
+        return array;
+    }
+
+    private static float[] toFloat(double[] array) {
+        float[] result = new float[array.length];
+        for (int i = 0; i < array.length; i++)
+            result[i] = (float)array[i];
+        return result;
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * @(#) ModelFileTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the saving of networks with {@link ModelFile}, and the loading and memory-mapping of
+ * the saved files (including the rejection of invalid files, and the reading of version 1
+ * files).
+ *
+ * @author  Peter Wall
+ */
+public class ModelFileTest {
+
+    private static final int[] layerSizes = { 12, 9, 6, 4 };
+
+    @Test
+    public void shouldRoundTripNetworkWithActivations() throws IOException {
+        Network network = SyntheticData.network(31, layerSizes);
+        network.setActivation(1, Activation.RELU);
+        network.setActivation(2, Activation.TANH);
+        network.setActivation(3, Activation.SOFTMAX);
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            ModelFile.save(network, path);
+            assertEquals(ModelFile.fileSize(layerSizes), Files.size(path));
+            MappedNetwork mapped = ModelFile.map(path);
+            Network loaded = ModelFile.load(path);
+            assertArrayEquals(layerSizes, mapped.getLayerSizes());
+            assertArrayEquals(layerSizes, loaded.getLayerSizes());
+            for (int i = 1; i < layerSizes.length; i++) {
+                HiddenLayer layer = (HiddenLayer)network.getLayer(i);
+                HiddenLayer loadedLayer = (HiddenLayer)loaded.getLayer(i);
+                assertSame(layer.getActivation(), mapped.getActivation(i));
+                assertSame(layer.getActivation(), loadedLayer.getActivation());
+                assertArrayEquals(layer.getBiases(), loadedLayer.getBiases(), 0.0);
+                assertArrayEquals(layer.getWeightsArray(), loadedLayer.getWeightsArray(), 0.0);
+            }
+            assertSameOutputs(network, mapped);
+            assertSameOutputs(network, loaded);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripFrozenNetwork() throws IOException {
+        Network network = SyntheticData.network(32, layerSizes);
+        network.setActivation(2, Activation.RELU);
+        FrozenNetwork frozen = network.freeze();
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            ModelFile.save(frozen, path);
+            assertSameOutputs(frozen, ModelFile.map(path));
+            assertSameOutputs(frozen, ModelFile.load(path));
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRejectIncorrectMagicNumber() throws IOException {
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            ModelFile.save(SyntheticData.network(33, layerSizes), path);
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[0] = 'X';
+            Files.write(path, bytes);
+            ModelFile.map(path, false);
+            fail("IOException expected");
+        }
+        catch (IOException e) {
+            assertEquals("Incorrect magic number: " + path, e.getMessage());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRejectIncorrectFileSize() throws IOException {
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            ModelFile.save(SyntheticData.network(34, layerSizes), path);
+            byte[] bytes = Files.readAllBytes(path);
+            Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+            try {
+                ModelFile.map(path, false);
+                fail("IOException expected");
+            }
+            catch (IOException e) {
+                assertEquals("File size does not match layer sizes: " + path, e.getMessage());
+            }
+            Files.write(path, Arrays.copyOf(bytes, bytes.length + 1));
+            try {
+                ModelFile.map(path, false);
+                fail("IOException expected");
+            }
+            catch (IOException e) {
+                assertEquals("File size does not match layer sizes: " + path, e.getMessage());
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldRejectCorruptedData() throws IOException {
+        Network network = SyntheticData.network(35, layerSizes);
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            ModelFile.save(network, path);
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[bytes.length / 2] ^= 0x10;
+            Files.write(path, bytes);
+            try {
+                ModelFile.map(path);
+                fail("IOException expected");
+            }
+            catch (IOException e) {
+                assertEquals("Checksum error: " + path, e.getMessage());
+            }
+            try {
+                ModelFile.load(path);
+                fail("IOException expected");
+            }
+            catch (IOException e) {
+                assertEquals("Checksum error: " + path, e.getMessage());
+            }
+            // without verification, the file is accepted
+            assertArrayEquals(layerSizes, ModelFile.map(path, false).getLayerSizes());
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void shouldReadVersion1File() throws IOException {
+        Network network = SyntheticData.network(36, layerSizes);
+        Path path = Files.createTempFile("model", ".nndl");
+        try {
+            Files.write(path, version1File(network));
+            MappedNetwork mapped = ModelFile.map(path);
+            Network loaded = ModelFile.load(path);
+            for (int i = 1; i < layerSizes.length; i++) {
+                assertSame(Activation.SIGMOID, mapped.getActivation(i));
+                assertSame(Activation.SIGMOID, ((HiddenLayer)loaded.getLayer(i)).getActivation());
+            }
+            assertSameOutputs(network, mapped);
+            assertSameOutputs(network, loaded);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Create the content of a version 1 model file (with no activation function codes) as
+     * described in {@link ModelFile}.
+     *
+     * @param   network     the network (with the default activation functions)
+     * @return  the content of the file
+     */
+    private static byte[] version1File(Network network) {
+        int numLayers = layerSizes.length;
+        int dataOffset = (12 + numLayers * 4 + 7) & ~7;
+        int size = dataOffset + 4;
+        for (int i = 1; i < numLayers; i++)
+            size += (layerSizes[i] * layerSizes[i - 1] + layerSizes[i]) * 8;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(ModelFile.magic).putInt(1).putInt(numLayers);
+        for (int layerSize : layerSizes)
+            buffer.putInt(layerSize);
+        buffer.position(dataOffset);
+        for (int i = 1; i < numLayers; i++) {
+            HiddenLayer layer = (HiddenLayer)network.getLayer(i);
+            for (double bias : layer.getBiases())
+                buffer.putDouble(bias);
+            for (double weight : layer.getWeightsArray())
+                buffer.putDouble(weight);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+        return buffer.array();
+    }
+
+    private static void assertSameOutputs(Predictor expected, Predictor actual) {
+        InferenceContext expectedContext = expected.newInferenceContext();
+        InferenceContext actualContext = actual.newInferenceContext();
+        Random r = new Random(37);
+        double[] inputs = new double[layerSizes[0]];
+        for (int n = 0; n < 10; n++) {
+            for (int i = 0; i < inputs.length; i++)
+                inputs[i] = r.nextDouble() * 2.0 - 1.0;
+            assertArrayEquals(expected.predict(inputs, expectedContext),
+                    actual.predict(inputs, actualContext), 0.0);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * @(#) ParallelGradientTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import static net.pwall.neural.SyntheticData.assertParametersEqual;
+
+/**
+ * Tests that deterministic data-parallel training gives exactly the same results regardless of
+ * the degree of parallelism.
+ *
+ * @author  Peter Wall
+ */
+public class ParallelGradientTest {
+
+    private static final int[] layerSizes = { 8, 16, 5 };
+
+    @Test
+    public void shouldGiveSameResultWithAnyParallelism() {
+        checkParallelism(false);
+    }
+
+    @Test
+    public void shouldGiveSameResultWithAnyParallelismBatched() {
+        checkParallelism(true);
+    }
+
+    @Test
+    public void shouldGiveSameResultWithSuppliedPool() {
+        PackedTrainingDataSet data = SyntheticData.labelled(21, 300, layerSizes[0],
+                layerSizes[layerSizes.length - 1]);
+        Network expected = train(data, 1, false);
+        Network actual = SyntheticData.network(3, layerSizes);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            actual.train(data).epochs(3).miniBatchSize(32).eta(1.0).random(new Random(4)).
+                    pool(pool).deterministic(true).logging(false).go();
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertParametersEqual(expected, actual, layerSizes.length, 0.0);
+    }
+
+    private static void checkParallelism(boolean batched) {
+        PackedTrainingDataSet data = SyntheticData.labelled(21, 300, layerSizes[0],
+                layerSizes[layerSizes.length - 1]);
+        Network expected = train(data, 1, batched);
+        for (int parallelism : new int[] { 2, 4 })
+            assertParametersEqual(expected, train(data, parallelism, batched), layerSizes.length,
+                    0.0);
+    }
+
+    private static Network train(TrainingDataSource data, int parallelism, boolean batched) {
+        Network network = SyntheticData.network(3, layerSizes);
+        network.train(data).epochs(3).miniBatchSize(32).eta(1.0).random(new Random(4)).
+                parallelism(parallelism).deterministic(true).batched(batched).logging(false).go();
+        return network;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * @(#) QuantizedNetworkTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the batched inference of a {@link QuantizedNetwork} gives exactly the same outputs
+ * as inference one item at a time.
+ *
+ * @author  Peter Wall
+ */
+public class QuantizedNetworkTest {
+
+    private static final int[] layerSizes = { 20, 13, 7, 5 };
+
+    @Test
+    public void shouldGiveSameOutputsBatched() {
+        Network network = SyntheticData.network(41, layerSizes);
+        network.setActivation(1, Activation.RELU);
+        network.setActivation(2, Activation.TANH);
+        network.setActivation(3, Activation.SOFTMAX);
+        QuantizedNetwork quantized = network.quantize();
+        // a batch that is not a multiple of the block size, at an offset in the inputs array
+        int count = 11;
+        int offset = 3;
+        int inputSize = layerSizes[0];
+        int outputSize = layerSizes[layerSizes.length - 1];
+        Random r = new Random(42);
+        double[] inputs = new double[offset + count * inputSize];
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = r.nextDouble() * 2.0 - 1.0;
+        BatchInferenceContext batchContext = quantized.newBatchInferenceContext(16);
+        double[] batchOutputs = quantized.predictBatch(inputs, offset, count, batchContext);
+        InferenceContext context = quantized.newInferenceContext();
+        double[] row = new double[inputSize];
+        double[] actual = new double[outputSize];
+        for (int m = 0; m < count; m++) {
+            System.arraycopy(inputs, offset + m * inputSize, row, 0, inputSize);
+            double[] expected = quantized.predict(row, context);
+            System.arraycopy(batchOutputs, m * outputSize, actual, 0, outputSize);
+            assertArrayEquals(expected, actual, 0.0);
+            assertEquals(Network.indexOfHighest(expected), batchContext.getClasses()[m]);
+        }
+        assertEquals(count, batchContext.getCount());
+    }
+
+}
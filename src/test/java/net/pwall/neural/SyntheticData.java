@@ -0,0 +1,140 @@
+/*
+ * @(#) SyntheticData.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Small seeded networks and synthetic training data for the unit tests.
+ *
+ * @author  Peter Wall
+ */
+class SyntheticData {
+
+    /**
+     * Create a network with the supplied layer sizes, with all layers initialised from a
+     * {@link Random} with the specified seed.
+     *
+     * @param   seed        the seed
+     * @param   layerSizes  the layer sizes
+     * @return  the network
+     */
+    static Network network(long seed, int ... layerSizes) {
+        Network network = new Network(layerSizes);
+        Random r = new Random(seed);
+        for (int i = 1; i < layerSizes.length; i++)
+            ((HiddenLayer)network.getLayer(i)).init(r);
+        return network;
+    }
+
+    /**
+     * Create a labelled data set, with random inputs and a label derived from the inputs.
+     *
+     * @param   seed        the seed
+     * @param   size        the number of items
+     * @param   inputSize   the number of inputs
+     * @param   outputSize  the number of outputs (and so of classes)
+     * @return  the data set
+     */
+    static PackedTrainingDataSet labelled(long seed, int size, int inputSize, int outputSize) {
+        Random r = new Random(seed);
+        double[] inputs = new double[size * inputSize];
+        int[] labels = new int[size];
+        for (int m = 0, k = 0; m < size; m++) {
+            double sum = 0.0;
+            for (int j = 0; j < inputSize; j++) {
+                double x = r.nextDouble();
+                inputs[k++] = x;
+                sum += x * (j + 1);
+            }
+            labels[m] = (int)(sum * outputSize / (inputSize * (inputSize + 1) / 2.0));
+        }
+        return new PackedTrainingDataSet(inputs, inputSize, labels, outputSize);
+    }
+
+    /**
+     * Create an unlabelled data set, with random inputs and expected outputs that are a smooth
+     * function of the inputs.
+     *
+     * @param   seed        the seed
+     * @param   size        the number of items
+     * @param   inputSize   the number of inputs
+     * @param   outputSize  the number of outputs
+     * @return  the data set
+     */
+    static TrainingDataSource unlabelled(long seed, int size, int inputSize, int outputSize) {
+        Random r = new Random(seed);
+        double[][] inputs = new double[size][inputSize];
+        double[][] outputs = new double[size][outputSize];
+        for (int m = 0; m < size; m++) {
+            for (int j = 0; j < inputSize; j++)
+                inputs[m][j] = r.nextDouble();
+            for (int j = 0; j < outputSize; j++)
+                outputs[m][j] = 0.5 + 0.5 * Math.sin(inputs[m][j % inputSize] * (j + 1));
+        }
+        return new TrainingDataSource() {
+            @Override
+            public TrainingData getItem(int index) {
+                return new TrainingData() {
+                    @Override
+                    public double[] getInputs() {
+                        return inputs[index];
+                    }
+                    @Override
+                    public double[] getOutputs() {
+                        return outputs[index];
+                    }
+                };
+            }
+            @Override
+            public int getSize() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Check that the weights and biases of two networks are equal, within a tolerance.
+     *
+     * @param   expected    the expected network
+     * @param   actual      the actual network
+     * @param   numLayers   the number of layers
+     * @param   delta       the tolerance
+     */
+    static void assertParametersEqual(Network expected, Network actual, int numLayers,
+            double delta) {
+        for (int i = 1; i < numLayers; i++) {
+            HiddenLayer e = (HiddenLayer)expected.getLayer(i);
+            HiddenLayer a = (HiddenLayer)actual.getLayer(i);
+            assertArrayEquals("biases of layer " + i, e.getBiases(), a.getBiases(), delta);
+            assertArrayEquals("weights of layer " + i, e.getWeightsArray(), a.getWeightsArray(),
+                    delta);
+        }
+    }
+
+}
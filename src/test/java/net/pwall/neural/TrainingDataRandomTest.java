@@ -0,0 +1,103 @@
+/*
+ * @(#) TrainingDataRandomTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the packed copy of the data in {@link TrainingDataRandom} is permuted along with
+ * the index.
+ *
+ * @author  Peter Wall
+ */
+public class TrainingDataRandomTest {
+
+    @Test
+    public void shouldPermuteLabelledPackedData() {
+        PackedTrainingDataSet data = SyntheticData.labelled(31, 57, 5, 3);
+        TrainingDataRandom packed = new TrainingDataRandom(data, true);
+        TrainingDataRandom unpacked = new TrainingDataRandom(data, false);
+        assertTrue(packed.isPacked());
+        for (int epoch = 0; epoch < 3; epoch++) {
+            packed.randomise(new Random(epoch));
+            unpacked.randomise(new Random(epoch));
+            checkSame(unpacked, packed, 5, 3);
+        }
+    }
+
+    @Test
+    public void shouldPermuteUnlabelledPackedData() {
+        TrainingDataSource data = SyntheticData.unlabelled(32, 41, 4, 6);
+        TrainingDataRandom packed = new TrainingDataRandom(data, true);
+        TrainingDataRandom unpacked = new TrainingDataRandom(data, false);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            packed.randomise(new Random(epoch));
+            unpacked.randomise(new Random(epoch));
+            checkSame(unpacked, packed, 4, 6);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPackingQuantizedData() {
+        new TrainingDataRandom(new QuantizedTrainingDataSet(SyntheticData.labelled(33, 10, 4, 2)),
+                true);
+    }
+
+    private static void checkSame(TrainingDataRandom expected, TrainingDataRandom actual,
+            int inputSize, int outputSize) {
+        int size = expected.getSize();
+        double[] expectedInputs = new double[inputSize];
+        double[] actualInputs = new double[inputSize];
+        double[] expectedOutputs = new double[outputSize];
+        double[] actualOutputs = new double[outputSize];
+        for (int i = 0; i < size; i++) {
+            expected.copyInputs(i, expectedInputs, 0);
+            actual.copyInputs(i, actualInputs, 0);
+            assertArrayEquals(expectedInputs, actualInputs, 0.0);
+            expected.copyOutputs(i, expectedOutputs, 0);
+            actual.copyOutputs(i, actualOutputs, 0);
+            assertArrayEquals(expectedOutputs, actualOutputs, 0.0);
+            if (expected.isLabelled())
+                assertEquals(expected.getLabel(i), actual.getLabel(i));
+        }
+        MiniBatch expectedBatch = new MiniBatch(size, inputSize, outputSize);
+        MiniBatch actualBatch = new MiniBatch(size, inputSize, outputSize);
+        expectedBatch.fill(expected, 0, size);
+        actualBatch.fill(actual, 0, size);
+        assertArrayEquals(expectedBatch.inputs, actualBatch.inputs, 0.0);
+        if (expected.isLabelled())
+            assertArrayEquals(expectedBatch.labels, actualBatch.labels);
+        else
+            assertArrayEquals(expectedBatch.outputs, actualBatch.outputs, 0.0);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * @(#) TrainingDataStreamTest.java
+ *
+ * nndl-java Neural Networks and Deep Learning
+ * Copyright (c) 2018 Peter Wall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.pwall.neural;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests that a pass through a {@link ShardedTrainingDataStream} or a
+ * {@link ShuffledTrainingDataStream} yields every item exactly once, and that training from a
+ * stream matches batched training from a {@link TrainingDataSource}.
+ *
+ * @author  Peter Wall
+ */
+public class TrainingDataStreamTest {
+
+    private static final int outputSize = 3;
+    private static final int[] shardSizes = { 5, 0, 7, 0, 3 };
+    private static final int numItems = 15;
+
+    @Test
+    public void shouldReadShardsInOrderWithoutRandom() throws IOException {
+        for (boolean labelled : new boolean[] { true, false }) {
+            int[] ids = readPass(shardedStream(labelled), null);
+            assertEquals(numItems, ids.length);
+            for (int i = 0; i < numItems; i++)
+                assertEquals(i, ids[i]);
+        }
+    }
+
+    @Test
+    public void shouldReadEachItemOnceFromShards() throws IOException {
+        Random r = new Random(1);
+        for (boolean labelled : new boolean[] { true, false }) {
+            TrainingDataStream stream = shardedStream(labelled);
+            for (int pass = 0; pass < 3; pass++)
+                assertEachItemOnce(readPass(stream, r));
+        }
+    }
+
+    @Test
+    public void shouldReadEachItemOnceShuffled() throws IOException {
+        Random r = new Random(2);
+        for (boolean labelled : new boolean[] { true, false }) {
+            // buffers smaller than a shard, larger than a shard, and larger than all the data
+            for (int bufferSize : new int[] { 1, 4, 9, numItems, 100 }) {
+                TrainingDataStream stream =
+                        new ShuffledTrainingDataStream(shardedStream(labelled), bufferSize);
+                for (int pass = 0; pass < 3; pass++)
+                    assertEachItemOnce(readPass(stream, r));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadNothingFromEmptyShards() throws IOException {
+        List<ShardedTrainingDataStream.Shard> shards = new ArrayList<>();
+        shards.add(() -> shard(0, 0));
+        shards.add(() -> shard(0, 0));
+        TrainingDataStream stream = new ShardedTrainingDataStream(shards, 2, outputSize, true);
+        assertEquals(0, readPass(stream, new Random(3)).length);
+        assertEquals(0, readPass(new ShuffledTrainingDataStream(stream, 10), new Random(3)).
+                length);
+    }
+
+    @Test
+    public void shouldTrainLikeTrainingData() {
+        int[] layerSizes = { 6, 8, 3 };
+        PackedTrainingDataSet data = SyntheticData.labelled(21, 53, 6, 3);
+        Network expected = SyntheticData.network(22, layerSizes);
+        Network actual = SyntheticData.network(22, layerSizes);
+        expected.train(data).epochs(3).miniBatchSize(10).eta(0.5).random(new Random(23)).
+                batched(true).logging(false).go();
+        // the trainer shuffles the training data at the start of each epoch, so the single
+        // shard presents the items in the same order, using a Random with the same seed (a
+        // stream with a single shard takes no random numbers of its own)
+        TrainingDataRandom shuffled = new TrainingDataRandom(data);
+        Random shardRandom = new Random(23);
+        List<ShardedTrainingDataStream.Shard> shards = new ArrayList<>();
+        shards.add(() -> {
+            shuffled.randomise(shardRandom);
+            return shuffled;
+        });
+        actual.train().trainingStream(new ShardedTrainingDataStream(shards, 6, 3, true)).
+                epochs(3).miniBatchSize(10).eta(0.5).random(new Random(23)).logging(false).go();
+        SyntheticData.assertParametersEqual(expected, actual, layerSizes.length, 0.0);
+    }
+
+    /**
+     * Create a stream of {@link #numItems} items in shards of the sizes in {@link #shardSizes},
+     * each item having an identifying number.
+     *
+     * @param   labelled    {@code true} if the stream is to be labelled
+     * @return  the stream
+     */
+    private static TrainingDataStream shardedStream(boolean labelled) {
+        List<ShardedTrainingDataStream.Shard> shards = new ArrayList<>();
+        int first = 0;
+        for (int size : shardSizes) {
+            int shardFirst = first;
+            shards.add(() -> shard(shardFirst, size));
+            first += size;
+        }
+        return new ShardedTrainingDataStream(shards, 2, outputSize, labelled);
+    }
+
+    /**
+     * Create a shard of items, each having the inputs {@code id} and {@code -id}, and the label
+     * {@code id % outputSize}.
+     *
+     * @param   first       the identifying number of the first item
+     * @param   size        the number of items
+     * @return  the shard
+     */
+    private static PackedTrainingDataSet shard(int first, int size) {
+        double[] inputs = new double[size * 2];
+        int[] labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            int id = first + i;
+            inputs[i * 2] = id;
+            inputs[i * 2 + 1] = -id;
+            labels[i] = id % outputSize;
+        }
+        return new PackedTrainingDataSet(inputs, 2, labels, outputSize);
+    }
+
+    /**
+     * Make a single pass through a stream, checking that the inputs, outputs and label of each
+     * item are consistent with its identifying number.
+     *
+     * @param   stream      the stream
+     * @param   random      the {@link Random} (may be {@code null})
+     * @return  the identifying numbers of the items, in the order read
+     * @throws  IOException if the stream can not be read
+     */
+    private static int[] readPass(TrainingDataStream stream, Random random) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        double[] inputs = new double[2];
+        double[] outputs = new double[outputSize];
+        try (TrainingDataStream.Reader reader = stream.open(random)) {
+            while (reader.next()) {
+                assertEquals(2, reader.copyInputs(inputs, 0));
+                int id = (int)inputs[0];
+                assertEquals(-id, inputs[1], 0.0);
+                assertEquals(outputSize, reader.copyOutputs(outputs, 0));
+                double[] expectedOutputs = new double[outputSize];
+                expectedOutputs[id % outputSize] = 1.0;
+                assertArrayEquals(expectedOutputs, outputs, 0.0);
+                assertEquals(id % outputSize, reader.getLabel());
+                ids.add(id);
+            }
+            assertFalse(reader.next());
+        }
+        int[] result = new int[ids.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = ids.get(i);
+        return result;
+    }
+
+    private static void assertEachItemOnce(int[] ids) {
+        int[] counts = new int[numItems];
+        for (int id : ids)
+            counts[id]++;
+        for (int i = 0; i < numItems; i++)
+            assertEquals("count of item " + i, 1, counts[i]);
+        assertEquals(numItems, ids.length);
+    }
+
+}
@@ -73,6 +73,42 @@ public class InputDataSource implements TrainingDataSource {
         return imageData.getNumImages();
     }
 
+    /**
+     * Copy the input values for a training data item directly into an array.
+     *
+     * @param   index   the index of the item
+     * @param   target  the target array
+     * @param   offset  the offset in the target array
+     * @return          the number of values copied
+     */
+    @Override
+    public int copyInputs(int index, double[] target, int offset) {
+        for (int i = 0; i < pixels; i++)
+            target[offset + i] = (double)imageData.getPixelValue(index, i) / 256;
+        return pixels;
+    }
+
+    /**
+     * Get the expected output for a training data item as an integer (the digit value).
+     *
+     * @param   index   the index of the item
+     * @return          the expected integer output
+     */
+    @Override
+    public int getLabel(int index) {
+        return labelData.getLabelValue(index);
+    }
+
+    /**
+     * The expected outputs are always created from the label.
+     *
+     * @return  {@code true}
+     */
+    @Override
+    public boolean isLabelled() {
+        return true;
+    }
+
     /**
      * Inner class to represent the training data for the MNIST image data set.
      */
@@ -28,6 +28,7 @@ package net.pwall.neural.test;
 import java.util.Random;
 
 import net.pwall.neural.Network;
+import net.pwall.neural.QuantizedTrainingDataSet;
 import net.pwall.neural.TrainingDataSource;
 import net.pwall.neural.TrainingDataSubset;
 import net.pwall.neural.test.images.MNISTImageData;
@@ -69,9 +70,12 @@ public class TestNNDL {
             Network network = new Network(784, 30, 10);
             network.init(r);
 
-            // create two subsets of training data (as explained in the book)
+            // load the data into a quantized data set (a single byte array for all the images,
+            // with the pixel values scaled by 1/256 as in InputDataSource), and create two
+            // subsets of training data (as explained in the book)
 
-            TrainingDataSource tds = new InputDataSource(imageData, labelData);
+            TrainingDataSource tds = new QuantizedTrainingDataSet(
+                    new InputDataSource(imageData, labelData), 1.0 / 256, 0.0);
             TrainingDataSource trainingData = new TrainingDataSubset(tds, 0, 50000);
             TrainingDataSource testData = new TrainingDataSubset(tds, 50000, 10000);
 